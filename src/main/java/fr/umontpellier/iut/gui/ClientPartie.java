@@ -0,0 +1,250 @@
+package fr.umontpellier.iut.gui;
+
+import com.google.gson.JsonObject;
+
+import javax.websocket.CloseReason;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Client connecté à une partie : sa session websocket, le format qu'il a négocié
+ * et la dernière version de l'état qu'il a reçue.
+ *
+ * Les envois sont asynchrones et ne bloquent jamais le thread du jeu : chaque
+ * client a au plus un message en cours d'envoi et une seule version en attente.
+ * Si le client est lent, les versions intermédiaires sont remplacées par la plus
+ * récente (la différence est calculée au moment de l'envoi, à partir de ce que le
+ * client a réellement reçu).
+ */
+public class ClientPartie {
+    /**
+     * Nombre de messages qu'un client peut envoyer en rafale, et débit accepté sur la durée
+     */
+    private static final int RAFALE_ENTREES = Integer.getInteger("rails.entrees.rafale", 20);
+    private static final double DEBIT_ENTREES = Double.parseDouble(System.getProperty("rails.entrees.debit", "10"));
+
+    private final Session session;
+    private final Protocole protocole;
+    /**
+     * Historique de la partie, dans lequel est cherchée la base des différences
+     */
+    private final HistoriqueEtats historique;
+    /**
+     * Encodeur binaire de la partie (utilisé par les clients du protocole BINAIRE)
+     */
+    private final EncodeurBinaire encodeur;
+    /**
+     * Compresseur de la partie (utilisé par les clients du protocole DEFLATE)
+     */
+    private final CompresseurTrames compresseur;
+    /**
+     * Indique si le dictionnaire de compression a été transmis au client (protocole DEFLATE)
+     */
+    private volatile boolean dictionnaireEnvoye;
+    /**
+     * Limiteur du débit des messages reçus du client
+     */
+    private final LimiteurDebit limiteur;
+    /**
+     * Place du client : indice du joueur qu'il contrôle, Projection.SPECTATEUR ou
+     * Projection.COMPLETE (seules les informations visibles depuis cette place lui
+     * sont transmises)
+     */
+    private final int place;
+    /**
+     * Prochaine version à envoyer (la plus récente publiée pendant l'envoi en cours)
+     */
+    private final AtomicReference<EtatVersionne> enAttente;
+    /**
+     * Indique si un message est en cours d'envoi sur la session
+     */
+    private final AtomicBoolean envoiEnCours;
+    /**
+     * Date (System.nanoTime()) du début de l'envoi en cours
+     */
+    private volatile long debutEnvoi;
+    /**
+     * Dernière version de l'état transmise avec succès au client (-1 si aucune).
+     * Les messages d'une websocket arrivent dans l'ordre : c'est la base à partir
+     * de laquelle les différences suivantes sont calculées.
+     */
+    private volatile long versionConnue;
+    /**
+     * Numéro du dernier message du journal transmis avec succès au client (0 si aucun)
+     */
+    private volatile long journalConnu;
+    /**
+     * Jeton de la place à transmettre au client avant tout autre message (null s'il
+     * n'y en a pas, ou s'il a été transmis)
+     */
+    private volatile String jeton;
+
+    /**
+     * @param versionConnue version reçue par le client lors d'une connexion précédente
+     *                      (-1 si aucune) : s'il se reconnecte et que cette version est
+     *                      encore dans l'historique, il ne reçoit que la différence
+     *                      avec l'état actuel, sinon un instantané complet
+     */
+    public ClientPartie(Session session, HistoriqueEtats historique, EncodeurBinaire encodeur,
+                        CompresseurTrames compresseur, int place, long versionConnue) {
+        this.session = session;
+        this.protocole = Protocole.depuis(session.getNegotiatedSubprotocol());
+        this.historique = historique;
+        this.encodeur = encodeur;
+        this.compresseur = compresseur;
+        this.place = place;
+        this.limiteur = new LimiteurDebit(RAFALE_ENTREES, DEBIT_ENTREES);
+        this.enAttente = new AtomicReference<>();
+        this.envoiEnCours = new AtomicBoolean(false);
+        EtatVersionne base = versionConnue < 0 ? null : historique.get(versionConnue);
+        this.versionConnue = base == null ? -1 : base.getVersion();
+        this.journalConnu = base == null ? 0 : base.getNumeroJournal();
+    }
+
+    public Session getSession() {
+        return session;
+    }
+
+    public Protocole getProtocole() {
+        return protocole;
+    }
+
+    public int getPlace() {
+        return place;
+    }
+
+    public LimiteurDebit getLimiteur() {
+        return limiteur;
+    }
+
+    /**
+     * Programme l'envoi d'une version de l'état au client. La méthode ne bloque
+     * pas : si un envoi est déjà en cours, la version remplace celle qui était en
+     * attente et sera envoyée quand l'envoi en cours sera terminé.
+     *
+     * @param etat la version à transmettre
+     */
+    public void publier(EtatVersionne etat) {
+        enAttente.accumulateAndGet(etat,
+                (attente, nouvel) -> attente == null || nouvel.getVersion() > attente.getVersion() ? nouvel : attente);
+        envoyerSuivant();
+    }
+
+    /**
+     * Programme l'envoi au client du jeton de sa place, dans un message texte
+     * {"jeton": "..."} (quel que soit le protocole) envoyé avant les versions de l'état
+     * suivantes
+     *
+     * @param jeton le jeton de la place du client
+     */
+    public void envoyerJeton(String jeton) {
+        this.jeton = jeton;
+        envoyerSuivant();
+    }
+
+    /**
+     * @param maintenant     date courante (System.nanoTime())
+     * @param delaiMaxNanos  durée maximale d'un envoi
+     * @return true si un envoi est en cours depuis plus de delaiMaxNanos
+     */
+    public boolean estBloque(long maintenant, long delaiMaxNanos) {
+        return envoiEnCours.get() && maintenant - debutEnvoi > delaiMaxNanos;
+    }
+
+    /**
+     * Ferme la session d'un client qui ne lit plus ses messages
+     */
+    public void deconnecter() {
+        try {
+            session.close(new CloseReason(CloseReason.CloseCodes.TRY_AGAIN_LATER, "Client trop lent"));
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Démarre l'envoi de la version en attente si aucun envoi n'est en cours
+     */
+    private void envoyerSuivant() {
+        while ((jeton != null || enAttente.get() != null) && envoiEnCours.compareAndSet(false, true)) {
+            String jetonAEnvoyer = jeton;
+            if (jetonAEnvoyer != null) {
+                JsonObject message = new JsonObject();
+                message.addProperty("jeton", jetonAEnvoyer);
+                debutEnvoi = System.nanoTime();
+                session.getAsyncRemote().sendText(message.toString(), resultat -> jetonTermine(resultat));
+                return;
+            }
+            if (protocole == Protocole.DEFLATE && !dictionnaireEnvoye) {
+                debutEnvoi = System.nanoTime();
+                session.getAsyncRemote().sendBinary(compresseur.getDictionnaire().getOctets(),
+                        resultat -> dictionnaireTermine(resultat));
+                return;
+            }
+            EtatVersionne etat = enAttente.getAndSet(null);
+            if (etat == null || etat.getVersion() <= versionConnue) {
+                envoiEnCours.set(false);
+                continue;
+            }
+            debutEnvoi = System.nanoTime();
+            EtatVersionne vue = etat.pour(place);
+            switch (protocole) {
+                case JSON -> session.getAsyncRemote().sendText(vue.getTexte(),
+                        resultat -> envoiTermine(etat, resultat));
+                case DELTA -> session.getAsyncRemote().sendBinary(trameDelta(vue).getOctets(),
+                        resultat -> envoiTermine(etat, resultat));
+                case DEFLATE -> session.getAsyncRemote().sendBinary(
+                        trameDelta(vue).compressee(compresseur).getOctets(),
+                        resultat -> envoiTermine(etat, resultat));
+                case BINAIRE -> session.getAsyncRemote().sendBinary(vue.getBinaire(encodeur, journalConnu).getOctets(),
+                        resultat -> envoiTermine(etat, resultat));
+            }
+            return;
+        }
+    }
+
+    private void envoiTermine(EtatVersionne etat, SendResult resultat) {
+        if (resultat.isOK()) {
+            versionConnue = etat.getVersion();
+            journalConnu = etat.getNumeroJournal();
+            envoiEnCours.set(false);
+            envoyerSuivant();
+        } else {
+            envoiEnCours.set(false);
+            deconnecter();
+        }
+    }
+
+    private void jetonTermine(SendResult resultat) {
+        envoiEnCours.set(false);
+        if (resultat.isOK()) {
+            jeton = null;
+            envoyerSuivant();
+        } else {
+            deconnecter();
+        }
+    }
+
+    private void dictionnaireTermine(SendResult resultat) {
+        envoiEnCours.set(false);
+        if (resultat.isOK()) {
+            dictionnaireEnvoye = true;
+            envoyerSuivant();
+        } else {
+            deconnecter();
+        }
+    }
+
+    /**
+     * @param vue la nouvelle version, vue depuis la place du client
+     * @return la différence entre la version connue du client et la nouvelle version
+     * (partagée avec les autres clients de même vue qui connaissent la même version),
+     * ou l'instantané si sa version n'est plus dans l'historique
+     */
+    private Trame trameDelta(EtatVersionne vue) {
+        EtatVersionne base = versionConnue < 0 ? null : historique.get(versionConnue);
+        return vue.getDifference(base == null ? null : base.pour(place));
+    }
+}
@@ -0,0 +1,131 @@
+package fr.umontpellier.iut.gui;
+
+import fr.umontpellier.iut.rails.Joueur;
+import fr.umontpellier.iut.rails.data.Couleur;
+import fr.umontpellier.iut.rails.data.Ville;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * Compression des trames du sous-protocole "rails-deflate" : les trames du
+ * protocole DELTA sont compressées en deflate brut (RFC 1951) avec un dictionnaire
+ * prédéfini, envoyé au client comme premier message de la connexion.
+ *
+ * Le dictionnaire contient les fragments qui reviennent dans tous les états (noms
+ * des champs, cartes transport, couleurs, opérations JSON-Patch, noms des villes) :
+ * même une petite différence est bien compressée. Chaque trame est compressée
+ * indépendamment des précédentes (pas de contexte conservé entre les messages), ce
+ * qui permet de compresser une trame une seule fois et de l'envoyer à tous les
+ * clients qui doivent la recevoir.
+ */
+public class CompresseurTrames {
+    /**
+     * Niveau de compression (0 à 9)
+     */
+    private static final int NIVEAU = Integer.getInteger("rails.compression.niveau", Deflater.DEFAULT_COMPRESSION);
+
+    private final byte[] dictionnaire;
+    private final Trame trameDictionnaire;
+
+    /**
+     * @param villes les villes du plateau de la partie
+     */
+    public CompresseurTrames(List<Ville> villes) {
+        this.dictionnaire = construireDictionnaire(villes);
+        this.trameDictionnaire = new Trame(dictionnaire);
+    }
+
+    /**
+     * @return le dictionnaire, à envoyer au client avant la première trame compressée
+     */
+    public Trame getDictionnaire() {
+        return trameDictionnaire;
+    }
+
+    /**
+     * Compresse une trame (le temps passé et les tailles sont ajoutés aux Metriques)
+     *
+     * @param trame la trame à compresser
+     * @return la trame compressée
+     */
+    public Trame compresser(Trame trame) {
+        long debut = System.nanoTime();
+        Deflater deflater = new Deflater(NIVEAU, true);
+        try {
+            deflater.setDictionary(dictionnaire);
+            deflater.setInput(trame.getOctets());
+            deflater.finish();
+            ByteArrayOutputStream sortie = new ByteArrayOutputStream(Math.max(64, trame.taille() / 4));
+            byte[] tampon = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(tampon);
+                sortie.write(tampon, 0, n);
+            }
+            Trame compressee = new Trame(sortie.toByteArray());
+            Metriques.TRAMES_COMPRESSEES.increment();
+            Metriques.OCTETS_AVANT_COMPRESSION.add(trame.taille());
+            Metriques.OCTETS_APRES_COMPRESSION.add(compressee.taille());
+            Metriques.NANOS_COMPRESSION.add(System.nanoTime() - debut);
+            return compressee;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Construit le dictionnaire à partir des fragments les plus fréquents des trames
+     * (les fragments les plus fréquents sont placés à la fin, où ils sont les moins
+     * coûteux à référencer)
+     */
+    private static byte[] construireDictionnaire(List<Ville> villes) {
+        StringBuilder dictionnaire = new StringBuilder();
+        for (Ville ville : villes) {
+            dictionnaire.append('"').append(ville.nom()).append("\",");
+        }
+        for (Joueur.CouleurJouer couleur : Joueur.CouleurJouer.values()) {
+            dictionnaire.append("\"couleur\":\"").append(couleur).append("\",");
+        }
+        dictionnaire.append("{\"villes\":[\"\",\"\"],\"valeurSimple\":,\"valeurMax\":,\"penalite\":,\"nom\":\"D");
+        dictionnaire.append("\"instruction\":\"\",\"boutons\":[{\"label\":\"\",\"valeur\":\"\"}],");
+        dictionnaire.append("\"choix\":{\"cartes\":\"\",\"routes\":\"\",\"destinations\":\"\",\"villes\":\"\",\"autres\":[\"\"]},");
+        dictionnaire.append("\"piocheWagon\":{\"pioche\":,\"defausse\":[]},\"piocheBateau\":{\"pioche\":,\"defausse\":[]},");
+        dictionnaire.append("\"cartesTransportVisibles\":[],\"nbDestinations\":,\"joueurCourant\":,");
+        dictionnaire.append("{\"nom\":\"\",\"score\":,\"pionsWagon\":,\"pionsWagonReserve\":,\"pionsBateau\":,");
+        dictionnaire.append("\"pionsBateauReserve\":,\"destinationsIncompletes\":[],\"destinationsCompletes\":[],");
+        dictionnaire.append("\"nbCartesMain\":,\"nbDestinationsIncompletes\":,\"nbDestinationsCompletes\":,");
+        dictionnaire.append("\"main\":[],\"inPlay\":[],\"ports\":[],\"routes\":[\"R\"]}");
+        dictionnaire.append("{\"version\":,\"etat\":{\"joueurs\":[");
+        dictionnaire.append("\"journal\":{\"premier\":,\"messages\":[\"<span class=\\\"\\\"></span>\"]}");
+        for (Couleur couleur : Couleur.values()) {
+            if (couleur == Couleur.GRIS) {
+                continue;
+            }
+            carte(dictionnaire, "WAGON", couleur, false, true);
+            carte(dictionnaire, "WAGON", couleur, false, false);
+            carte(dictionnaire, "BATEAU", couleur, false, true);
+            carte(dictionnaire, "BATEAU", couleur, true, false);
+        }
+        carte(dictionnaire, "JOKER", Couleur.GRIS, false, true);
+        dictionnaire.append("{\"version\":,\"base\":,\"patch\":[");
+        dictionnaire.append("{\"op\":\"remove\",\"path\":\"/joueurs/0/main/\"},");
+        dictionnaire.append("{\"op\":\"add\",\"path\":\"/joueurs/0/main/-\",\"value\":");
+        dictionnaire.append("{\"op\":\"replace\",\"path\":\"/joueurs/0/\",\"value\":");
+        dictionnaire.append("{\"op\":\"replace\",\"path\":\"/cartesTransportVisibles/\",\"value\":");
+        dictionnaire.append("{\"op\":\"replace\",\"path\":\"/instruction\",\"value\":\"");
+        dictionnaire.append("{\"op\":\"replace\",\"path\":\"/boutons\",\"value\":[]},");
+        dictionnaire.append("{\"op\":\"replace\",\"path\":\"/choix/routes\",\"value\":\"");
+        dictionnaire.append("{\"op\":\"replace\",\"path\":\"/joueurCourant\",\"value\":");
+        return dictionnaire.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void carte(StringBuilder dictionnaire, String type, Couleur couleur, boolean estDouble, boolean ancre) {
+        dictionnaire.append("{\"type\":\"").append(type)
+                .append("\",\"couleur\":\"").append(couleur)
+                .append("\",\"estDouble\":").append(estDouble)
+                .append(",\"ancre\":").append(ancre)
+                .append(",\"nom\":\"C");
+    }
+}
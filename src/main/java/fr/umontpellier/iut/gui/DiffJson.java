@@ -0,0 +1,104 @@
+package fr.umontpellier.iut.gui;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.util.Map;
+
+/**
+ * Calcul de la différence structurelle entre deux documents JSON, sous la forme
+ * d'une liste d'opérations JSON-Patch (RFC 6902) : "add", "remove" et "replace".
+ */
+public final class DiffJson {
+
+    private DiffJson() {
+    }
+
+    /**
+     * Calcule les opérations qui transforment le document avant en le document apres
+     *
+     * @param avant le document connu du client
+     * @param apres le nouveau document
+     * @return la liste des opérations (vide si les documents sont égaux)
+     */
+    public static JsonArray diff(JsonElement avant, JsonElement apres) {
+        JsonArray operations = new JsonArray();
+        diff("", avant, apres, operations);
+        return operations;
+    }
+
+    private static void diff(String chemin, JsonElement avant, JsonElement apres, JsonArray operations) {
+        if (avant.equals(apres)) {
+            return;
+        }
+        if (avant.isJsonObject() && apres.isJsonObject()) {
+            diffObjets(chemin, avant.getAsJsonObject(), apres.getAsJsonObject(), operations);
+        } else if (avant.isJsonArray() && apres.isJsonArray()) {
+            diffTableaux(chemin, avant.getAsJsonArray(), apres.getAsJsonArray(), operations);
+        } else {
+            operations.add(operation("replace", chemin, apres));
+        }
+    }
+
+    private static void diffObjets(String chemin, JsonObject avant, JsonObject apres, JsonArray operations) {
+        for (String cle : avant.keySet()) {
+            if (!apres.has(cle)) {
+                operations.add(operation("remove", chemin + "/" + echapper(cle), null));
+            }
+        }
+        for (Map.Entry<String, JsonElement> entree : apres.entrySet()) {
+            String sousChemin = chemin + "/" + echapper(entree.getKey());
+            JsonElement ancien = avant.get(entree.getKey());
+            if (ancien == null) {
+                operations.add(operation("add", sousChemin, entree.getValue()));
+            } else {
+                diff(sousChemin, ancien, entree.getValue(), operations);
+            }
+        }
+    }
+
+    /**
+     * Les tableaux sont comparés élément par élément sur leur longueur commune, puis
+     * les éléments en trop sont ajoutés en fin ou retirés depuis la fin (ce qui
+     * correspond aux ajouts en fin de liste, cas le plus fréquent pour le log et les
+     * défausses). Si cela produit plus d'opérations que d'éléments, le tableau est
+     * remplacé en entier.
+     */
+    private static void diffTableaux(String chemin, JsonArray avant, JsonArray apres, JsonArray operations) {
+        JsonArray sousOperations = new JsonArray();
+        int commun = Math.min(avant.size(), apres.size());
+        for (int i = 0; i < commun; i++) {
+            diff(chemin + "/" + i, avant.get(i), apres.get(i), sousOperations);
+        }
+        for (int i = commun; i < apres.size(); i++) {
+            sousOperations.add(operation("add", chemin + "/-", apres.get(i)));
+        }
+        for (int i = avant.size() - 1; i >= commun; i--) {
+            sousOperations.add(operation("remove", chemin + "/" + i, null));
+        }
+        if (sousOperations.size() > apres.size()) {
+            operations.add(operation("replace", chemin, apres));
+        } else {
+            operations.addAll(sousOperations);
+        }
+    }
+
+    private static JsonObject operation(String op, String chemin, JsonElement valeur) {
+        JsonObject operation = new JsonObject();
+        operation.add("op", new JsonPrimitive(op));
+        operation.add("path", new JsonPrimitive(chemin));
+        if (valeur != null) {
+            operation.add("value", valeur);
+        }
+        return operation;
+    }
+
+    /**
+     * Échappe une clé pour l'utiliser dans un JSON Pointer (RFC 6901)
+     */
+    private static String echapper(String cle) {
+        return cle.replace("~", "~0").replace("/", "~1");
+    }
+}
@@ -0,0 +1,309 @@
+package fr.umontpellier.iut.gui;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import fr.umontpellier.iut.rails.Joueur;
+import fr.umontpellier.iut.rails.data.Couleur;
+import fr.umontpellier.iut.rails.data.TypeCarteTransport;
+import fr.umontpellier.iut.rails.data.Ville;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodage binaire compact de l'état du jeu (sous-protocole "rails-bin").
+ *
+ * Tous les entiers sont des varints (LEB128 non signés, 7 bits par octet), les
+ * entiers qui peuvent être négatifs (score) sont d'abord codés en zigzag. Les
+ * chaînes sont précédées de leur longueur en octets (UTF-8). Les cartes, routes et
+ * destinations sont désignées par le numéro de leur nom (C12 → 12, R42 → 42,
+ * D7 → 7), les villes par leur indice dans Jeu.getVilles().
+ *
+ * <pre>
+ * message      := version joueurCourant nbDestinations pile(wagon) pile(bateau)
+ *                 ids(cartesTransportVisibles) chaine(instruction) boutons choix journal joueurs
+ * pile         := nbCartesPioche comptes(defausse)
+ * comptes      := nbSortes (sorte nombre)*        cartes regroupées par sorte
+ * sorte        := type * 28 + couleur * 4 + 2 * estDouble + ancre
+ * ids          := nb (écart)*                     numéros triés, codés par écart au précédent
+ * boutons      := nb (chaine(label) valeur)*
+ * valeur       := 0 chaine | 1 carte | 2 route | 3 destination | 4 ville
+ * choix        := bitset(cartes) bitset(routes) bitset(destinations) bitset(villes)
+ *                 nb chaine*                    réponses valides au choix en cours
+ * journal      := premier nb chaine*            messages numérotés à partir de premier
+ * joueurs      := nb joueur*
+ * joueur       := chaine(nom) couleur zigzag(score) pionsWagon pionsWagonReserve
+ *                 pionsBateau pionsBateauReserve cache(destinationsIncompletes)
+ *                 cache(destinationsCompletes) cache(main) ids(inPlay) ids(ports, villes)
+ *                 bitset(routes)
+ * cache        := nombre ids                    ids vide si la liste est cachée au client
+ * bitset       := nbOctets octet*               bit i = numéro (ou indice de ville) i
+ * </pre>
+ */
+public class EncodeurBinaire {
+    private static final int CHOIX_TEXTE = 0;
+    private static final int CHOIX_CARTE = 1;
+    private static final int CHOIX_ROUTE = 2;
+    private static final int CHOIX_DESTINATION = 3;
+    private static final int CHOIX_VILLE = 4;
+    /**
+     * Sortes des réponses valides rangées dans un ensemble de bits, dans l'ordre du message
+     */
+    private static final List<String> SORTES_CHOIX = List.of("cartes", "routes", "destinations", "villes");
+
+    /**
+     * Identifiant compact de chaque ville, à partir de son nom
+     */
+    private final Map<String, Integer> idVilles;
+
+    public EncodeurBinaire(List<Ville> villes) {
+        idVilles = new HashMap<>();
+        for (int i = 0; i < villes.size(); i++) {
+            idVilles.put(villes.get(i).nom(), i);
+        }
+    }
+
+    /**
+     * Encode une version de l'état (tel que produit par Jeu.dataMap() puis converti en
+     * JSON, le log étant transmis à part)
+     *
+     * @param version  numéro de la version
+     * @param etat     l'état du jeu
+     * @param premier  numéro du premier message du journal transmis
+     * @param messages messages du journal à transmettre
+     * @return le message binaire
+     */
+    public byte[] encoder(long version, JsonObject etat, long premier, List<String> messages) {
+        Tampon tampon = new Tampon();
+        tampon.varint(version);
+        tampon.varint(etat.get("joueurCourant").getAsInt());
+        tampon.varint(etat.get("nbDestinations").getAsInt());
+        ecrirePile(tampon, etat.getAsJsonObject("piocheWagon"));
+        ecrirePile(tampon, etat.getAsJsonObject("piocheBateau"));
+        ecrireIds(tampon, etat.getAsJsonArray("cartesTransportVisibles"));
+        tampon.chaine(etat.has("instruction") ? etat.get("instruction").getAsString() : "");
+
+        JsonArray boutons = etat.has("boutons") ? etat.getAsJsonArray("boutons") : new JsonArray();
+        tampon.varint(boutons.size());
+        for (JsonElement e : boutons) {
+            JsonObject bouton = e.getAsJsonObject();
+            tampon.chaine(bouton.get("label").getAsString());
+            ecrireChoix(tampon, bouton.get("valeur").getAsString());
+        }
+        ecrireEnsembleChoix(tampon, etat.has("choix") ? etat.getAsJsonObject("choix") : new JsonObject());
+
+        tampon.varint(premier);
+        tampon.varint(messages.size());
+        for (String message : messages) {
+            tampon.chaine(message);
+        }
+
+        JsonArray joueurs = etat.getAsJsonArray("joueurs");
+        tampon.varint(joueurs.size());
+        for (JsonElement e : joueurs) {
+            ecrireJoueur(tampon, e.getAsJsonObject());
+        }
+        return tampon.octets();
+    }
+
+    private void ecrireJoueur(Tampon tampon, JsonObject joueur) {
+        tampon.chaine(joueur.get("nom").getAsString());
+        tampon.varint(Joueur.CouleurJouer.valueOf(joueur.get("couleur").getAsString()).ordinal());
+        int score = joueur.get("score").getAsInt();
+        tampon.varint((score << 1) ^ (score >> 31));
+        tampon.varint(joueur.get("pionsWagon").getAsInt());
+        tampon.varint(joueur.get("pionsWagonReserve").getAsInt());
+        tampon.varint(joueur.get("pionsBateau").getAsInt());
+        tampon.varint(joueur.get("pionsBateauReserve").getAsInt());
+        ecrireCache(tampon, joueur, "destinationsIncompletes", "nbDestinationsIncompletes");
+        ecrireCache(tampon, joueur, "destinationsCompletes", "nbDestinationsCompletes");
+        ecrireCache(tampon, joueur, "main", "nbCartesMain");
+        ecrireIds(tampon, joueur.getAsJsonArray("inPlay"));
+
+        JsonArray ports = joueur.getAsJsonArray("ports");
+        int[] idPorts = new int[ports.size()];
+        for (int i = 0; i < idPorts.length; i++) {
+            idPorts[i] = idVilles.getOrDefault(ports.get(i).getAsString(), 0);
+        }
+        ecrireIdsTries(tampon, idPorts);
+
+        BitSet routes = new BitSet();
+        for (JsonElement route : joueur.getAsJsonArray("routes")) {
+            routes.set(numero(route.getAsString()));
+        }
+        byte[] octets = routes.toByteArray();
+        tampon.varint(octets.length);
+        tampon.octets(octets);
+    }
+
+    /**
+     * Écrit une liste qui peut avoir été remplacée par son nombre d'éléments (voir Projection)
+     */
+    private static void ecrireCache(Tampon tampon, JsonObject joueur, String cle, String cleNombre) {
+        JsonArray elements = joueur.getAsJsonArray(cle);
+        if (elements == null) {
+            tampon.varint(joueur.get(cleNombre).getAsInt());
+            tampon.varint(0);
+        } else {
+            tampon.varint(elements.size());
+            ecrireIds(tampon, elements);
+        }
+    }
+
+    private static void ecrirePile(Tampon tampon, JsonObject pile) {
+        tampon.varint(pile.get("pioche").getAsInt());
+        int[] comptes = new int[TypeCarteTransport.values().length * Couleur.values().length * 4];
+        int nbSortes = 0;
+        for (JsonElement e : pile.getAsJsonArray("defausse")) {
+            int sorte = sorte(e.getAsJsonObject());
+            if (comptes[sorte]++ == 0) {
+                nbSortes++;
+            }
+        }
+        tampon.varint(nbSortes);
+        for (int sorte = 0; sorte < comptes.length; sorte++) {
+            if (comptes[sorte] > 0) {
+                tampon.varint(sorte);
+                tampon.varint(comptes[sorte]);
+            }
+        }
+    }
+
+    /**
+     * @return l'indice de la sorte d'une carte transport (type, couleur, double, ancre)
+     */
+    private static int sorte(JsonObject carte) {
+        int type = TypeCarteTransport.valueOf(carte.get("type").getAsString()).ordinal();
+        int couleur = Couleur.valueOf(carte.get("couleur").getAsString()).ordinal();
+        int estDouble = carte.get("estDouble").getAsBoolean() ? 1 : 0;
+        int ancre = carte.get("ancre").getAsBoolean() ? 1 : 0;
+        return type * 28 + couleur * 4 + 2 * estDouble + ancre;
+    }
+
+    /**
+     * Écrit la liste triée des numéros d'une liste de cartes ou de destinations
+     * (objets ayant un champ "nom") ou de noms de routes
+     */
+    private static void ecrireIds(Tampon tampon, JsonArray elements) {
+        int[] ids = new int[elements.size()];
+        for (int i = 0; i < ids.length; i++) {
+            JsonElement e = elements.get(i);
+            ids[i] = numero(e.isJsonObject() ? e.getAsJsonObject().get("nom").getAsString() : e.getAsString());
+        }
+        ecrireIdsTries(tampon, ids);
+    }
+
+    private static void ecrireIdsTries(Tampon tampon, int[] ids) {
+        Arrays.sort(ids);
+        tampon.varint(ids.length);
+        int precedent = 0;
+        for (int id : ids) {
+            tampon.varint(id - precedent);
+            precedent = id;
+        }
+    }
+
+    /**
+     * Écrit les réponses valides au choix en cours (voir EnsembleChoix.dataMap() : les
+     * ensembles de bits sont publiés en base64)
+     */
+    private static void ecrireEnsembleChoix(Tampon tampon, JsonObject choix) {
+        for (String sorte : SORTES_CHOIX) {
+            byte[] octets = choix.has(sorte) ? Base64.getDecoder().decode(choix.get(sorte).getAsString()) : new byte[0];
+            tampon.varint(octets.length);
+            tampon.octets(octets);
+        }
+        JsonArray autres = choix.has("autres") ? choix.getAsJsonArray("autres") : new JsonArray();
+        tampon.varint(autres.size());
+        for (JsonElement autre : autres) {
+            tampon.chaine(autre.getAsString());
+        }
+    }
+
+    private void ecrireChoix(Tampon tampon, String valeur) {
+        Integer ville = idVilles.get(valeur);
+        if (ville != null) {
+            tampon.varint(CHOIX_VILLE);
+            tampon.varint(ville);
+        } else if (estIdentifiant(valeur, 'C')) {
+            tampon.varint(CHOIX_CARTE);
+            tampon.varint(numero(valeur));
+        } else if (estIdentifiant(valeur, 'R')) {
+            tampon.varint(CHOIX_ROUTE);
+            tampon.varint(numero(valeur));
+        } else if (estIdentifiant(valeur, 'D')) {
+            tampon.varint(CHOIX_DESTINATION);
+            tampon.varint(numero(valeur));
+        } else {
+            tampon.varint(CHOIX_TEXTE);
+            tampon.chaine(valeur);
+        }
+    }
+
+    /**
+     * @return true si la valeur est de la forme préfixe suivi uniquement de chiffres (ex : C12)
+     */
+    private static boolean estIdentifiant(String valeur, char prefixe) {
+        if (valeur.length() < 2 || valeur.charAt(0) != prefixe) {
+            return false;
+        }
+        for (int i = 1; i < valeur.length(); i++) {
+            if (!Character.isDigit(valeur.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return le numéro d'un nom de la forme C12, R42 ou D7
+     */
+    private static int numero(String nom) {
+        return Integer.parseInt(nom, 1, nom.length(), 10);
+    }
+
+    /**
+     * Tampon d'octets extensible
+     */
+    private static final class Tampon {
+        private byte[] octets = new byte[512];
+        private int taille = 0;
+
+        private void reserver(int n) {
+            if (taille + n > octets.length) {
+                octets = Arrays.copyOf(octets, Math.max(octets.length * 2, taille + n));
+            }
+        }
+
+        void varint(long valeur) {
+            reserver(10);
+            while ((valeur & ~0x7FL) != 0) {
+                octets[taille++] = (byte) ((valeur & 0x7F) | 0x80);
+                valeur >>>= 7;
+            }
+            octets[taille++] = (byte) valeur;
+        }
+
+        void octets(byte[] donnees) {
+            reserver(donnees.length);
+            System.arraycopy(donnees, 0, octets, taille, donnees.length);
+            taille += donnees.length;
+        }
+
+        void chaine(String texte) {
+            byte[] donnees = texte.getBytes(StandardCharsets.UTF_8);
+            varint(donnees.length);
+            octets(donnees);
+        }
+
+        byte[] octets() {
+            return Arrays.copyOf(octets, taille);
+        }
+    }
+}
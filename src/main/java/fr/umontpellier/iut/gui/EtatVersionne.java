@@ -0,0 +1,189 @@
+package fr.umontpellier.iut.gui;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import fr.umontpellier.iut.rails.JournalJeu;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * État du jeu à une version donnée (arbre JSON construit une seule fois à partir
+ * de Jeu.dataMap()).
+ *
+ * Les messages qui en dérivent (document complet, instantané versionné,
+ * différence depuis une version antérieure) sont encodés à la première demande
+ * puis réutilisés pour tous les clients et toutes les reconnexions : le coût de
+ * sérialisation d'une version ne dépend pas du nombre de clients.
+ *
+ * Dans les protocoles DELTA et BINAIRE, le log ne fait pas partie de l'état : les
+ * messages sont transmis séparément avec leurs numéros, et un client ne reçoit que
+ * les messages postérieurs au dernier qu'il a reçu.
+ */
+public class EtatVersionne {
+    private static final Gson GSON = new Gson();
+
+    private final long version;
+    private final JsonElement etat;
+    /**
+     * Journal de la partie, et numéro du dernier message du journal à cette version
+     */
+    private final JournalJeu journal;
+    private final long numeroJournal;
+    private volatile JsonObject etatSansJournal;
+    private volatile String texte;
+    private volatile Trame instantane;
+    /**
+     * Différences déjà encodées, indexées par la version de base
+     */
+    private final Map<Long, Trame> differences;
+    /**
+     * Encodages binaires déjà produits, indexés par le numéro du dernier message
+     * du journal connu du client
+     */
+    private final Map<Long, Trame> binaires;
+
+    /**
+     * Vues de cette version déjà calculées, indexées par place (voir Projection)
+     */
+    private final Map<Integer, EtatVersionne> projections;
+
+    public EtatVersionne(long version, JsonElement etat, JournalJeu journal) {
+        this(version, etat, journal, journal.getDernier());
+    }
+
+    private EtatVersionne(long version, JsonElement etat, JournalJeu journal, long numeroJournal) {
+        this.version = version;
+        this.etat = etat;
+        this.journal = journal;
+        this.numeroJournal = numeroJournal;
+        this.differences = new ConcurrentHashMap<>();
+        this.binaires = new ConcurrentHashMap<>();
+        this.projections = new ConcurrentHashMap<>();
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public JsonElement getEtat() {
+        return etat;
+    }
+
+    public long getNumeroJournal() {
+        return numeroJournal;
+    }
+
+    /**
+     * @param place la place du client (indice d'un joueur, Projection.SPECTATEUR ou
+     *              Projection.COMPLETE)
+     * @return cette version vue depuis la place donnée (calculée une seule fois,
+     * avec ses propres messages encodés)
+     */
+    public EtatVersionne pour(int place) {
+        if (place == Projection.COMPLETE) {
+            return this;
+        }
+        return projections.computeIfAbsent(place,
+                p -> new EtatVersionne(version, Projection.projeter(etat, p), journal, numeroJournal));
+    }
+
+    /**
+     * @return l'état sans le log (les valeurs sont partagées avec l'état complet)
+     */
+    private JsonObject getEtatSansJournal() {
+        JsonObject resultat = etatSansJournal;
+        if (resultat == null) {
+            resultat = new JsonObject();
+            for (Map.Entry<String, JsonElement> entree : etat.getAsJsonObject().entrySet()) {
+                if (!entree.getKey().equals("log")) {
+                    resultat.add(entree.getKey(), entree.getValue());
+                }
+            }
+            etatSansJournal = resultat;
+        }
+        return resultat;
+    }
+
+    /**
+     * @param apres numéro du dernier message connu du client
+     * @return {"premier": n, "messages": [...]} : les messages postérieurs à apres
+     * jusqu'à cette version (n est le numéro du premier message de la liste)
+     */
+    private JsonObject getJournal(long apres) {
+        List<String> messages = journal.entre(apres, numeroJournal);
+        JsonObject resultat = new JsonObject();
+        resultat.addProperty("premier", numeroJournal - messages.size() + 1);
+        resultat.add("messages", GSON.toJsonTree(messages));
+        return resultat;
+    }
+
+    /**
+     * @return le document JSON complet (tel qu'attendu par l'interface web fournie)
+     */
+    public String getTexte() {
+        String resultat = texte;
+        if (resultat == null) {
+            resultat = GSON.toJson(etat);
+            texte = resultat;
+        }
+        return resultat;
+    }
+
+    /**
+     * @return l'instantané versionné {"version": v, "etat": {...}, "journal": {...}}
+     * encodé en UTF-8 (le journal contient tous les messages encore conservés)
+     */
+    public Trame getInstantane() {
+        Trame resultat = instantane;
+        if (resultat == null) {
+            JsonObject message = new JsonObject();
+            message.addProperty("version", version);
+            message.add("etat", getEtatSansJournal());
+            message.add("journal", getJournal(0));
+            resultat = Trame.depuisTexte(GSON.toJson(message));
+            instantane = resultat;
+        }
+        return resultat;
+    }
+
+    /**
+     * @param encodeur l'encodeur binaire de la partie
+     * @param apres    numéro du dernier message du journal connu du client
+     * @return l'état dans l'encodage binaire compact (sous-protocole "rails-bin"),
+     * avec les messages du journal postérieurs à apres
+     */
+    public Trame getBinaire(EncodeurBinaire encodeur, long apres) {
+        return binaires.computeIfAbsent(Math.min(apres, numeroJournal), a -> {
+            List<String> messages = journal.entre(a, numeroJournal);
+            return new Trame(encodeur.encoder(version, getEtatSansJournal(),
+                    numeroJournal - messages.size() + 1, messages));
+        });
+    }
+
+    /**
+     * Renvoie la différence entre une version antérieure et celle-ci
+     * {"version": v, "base": b, "patch": [...], "journal": {...}}, ou l'instantané si la base est
+     * inconnue ou si la différence est plus grosse que l'instantané
+     *
+     * @param base la version connue du client (ou null s'il n'en connaît aucune)
+     */
+    public Trame getDifference(EtatVersionne base) {
+        if (base == null) {
+            return getInstantane();
+        }
+        return differences.computeIfAbsent(base.getVersion(), v -> {
+            JsonArray operations = DiffJson.diff(base.getEtatSansJournal(), getEtatSansJournal());
+            JsonObject patch = new JsonObject();
+            patch.addProperty("version", version);
+            patch.addProperty("base", base.getVersion());
+            patch.add("patch", operations);
+            patch.add("journal", getJournal(base.getNumeroJournal()));
+            Trame difference = Trame.depuisTexte(GSON.toJson(patch));
+            return difference.taille() < getInstantane().taille() ? difference : getInstantane();
+        });
+    }
+}
@@ -1,98 +1,373 @@
 package fr.umontpellier.iut.gui;
 
-import fr.umontpellier.iut.rails.Jeu;
+import fr.umontpellier.iut.rails.ExecutionJeu;
+import fr.umontpellier.iut.rails.Joueur;
+import org.glassfish.grizzly.http.server.HttpHandler;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.grizzly.http.server.NetworkListener;
+import org.glassfish.grizzly.http.server.Request;
+import org.glassfish.grizzly.http.server.Response;
 import org.glassfish.tyrus.server.Server;
 
 import javax.websocket.DeploymentException;
 import javax.websocket.Session;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class GameServer {
     /**
-     * Liste des clients connectés au serveur
+     * Identifiant de la partie utilisée par l'interface web fournie (connexion sur "/")
+     * et par l'entrée standard
      */
-    private static ArrayList<Session> clients = new ArrayList<>();
+    public static final String PARTIE_PAR_DEFAUT = "defaut";
     /**
-     * Description de l'état du jeu, envoyé aux clients pour la mise à jour de l'interface graphique
+     * Noms des joueurs utilisés lorsqu'une partie est créée sans préciser de noms
      */
-    private static String etatJeu = "";
+    public static final String[] NOMS_PAR_DEFAUT = {"Guybrush", "Largo", "LeChuck", "Elaine"};
     /**
-     * Instance de jeu exécutée par le serveur
+     * Nombre maximal de parties hébergées simultanément par le serveur (une partie
+     * n'occupe aucun thread tant qu'elle attend une réponse, voir Jeu.setReprise())
      */
-    private static Jeu jeu;
+    private static final int NB_PARTIES_MAX = Integer.getInteger("rails.parties.max", 10_000);
+    /**
+     * Nombre de threads qui exécutent les parties (par défaut un par cœur)
+     */
+    private static final int NB_THREADS_PARTIES = Integer.getInteger("rails.parties.threads",
+            Math.max(2, Runtime.getRuntime().availableProcessors()));
+    /**
+     * Parties hébergées par le serveur, indexées par leur identifiant
+     */
+    private static final ConcurrentHashMap<String, Partie> parties = new ConcurrentHashMap<>();
+    /**
+     * Nombre de places réservées pour des parties (les parties hébergées et celles en
+     * cours de création) : une place est réservée avant de créer la partie, et libérée
+     * quand la partie est retirée du serveur
+     */
+    private static final AtomicInteger nbPartiesReservees = new AtomicInteger();
+    /**
+     * Durée (en millisecondes) après laquelle une partie sans aucun joueur connecté
+     * est abandonnée et retirée du serveur (la partie par défaut n'est jamais retirée)
+     */
+    private static final long DELAI_ABANDON = Long.getLong("rails.parties.abandon", 600_000);
+    /**
+     * Exécuteur des parties : chaque partie y est soumise à sa création, puis à chaque
+     * reprise après une attente (les parties prêtes attendent leur tour dans la file)
+     */
+    private static final ExecutorService executeur = Executors.newFixedThreadPool(
+            NB_THREADS_PARTIES, ExecutionJeu.fabrique("partie"));
+
+    /**
+     * Durée maximale (en millisecondes) d'un envoi vers un client avant qu'il soit
+     * considéré comme bloqué et déconnecté
+     */
+    private static final long DELAI_ENVOI_MAX = Long.getLong("rails.envoi.delai", 10_000);
+    /**
+     * Thread unique qui surveille les envois de toutes les parties
+     */
+    private static final ScheduledExecutorService surveillance = Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+                Thread thread = new Thread(runnable, "surveillance-clients");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /**
+     * Port du serveur HTTP de l'interface web, et dossier qui contient ses fichiers
+     */
+    private static final int PORT_HTTP = Integer.getInteger("rails.http.port", 8080);
+    private static final String DOSSIER_WEB = System.getProperty("rails.web", "web");
+
+    static {
+        surveillance.scheduleWithFixedDelay(GameServer::deconnecterClientsBloques, 1, 1, TimeUnit.SECONDS);
+        surveillance.scheduleWithFixedDelay(GameServer::retirerPartiesAbandonnees, 10, 10, TimeUnit.SECONDS);
+    }
 
     public static void main(String[] args) {
-        // Lancement de la partie
-        jeu = new Jeu(new String[]{"Guybrush", "Largo", "LeChuck", "Elaine"});
+        // Lancement de la partie par défaut
+        creerPartie(PARTIE_PAR_DEFAUT, NOMS_PAR_DEFAUT);
 
         // Prépare le serveur websocket
-        Server server = new Server("localhost", 3232, "/", WebSocketClient.class);
+        Server server = new Server("localhost", 3232, "/",
+                Set.of(WebSocketClient.class, WebSocketClientParDefaut.class));
+        HttpServer serveurWeb = creerServeurWeb();
 
         try (Scanner scanner = new Scanner(System.in)) {
             server.start();             // lance le serveur
-            new Thread(jeu).start();    // démarre le jeu (exécute la méthode Jeu.run() dans un nouveau thread)
+            if (serveurWeb != null) {
+                serveurWeb.start();     // sert l'interface web
+            }
 
             while (true) {
-                jeu.addInput(scanner.nextLine());
+                addInput(PARTIE_PAR_DEFAUT, scanner.nextLine());
             }
-        } catch (DeploymentException e) {
+        } catch (DeploymentException | IOException e) {
             throw new RuntimeException(e);
         } finally {
             server.stop();
+            if (serveurWeb != null) {
+                serveurWeb.stop();
+            }
+            executeur.shutdownNow();
+            surveillance.shutdownNow();
         }
     }
 
     /**
-     * Ajoute une nouvelle instruction à la file d'instructions
-     * (cette méthode est appelée lorsqu'un message est reçue sur la websocket)
-     * 
-     * @param message l'instruction à ajouter
+     * Prépare le serveur HTTP qui sert les fichiers de l'interface web et les
+     * compteurs de fonctionnement (/metriques)
+     *
+     * @return le serveur (non démarré), ou null si le dossier de l'interface est absent
      */
-    public static void addInput(String message) {
-        jeu.addInput(message);
+    private static HttpServer creerServeurWeb() {
+        Path racine = Path.of(DOSSIER_WEB);
+        if (!Files.isDirectory(racine)) {
+            System.err.println("Interface web non servie : dossier " + racine.toAbsolutePath() + " introuvable");
+            return null;
+        }
+        try {
+            HttpServer serveurWeb = new HttpServer();
+            NetworkListener ecouteur = new NetworkListener("web", NetworkListener.DEFAULT_NETWORK_HOST, PORT_HTTP);
+            ecouteur.setSendFileEnabled(true);
+            serveurWeb.addListener(ecouteur);
+            serveurWeb.getServerConfiguration().addHttpHandler(new ServeurFichiers(racine), "/");
+            serveurWeb.getServerConfiguration().addHttpHandler(new HttpHandler() {
+                @Override
+                public void service(Request request, Response response) throws IOException {
+                    response.setContentType("text/plain;charset=utf-8");
+                    response.getWriter().write(Metriques.texte());
+                }
+            }, "/metriques");
+            return serveurWeb;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     /**
-     * Met à jour l'état de la partie, et envoie le nouvel état à tous les clients connectés
-     * 
-     * @param etatJeu l'état de la partie
+     * Crée une nouvelle partie et la démarre sur l'exécuteur du serveur
+     *
+     * @param id         identifiant de la partie
+     * @param nomJoueurs noms des joueurs de la partie
+     * @return la partie créée, ou la partie existante si l'identifiant est déjà utilisé
+     * @throws IllegalArgumentException   si les noms des joueurs ne conviennent pas
+     *                                    (voir verifierNoms())
+     * @throws RejectedExecutionException si le nombre maximal de parties est atteint
      */
-    public static void setEtatJeu(String etatJeu) {
-        GameServer.etatJeu = etatJeu;
-        // Envoie l'état de la partie à tous les clients
+    public static Partie creerPartie(String id, String[] nomJoueurs) {
+        // le plateau n'est chargé que si la partie n'existe pas déjà
+        Partie existante = parties.get(id);
+        if (existante != null) {
+            return existante;
+        }
+        verifierNoms(nomJoueurs);
+        // la place est réservée avant la création, pour que deux créations simultanées
+        // ne dépassent pas ensemble le nombre maximal de parties
+        if (nbPartiesReservees.incrementAndGet() > NB_PARTIES_MAX) {
+            nbPartiesReservees.decrementAndGet();
+            throw new RejectedExecutionException("Nombre maximal de parties atteint");
+        }
+        Partie nouvelle;
         try {
-            for (Session session : clients) {
-                session.getBasicRemote().sendText(etatJeu);
+            nouvelle = new Partie(id, nomJoueurs);
+        } catch (RuntimeException e) {
+            nbPartiesReservees.decrementAndGet();
+            throw e;
+        }
+        // dans la partie par défaut, tous les joueurs partagent le même écran : ils font
+        // donc leur mise en place l'un après l'autre, et sans délai de réponse (un
+        // joueur absent ne bloque pas d'autres clients)
+        boolean ecranPartage = PARTIE_PAR_DEFAUT.equals(id);
+        nouvelle.getJeu().setMiseEnPlaceSimultanee(!ecranPartage);
+        if (ecranPartage) {
+            nouvelle.getJeu().setDelais(0, 0);
+        } else {
+            // les places que personne ne vient occuper sont jouées par des joueurs automatiques
+            nouvelle.remplacerPlacesLibres();
+        }
+        // la partie libère son thread à chaque attente, et est soumise à nouveau à sa reprise
+        nouvelle.getJeu().setReprise(() -> executeur.execute(nouvelle));
+        existante = parties.putIfAbsent(id, nouvelle);
+        if (existante != null) {
+            nbPartiesReservees.decrementAndGet();
+            return existante;
+        }
+        try {
+            executeur.execute(nouvelle);
+        } catch (RejectedExecutionException e) {
+            retirer(nouvelle);
+            throw e;
+        }
+        return nouvelle;
+    }
+
+    /**
+     * Retire une partie du serveur et libère sa place (si elle n'a pas déjà été retirée)
+     */
+    private static void retirer(Partie partie) {
+        if (parties.remove(partie.getId(), partie)) {
+            nbPartiesReservees.decrementAndGet();
+        }
+    }
+
+    /**
+     * Vérifie les noms des joueurs d'une nouvelle partie : de 2 à 5 noms (autant que de
+     * couleurs de joueurs), non vides et tous différents
+     *
+     * @throws IllegalArgumentException si les noms ne conviennent pas
+     */
+    static void verifierNoms(String[] nomJoueurs) {
+        int nbMax = Joueur.CouleurJouer.values().length;
+        if (nomJoueurs.length < 2 || nomJoueurs.length > nbMax) {
+            throw new IllegalArgumentException("Il faut de 2 à " + nbMax + " joueurs");
+        }
+        Set<String> noms = new HashSet<>();
+        for (String nom : nomJoueurs) {
+            if (nom == null || nom.isBlank()) {
+                throw new IllegalArgumentException("Nom de joueur vide");
+            }
+            if (!noms.add(nom)) {
+                throw new IllegalArgumentException("Nom de joueur en double : " + nom);
             }
-        } catch (IOException e) {
-            e.printStackTrace();
         }
     }
 
     /**
-     * Ajoute un nouveau client à la liste, et lui transmet l'état actuel de la partie
-     * (cette méthode est appelée lorsqu'une nouvelle connexion est établie)
-     * 
-     * @param session la session du nouveau client
+     * @return la partie d'identifiant id, ou null si elle n'existe pas
      */
-    public static void addClient(Session session) {
-        GameServer.clients.add(session);
-        try {
-            session.getBasicRemote().sendText(etatJeu);
-        } catch (IOException e) {
-            e.printStackTrace();
+    public static Partie getPartie(String id) {
+        return parties.get(id);
+    }
+
+    /**
+     * @return le nombre de parties actuellement hébergées
+     */
+    public static int getNbParties() {
+        return parties.size();
+    }
+
+    /**
+     * Ajoute une nouvelle instruction à la file d'instructions d'une partie
+     * (cette méthode est appelée lorsqu'un message est reçue sur la websocket)
+     *
+     * @param id      l'identifiant de la partie
+     * @param message l'instruction à ajouter
+     */
+    public static void addInput(String id, String message) {
+        Partie partie = parties.get(id);
+        if (partie != null) {
+            partie.addInput(message);
+        }
+    }
+
+    /**
+     * Ajoute un nouveau client à une partie, et lui transmet l'état actuel de la partie
+     * (cette méthode est appelée lorsqu'une nouvelle connexion est établie). Une partie
+     * qui n'existe pas est créée seulement si le client le demande et qu'il prend une
+     * place de joueur : une connexion de spectateur ne crée jamais de partie.
+     *
+     * @param id         l'identifiant de la partie
+     * @param nomJoueurs noms des joueurs si la partie doit être créée
+     * @param creer      true si le client demande la création de la partie quand elle
+     *                   n'existe pas
+     * @param session    la session du nouveau client
+     * @param place      la place du client (indice d'un joueur, Projection.SPECTATEUR
+     *                   ou Projection.COMPLETE)
+     * @param jeton      le jeton qui authentifie le client à sa place, reçu lors de sa
+     *                   première connexion (ignoré pour une place encore libre, un
+     *                   spectateur ou la vue complète)
+     * @param version    la dernière version de l'état reçue par le client s'il se
+     *                   reconnecte (-1 sinon)
+     * @return la partie à laquelle le client a été ajouté, ou null si la partie
+     * n'existe pas (et ne doit pas être créée), si la place demandée n'existe pas ou
+     * si elle est réservée avec un autre jeton
+     * @throws IllegalArgumentException   si la partie n'existe pas et que les noms
+     *                                    des joueurs ne conviennent pas
+     * @throws RejectedExecutionException si la partie n'existe pas et que le
+     *                                    nombre maximal de parties est atteint
+     */
+    public static Partie addClient(String id, String[] nomJoueurs, boolean creer, Session session, int place,
+                                   String jeton, long version) {
+        Partie partie = parties.get(id);
+        if (partie == null) {
+            if (!creer || place < 0) {
+                return null;
+            }
+            partie = creerPartie(id, nomJoueurs);
+        }
+        String jetonPlace = null;
+        if (place >= 0) {
+            jetonPlace = partie.reserverPlace(place, jeton);
+            if (jetonPlace == null) {
+                return null;
+            }
         }
+        partie.addClient(session, place, version, jetonPlace);
+        return partie;
     }
 
     /**
-     * Retire un client de la liste
+     * Retire un client d'une partie
      * (cette méthode est appelée lorsqu'une connexion est fermée)
-     * 
+     *
+     * @param partie  la partie à laquelle le client était connecté
      * @param session la session du client à retirer
      */
-    public static void removeClient(Session session) {
-        GameServer.clients.remove(session);
+    public static void removeClient(Partie partie, Session session) {
+        partie.removeClient(session);
+        if (partie.estTerminee() && !partie.aDesClients()) {
+            retirer(partie);
+        }
+    }
+
+    /**
+     * Retire une partie terminée du serveur si plus aucun client n'y est connecté
+     * (les clients encore connectés gardent l'affichage de l'état final)
+     *
+     * @param partie la partie dont l'exécution est terminée
+     */
+    static void partieTerminee(Partie partie) {
+        if (!partie.aDesClients()) {
+            retirer(partie);
+        }
+    }
+
+    /**
+     * Déconnecte, dans toutes les parties, les clients qui ne lisent plus leurs messages
+     * (exécutée périodiquement par le thread de surveillance)
+     */
+    private static void deconnecterClientsBloques() {
+        long maintenant = System.nanoTime();
+        long delaiMax = TimeUnit.MILLISECONDS.toNanos(DELAI_ENVOI_MAX);
+        for (Partie partie : parties.values()) {
+            partie.deconnecterClientsBloques(maintenant, delaiMax);
+        }
+    }
+
+    /**
+     * Retire les parties auxquelles aucun joueur n'est connecté depuis plus de
+     * DELAI_ABANDON (exécutée périodiquement par le thread de surveillance)
+     */
+    private static void retirerPartiesAbandonnees() {
+        long maintenant = System.nanoTime();
+        long delai = TimeUnit.MILLISECONDS.toNanos(DELAI_ABANDON);
+        for (Partie partie : parties.values()) {
+            if (!PARTIE_PAR_DEFAUT.equals(partie.getId()) && partie.estAbandonnee(maintenant, delai)) {
+                retirer(partie);
+                partie.abandonner();
+                Metriques.PARTIES_ABANDONNEES.increment();
+            }
+        }
     }
 }
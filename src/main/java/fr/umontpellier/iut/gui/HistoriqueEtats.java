@@ -0,0 +1,57 @@
+package fr.umontpellier.iut.gui;
+
+import java.util.ArrayDeque;
+
+/**
+ * Historique borné des dernières versions de l'état d'une partie, utilisé pour
+ * calculer les différences à envoyer aux clients
+ */
+public class HistoriqueEtats {
+    /**
+     * Nombre maximal de versions conservées
+     */
+    private final int capacite;
+    /**
+     * Versions conservées, de la plus ancienne à la plus récente
+     */
+    private final ArrayDeque<EtatVersionne> etats;
+
+    public HistoriqueEtats(int capacite) {
+        this.capacite = capacite;
+        this.etats = new ArrayDeque<>(capacite);
+    }
+
+    /**
+     * Ajoute une nouvelle version (la plus ancienne est oubliée si l'historique est plein)
+     */
+    public synchronized void ajouter(EtatVersionne etat) {
+        if (etats.size() == capacite) {
+            etats.removeFirst();
+        }
+        etats.addLast(etat);
+    }
+
+    /**
+     * @return l'état à la version demandée, ou null si cette version n'est plus
+     * (ou pas encore) dans l'historique
+     */
+    public synchronized EtatVersionne get(long version) {
+        EtatVersionne premier = etats.peekFirst();
+        if (premier == null || version < premier.getVersion()) {
+            return null;
+        }
+        for (EtatVersionne etat : etats) {
+            if (etat.getVersion() == version) {
+                return etat;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return la version la plus récente, ou null si aucun état n'a encore été produit
+     */
+    public synchronized EtatVersionne derniere() {
+        return etats.peekLast();
+    }
+}
@@ -0,0 +1,52 @@
+package fr.umontpellier.iut.gui;
+
+/**
+ * Limiteur de débit par seau de jetons : chaque message consomme un jeton, et les
+ * jetons se reconstituent à débit constant jusqu'à une capacité maximale. Un client
+ * peut donc envoyer une rafale de messages, mais pas dépasser le débit sur la durée.
+ */
+public class LimiteurDebit {
+    /**
+     * Nombre maximal de jetons (taille de la plus grande rafale acceptée)
+     */
+    private final double capacite;
+    /**
+     * Nombre de jetons reconstitués par nanoseconde
+     */
+    private final double jetonsParNano;
+    private double jetons;
+    /**
+     * Date (System.nanoTime()) de la dernière mise à jour du nombre de jetons
+     */
+    private long derniereMiseAJour;
+
+    /**
+     * @param capacite        nombre maximal de messages acceptés en rafale
+     * @param messagesParSeconde débit de messages accepté sur la durée
+     */
+    public LimiteurDebit(int capacite, double messagesParSeconde) {
+        this.capacite = capacite;
+        this.jetonsParNano = messagesParSeconde / 1e9;
+        this.jetons = capacite;
+        this.derniereMiseAJour = System.nanoTime();
+    }
+
+    /**
+     * Consomme un jeton s'il y en a un de disponible
+     *
+     * @return true si le message est accepté, false si le débit est dépassé
+     */
+    public synchronized boolean tenter() {
+        return tenter(System.nanoTime());
+    }
+
+    synchronized boolean tenter(long maintenant) {
+        jetons = Math.min(capacite, jetons + (maintenant - derniereMiseAJour) * jetonsParNano);
+        derniereMiseAJour = maintenant;
+        if (jetons < 1) {
+            return false;
+        }
+        jetons--;
+        return true;
+    }
+}
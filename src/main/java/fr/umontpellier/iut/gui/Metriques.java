@@ -0,0 +1,96 @@
+package fr.umontpellier.iut.gui;
+
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compteurs de fonctionnement du serveur, partagés par toutes les parties.
+ *
+ * Les compteurs sont incrémentés sans verrou par les threads des parties et des
+ * envois, et consultés sur la page /metriques du serveur web (une ligne
+ * "nom valeur" par compteur).
+ */
+public final class Metriques {
+    /**
+     * Nombre de trames compressées, et leur taille totale avant et après compression
+     */
+    public static final LongAdder TRAMES_COMPRESSEES = new LongAdder();
+    public static final LongAdder OCTETS_AVANT_COMPRESSION = new LongAdder();
+    public static final LongAdder OCTETS_APRES_COMPRESSION = new LongAdder();
+    /**
+     * Temps total passé à compresser les trames (en nanosecondes)
+     */
+    public static final LongAdder NANOS_COMPRESSION = new LongAdder();
+
+    /**
+     * Messages des clients refusés : débit dépassé, message d'un spectateur, réponse
+     * invalide au choix en cours, file d'instructions du joueur pleine
+     */
+    public static final LongAdder ENTREES_REFUSEES_DEBIT = new LongAdder();
+    public static final LongAdder ENTREES_REFUSEES_SPECTATEUR = new LongAdder();
+    public static final LongAdder ENTREES_REFUSEES_INVALIDES = new LongAdder();
+    public static final LongAdder ENTREES_REFUSEES_FILE_PLEINE = new LongAdder();
+    /**
+     * Actions préparées par les joueurs pendant le tour des autres
+     */
+    public static final LongAdder ACTIONS_PREPAREES = new LongAdder();
+    /**
+     * Actions composées reçues (plusieurs étapes en un seul message), et actions
+     * composées arrêtées avant leur dernière étape (étape invalide ou fin du tour)
+     */
+    public static final LongAdder ACTIONS_COMPOSEES = new LongAdder();
+    public static final LongAdder ACTIONS_COMPOSEES_INTERROMPUES = new LongAdder();
+    /**
+     * Choix faits par défaut parce que le joueur n'a pas répondu à temps : délai par
+     * choix dépassé, ou fin du tour atteinte
+     */
+    public static final LongAdder DELAIS_DEPASSES_CHOIX = new LongAdder();
+    public static final LongAdder DELAIS_DEPASSES_TOUR = new LongAdder();
+    /**
+     * Joueurs déconnectés remplacés par un joueur automatique
+     */
+    public static final LongAdder REMPLACEMENTS_AUTOMATIQUES = new LongAdder();
+    /**
+     * Parties retirées du serveur parce qu'aucun joueur n'y était plus connecté
+     */
+    public static final LongAdder PARTIES_ABANDONNEES = new LongAdder();
+
+    private Metriques() {
+    }
+
+    /**
+     * @return la valeur de chaque compteur, indexée par son nom
+     */
+    public static Map<String, Long> valeurs() {
+        Map<String, Long> valeurs = new TreeMap<>();
+        valeurs.put("rails_trames_compressees", TRAMES_COMPRESSEES.sum());
+        valeurs.put("rails_octets_avant_compression", OCTETS_AVANT_COMPRESSION.sum());
+        valeurs.put("rails_octets_apres_compression", OCTETS_APRES_COMPRESSION.sum());
+        valeurs.put("rails_nanos_compression", NANOS_COMPRESSION.sum());
+        valeurs.put("rails_entrees_refusees_debit", ENTREES_REFUSEES_DEBIT.sum());
+        valeurs.put("rails_entrees_refusees_spectateur", ENTREES_REFUSEES_SPECTATEUR.sum());
+        valeurs.put("rails_entrees_refusees_invalides", ENTREES_REFUSEES_INVALIDES.sum());
+        valeurs.put("rails_entrees_refusees_file_pleine", ENTREES_REFUSEES_FILE_PLEINE.sum());
+        valeurs.put("rails_actions_preparees", ACTIONS_PREPAREES.sum());
+        valeurs.put("rails_actions_composees", ACTIONS_COMPOSEES.sum());
+        valeurs.put("rails_actions_composees_interrompues", ACTIONS_COMPOSEES_INTERROMPUES.sum());
+        valeurs.put("rails_delais_depasses_choix", DELAIS_DEPASSES_CHOIX.sum());
+        valeurs.put("rails_delais_depasses_tour", DELAIS_DEPASSES_TOUR.sum());
+        valeurs.put("rails_remplacements_automatiques", REMPLACEMENTS_AUTOMATIQUES.sum());
+        valeurs.put("rails_parties_abandonnees", PARTIES_ABANDONNEES.sum());
+        return valeurs;
+    }
+
+    /**
+     * @return les compteurs au format texte, une ligne "nom valeur" par compteur
+     */
+    public static String texte() {
+        StringJoiner joiner = new StringJoiner("\n", "", "\n");
+        for (Map.Entry<String, Long> entree : valeurs().entrySet()) {
+            joiner.add(entree.getKey() + " " + entree.getValue());
+        }
+        return joiner.toString();
+    }
+}
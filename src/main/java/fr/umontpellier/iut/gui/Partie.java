@@ -0,0 +1,448 @@
+package fr.umontpellier.iut.gui;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import fr.umontpellier.iut.rails.Jeu;
+import fr.umontpellier.iut.rails.Joueur;
+import fr.umontpellier.iut.rails.JoueurAleatoire;
+import fr.umontpellier.iut.rails.RoueTemporelle;
+
+import javax.websocket.CloseReason;
+import javax.websocket.Session;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Partie hébergée par le serveur : une instance de jeu, les clients qui y sont
+ * connectés et le dernier état transmis
+ */
+public class Partie implements Runnable {
+    private static final Gson GSON = new Gson();
+    /**
+     * Nombre de versions de l'état conservées pour calculer les différences, y compris
+     * pour les clients qui se reconnectent (un client plus en retard reçoit un
+     * instantané complet)
+     */
+    private static final int TAILLE_HISTORIQUE = Integer.getInteger("rails.historique.taille", 64);
+    /**
+     * Délai de réponse à chaque choix et durée maximale d'un tour (en millisecondes,
+     * 0 pour ne pas limiter), voir Jeu.setDelais()
+     */
+    private static final long DELAI_CHOIX = Long.getLong("rails.delai.choix", 60_000);
+    private static final long DELAI_TOUR = Long.getLong("rails.delai.tour", 180_000);
+    /**
+     * Délai de grâce (en millisecondes) avant qu'un joueur automatique prenne la place
+     * d'un joueur dont plus aucun client n'est connecté
+     */
+    private static final long DELAI_REMPLACEMENT = Long.getLong("rails.remplacement.delai", 30_000);
+    /**
+     * Générateur des jetons des places (voir reserverPlace())
+     */
+    private static final SecureRandom GENERATEUR_JETONS = new SecureRandom();
+
+    /**
+     * Identifiant de la partie (utilisé dans le chemin de la websocket /game/{id})
+     */
+    private final String id;
+    /**
+     * Instance de jeu exécutée pour cette partie
+     */
+    private final Jeu jeu;
+    /**
+     * Clients connectés à la partie, indexés par session (modifiés par les threads
+     * de la websocket et parcourus par le thread du jeu)
+     */
+    private final Map<Session, ClientPartie> clients;
+    /**
+     * Dernières versions de l'état du jeu envoyées aux clients pour la mise à jour de
+     * l'interface graphique
+     */
+    private final HistoriqueEtats historique;
+    /**
+     * Encodeur binaire de l'état (les identifiants des villes dépendent du plateau de la partie)
+     */
+    private final EncodeurBinaire encodeur;
+    /**
+     * Compresseur des trames (le dictionnaire contient les noms des villes du plateau)
+     */
+    private final CompresseurTrames compresseur;
+    /**
+     * Jeton de chaque place, créé par le serveur quand un client réserve la place pour
+     * la première fois (null tant que la place n'est pas réservée)
+     */
+    private final AtomicReferenceArray<String> jetons;
+    /**
+     * Remplacement programmé de chaque place par un joueur automatique (null s'il n'y
+     * en a pas)
+     */
+    private final AtomicReferenceArray<RoueTemporelle.Delai> remplacements;
+    /**
+     * Indique si la partie est terminée (voir Jeu.executer())
+     */
+    private volatile boolean terminee;
+    /**
+     * Date (System.nanoTime()) à laquelle le dernier joueur connecté est parti (ou de
+     * la création de la partie), voir estAbandonnee()
+     */
+    private volatile long sansJoueurDepuis;
+
+    public Partie(String id, String[] nomJoueurs) {
+        this(id, new Jeu(nomJoueurs));
+    }
+
+    /**
+     * @param id  identifiant de la partie
+     * @param jeu le jeu hébergé (pas encore démarré), par exemple créé avec une graine
+     *            choisie
+     */
+    public Partie(String id, Jeu jeu) {
+        this.id = id;
+        this.clients = new ConcurrentHashMap<>();
+        this.historique = new HistoriqueEtats(TAILLE_HISTORIQUE);
+        this.jeu = jeu;
+        this.jeu.setPartie(this);
+        this.jeu.setDelais(DELAI_CHOIX, DELAI_TOUR);
+        this.jetons = new AtomicReferenceArray<>(jeu.getJoueurs().size());
+        this.remplacements = new AtomicReferenceArray<>(jeu.getJoueurs().size());
+        this.encodeur = new EncodeurBinaire(jeu.getVilles());
+        this.compresseur = new CompresseurTrames(jeu.getVilles());
+        this.sansJoueurDepuis = System.nanoTime();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Jeu getJeu() {
+        return jeu;
+    }
+
+    public boolean estTerminee() {
+        return terminee;
+    }
+
+    public boolean aDesClients() {
+        return !clients.isEmpty();
+    }
+
+    /**
+     * Exécute la partie jusqu'à sa fin ou sa prochaine suspension (cette méthode est
+     * appelée par l'exécuteur du serveur, à nouveau à chaque reprise de la partie)
+     */
+    @Override
+    public void run() {
+        if (terminee) {
+            // partie abandonnée : une reprise programmée avant l'abandon ne la relance pas
+            return;
+        }
+        boolean finie = true;
+        try {
+            finie = jeu.executer();
+        } finally {
+            if (finie) {
+                terminee = true;
+                GameServer.partieTerminee(this);
+            }
+        }
+    }
+
+    /**
+     * Ajoute une nouvelle instruction à la file d'instructions du joueur courant
+     * (entrée standard du serveur)
+     *
+     * @param message l'instruction à ajouter
+     * @return true si l'instruction a été acceptée
+     */
+    public boolean addInput(String message) {
+        return addInput(jeu.getJoueurCourant(), message);
+    }
+
+    /**
+     * Ajoute une instruction reçue d'un client. Elle est refusée si le client dépasse
+     * son débit, s'il est spectateur, si ce n'est pas une réponse valide au choix que
+     * le joueur de sa place est en train de faire ou si la file d'instructions de ce
+     * joueur est pleine : dans tous les cas, le thread du jeu n'est pas réveillé.
+     * Un joueur assis qui n'a pas de choix en cours prépare son action suivante
+     * (voir Jeu.preparerAction()). Un tableau JSON est une action composée (voir
+     * addActions()).
+     *
+     * @param session la session du client
+     * @param message l'instruction à ajouter
+     * @return true si l'instruction a été acceptée
+     */
+    public boolean addInput(Session session, String message) {
+        ClientPartie client = clients.get(session);
+        if (client == null) {
+            // message arrivé après le retrait du client (déconnexion) : ce n'est pas un
+            // dépassement de débit
+            return false;
+        }
+        if (!client.getLimiteur().tenter()) {
+            Metriques.ENTREES_REFUSEES_DEBIT.increment();
+            return false;
+        }
+        if (client.getPlace() == Projection.SPECTATEUR) {
+            Metriques.ENTREES_REFUSEES_SPECTATEUR.increment();
+            return false;
+        }
+        Joueur joueur = client.getPlace() == Projection.COMPLETE
+                ? jeu.getJoueurCourant()
+                : jeu.getJoueurs().get(client.getPlace());
+        if (message.startsWith("[")) {
+            return addActions(joueur, message);
+        }
+        if (client.getPlace() == Projection.COMPLETE) {
+            return addInput(joueur, message);
+        }
+        if (!jeu.estEnTrainDeChoisir(joueur)) {
+            Metriques.ACTIONS_PREPAREES.increment();
+            return jeu.preparerAction(joueur, message);
+        }
+        return addInput(joueur, message);
+    }
+
+    /**
+     * Ajoute une action composée, envoyée sous la forme d'un tableau JSON contenant
+     * les réponses aux choix successifs (par exemple ["R42","C12","C17","C33"] pour
+     * prendre la route R42 avec trois cartes, ou ["C5","WAGON"] pour piocher deux
+     * cartes), voir Jeu.addActions()
+     */
+    private boolean addActions(Joueur joueur, String message) {
+        List<String> etapes = new ArrayList<>();
+        try {
+            for (JsonElement etape : JsonParser.parseString(message).getAsJsonArray()) {
+                etapes.add(etape.getAsJsonPrimitive().getAsString());
+            }
+        } catch (JsonParseException | IllegalStateException e) {
+            Metriques.ENTREES_REFUSEES_INVALIDES.increment();
+            return false;
+        }
+        if (!jeu.addActions(joueur, etapes)) {
+            Metriques.ENTREES_REFUSEES_INVALIDES.increment();
+            return false;
+        }
+        Metriques.ACTIONS_COMPOSEES.increment();
+        return true;
+    }
+
+    private boolean addInput(Joueur joueur, String message) {
+        if (!jeu.estChoixAttendu(joueur, message)) {
+            Metriques.ENTREES_REFUSEES_INVALIDES.increment();
+            return false;
+        }
+        if (!jeu.addInput(joueur, message)) {
+            Metriques.ENTREES_REFUSEES_FILE_PLEINE.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Réserve une place de la partie pour un client. À la première connexion à une
+     * place, le serveur crée son jeton (aléatoire) et le renvoie à ce client seulement
+     * (voir addClient()) : seules les connexions suivantes qui présentent ce jeton
+     * peuvent ensuite jouer à cette place.
+     *
+     * @param place l'indice du joueur
+     * @param jeton le jeton présenté par le client (ignoré si la place est libre)
+     * @return le jeton de la place si le client peut y jouer, null sinon
+     */
+    public String reserverPlace(int place, String jeton) {
+        if (place < 0 || place >= jetons.length()) {
+            return null;
+        }
+        String attendu = jetons.get(place);
+        if (attendu == null) {
+            String nouveau = nouveauJeton();
+            if (jetons.compareAndSet(place, null, nouveau)) {
+                return nouveau;
+            }
+            attendu = jetons.get(place);
+        }
+        // comparaison en temps constant : la durée ne dépend pas du préfixe correct
+        if (jeton == null || !MessageDigest.isEqual(attendu.getBytes(StandardCharsets.UTF_8),
+                jeton.getBytes(StandardCharsets.UTF_8))) {
+            return null;
+        }
+        return attendu;
+    }
+
+    private static String nouveauJeton() {
+        byte[] octets = new byte[18];
+        GENERATEUR_JETONS.nextBytes(octets);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(octets);
+    }
+
+    /**
+     * Produit une nouvelle version de l'état de la partie, et programme son envoi à
+     * tous les clients connectés (complète ou sous forme de différence selon leur
+     * protocole). Les envois sont asynchrones : le thread du jeu n'attend jamais
+     * les clients.
+     *
+     * @param version la version de l'état (Jeu.getVersion(), strictement croissante)
+     * @param dataMap l'état de la partie (tel que renvoyé par Jeu.dataMap())
+     */
+    public void setEtatJeu(long version, Map<String, Object> dataMap) {
+        EtatVersionne etat = new EtatVersionne(version, GSON.toJsonTree(dataMap), jeu.getJournal());
+        historique.ajouter(etat);
+        for (ClientPartie client : clients.values()) {
+            client.publier(etat);
+        }
+    }
+
+    /**
+     * Ajoute un nouveau client à la partie, et lui transmet le jeton de sa place puis
+     * l'état actuel
+     *
+     * @param session la session du nouveau client
+     * @param place   la place du client (voir Projection)
+     * @param version la dernière version reçue par le client s'il se reconnecte (-1 sinon)
+     * @param jeton   le jeton de la place du client (voir reserverPlace()), ou null
+     */
+    public void addClient(Session session, int place, long version, String jeton) {
+        ClientPartie client = new ClientPartie(session, historique, encodeur, compresseur, place, version);
+        if (jeton != null) {
+            client.envoyerJeton(jeton);
+        }
+        clients.put(session, client);
+        if (place >= 0) {
+            // le joueur est de retour : il reprend la main
+            annulerRemplacement(place);
+            jeu.setAutomate(jeu.getJoueurs().get(place), null);
+        }
+        EtatVersionne etat = historique.derniere();
+        if (etat != null) {
+            client.publier(etat);
+        }
+    }
+
+    /**
+     * Retire un client de la partie
+     *
+     * @param session la session du client à retirer
+     */
+    public void removeClient(Session session) {
+        ClientPartie client = clients.remove(session);
+        if (client != null) {
+            clientRetire(client.getPlace());
+        }
+    }
+
+    /**
+     * @param maintenant date courante (System.nanoTime())
+     * @param delaiNanos durée maximale sans joueur connecté
+     * @return true si aucun joueur (client assis à une place, ou vue complète) n'est
+     * connecté à la partie depuis plus de delaiNanos
+     */
+    public boolean estAbandonnee(long maintenant, long delaiNanos) {
+        for (ClientPartie client : clients.values()) {
+            if (client.getPlace() != Projection.SPECTATEUR) {
+                return false;
+            }
+        }
+        return maintenant - sansJoueurDepuis > delaiNanos;
+    }
+
+    /**
+     * Arrête une partie abandonnée : elle n'est plus exécutée, ses remplacements
+     * programmés sont annulés et ses spectateurs sont déconnectés
+     */
+    public void abandonner() {
+        terminee = true;
+        for (int place = 0; place < remplacements.length(); place++) {
+            annulerRemplacement(place);
+        }
+        for (ClientPartie client : clients.values()) {
+            clients.remove(client.getSession());
+            try {
+                client.getSession().close(new CloseReason(CloseReason.CloseCodes.GOING_AWAY, "Partie abandonnée"));
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Programme le remplacement par un joueur automatique de chaque place à laquelle
+     * aucun client n'est connecté (à la création de la partie : une place jamais
+     * occupée ne bloque pas la partie plus longtemps qu'une place abandonnée)
+     */
+    public void remplacerPlacesLibres() {
+        for (int place = 0; place < remplacements.length(); place++) {
+            clientRetire(place);
+        }
+    }
+
+    /**
+     * Programme le remplacement du joueur d'une place par un joueur automatique si
+     * plus aucun client n'est connecté à cette place (après DELAI_REMPLACEMENT, sur la
+     * roue temporelle partagée)
+     */
+    private void clientRetire(int place) {
+        if (place != Projection.SPECTATEUR) {
+            sansJoueurDepuis = System.nanoTime();
+        }
+        if (place < 0 || terminee || placeOccupee(place)) {
+            return;
+        }
+        Joueur joueur = jeu.getJoueurs().get(place);
+        RoueTemporelle.Delai delai = RoueTemporelle.partagee().planifier(DELAI_REMPLACEMENT, () -> {
+            // un client a pu se reconnecter entre-temps (avant ou pendant le remplacement)
+            if (!placeOccupee(place)) {
+                Metriques.REMPLACEMENTS_AUTOMATIQUES.increment();
+                jeu.setAutomate(joueur, new JoueurAleatoire());
+                if (placeOccupee(place)) {
+                    jeu.setAutomate(joueur, null);
+                }
+            }
+        });
+        RoueTemporelle.Delai precedent = remplacements.getAndSet(place, delai);
+        if (precedent != null) {
+            precedent.annuler();
+        }
+    }
+
+    /**
+     * @return true si un client est connecté à la place
+     */
+    private boolean placeOccupee(int place) {
+        for (ClientPartie client : clients.values()) {
+            if (client.getPlace() == place) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void annulerRemplacement(int place) {
+        RoueTemporelle.Delai delai = remplacements.getAndSet(place, null);
+        if (delai != null) {
+            delai.annuler();
+        }
+    }
+
+    /**
+     * Déconnecte les clients dont un envoi est bloqué depuis trop longtemps
+     *
+     * @param maintenant    date courante (System.nanoTime())
+     * @param delaiMaxNanos durée maximale d'un envoi
+     */
+    public void deconnecterClientsBloques(long maintenant, long delaiMaxNanos) {
+        for (ClientPartie client : clients.values()) {
+            if (client.estBloque(maintenant, delaiMaxNanos)) {
+                clients.remove(client.getSession());
+                client.deconnecter();
+                clientRetire(client.getPlace());
+            }
+        }
+    }
+}
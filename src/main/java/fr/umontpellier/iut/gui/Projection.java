@@ -0,0 +1,101 @@
+package fr.umontpellier.iut.gui;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.Map;
+
+/**
+ * Vue de l'état du jeu pour un client : un joueur assis à une place ne voit que
+ * ses propres cartes et destinations, un spectateur ne voit aucune information
+ * cachée. Les informations cachées sont remplacées par leur nombre.
+ *
+ * La projection est une fonction pure de l'état complet : elle est calculée une
+ * seule fois par version et par vue (voir EtatVersionne.pour()), puis partagée par
+ * tous les clients qui ont la même vue.
+ */
+public final class Projection {
+    /**
+     * Vue complète, sans rien cacher (interface web fournie, où tous les joueurs
+     * jouent sur le même écran)
+     */
+    public static final int COMPLETE = -2;
+    /**
+     * Vue d'un spectateur
+     */
+    public static final int SPECTATEUR = -1;
+
+    /**
+     * Informations cachées aux autres joueurs, et clé sous laquelle leur nombre est donné
+     */
+    private static final Map<String, String> CACHEES = Map.of(
+            "main", "nbCartesMain",
+            "destinationsIncompletes", "nbDestinationsIncompletes",
+            "destinationsCompletes", "nbDestinationsCompletes");
+
+    private Projection() {
+    }
+
+    /**
+     * @param etat  l'état complet du jeu (tel que produit par Jeu.dataMap())
+     * @param place l'indice du joueur qui regarde, SPECTATEUR ou COMPLETE
+     * @return l'état vu depuis cette place (les valeurs non modifiées sont partagées
+     * avec l'état complet, qui n'est jamais modifié)
+     */
+    public static JsonElement projeter(JsonElement etat, int place) {
+        if (place == COMPLETE) {
+            return etat;
+        }
+        JsonObject complet = etat.getAsJsonObject();
+        JsonObject vue = new JsonObject();
+        for (Map.Entry<String, JsonElement> entree : complet.entrySet()) {
+            vue.add(entree.getKey(), entree.getValue());
+        }
+        // la graine de la partie révèle l'ordre des pioches
+        vue.remove("graine");
+
+        JsonArray joueurs = new JsonArray();
+        JsonArray joueursComplets = complet.getAsJsonArray("joueurs");
+        for (int i = 0; i < joueursComplets.size(); i++) {
+            JsonObject joueur = joueursComplets.get(i).getAsJsonObject();
+            joueurs.add(i == place ? joueur : cacher(joueur));
+        }
+        vue.add("joueurs", joueurs);
+
+        // pendant la mise en place simultanée, chaque joueur voit son propre choix en cours
+        JsonElement choixEnCours = vue.remove("choixEnCours");
+        if (choixEnCours != null) {
+            JsonObject choix = place >= 0 ? choixEnCours.getAsJsonArray().get(place).getAsJsonObject() : null;
+            if (choix != null && choix.has("boutons")) {
+                vue.add("instruction", choix.get("instruction"));
+                vue.add("boutons", choix.get("boutons"));
+                vue.add("choix", choix.get("choix"));
+            } else {
+                vue.add("boutons", new JsonArray());
+                vue.add("choix", new JsonObject());
+            }
+            return vue;
+        }
+
+        // les choix proposés au joueur courant peuvent révéler ses cartes ou les destinations piochées
+        if (complet.get("joueurCourant").getAsInt() != place) {
+            vue.add("boutons", new JsonArray());
+            vue.add("choix", new JsonObject());
+        }
+        return vue;
+    }
+
+    private static JsonObject cacher(JsonObject joueur) {
+        JsonObject resultat = new JsonObject();
+        for (Map.Entry<String, JsonElement> entree : joueur.entrySet()) {
+            String nombre = CACHEES.get(entree.getKey());
+            if (nombre == null) {
+                resultat.add(entree.getKey(), entree.getValue());
+            } else {
+                resultat.addProperty(nombre, entree.getValue().getAsJsonArray().size());
+            }
+        }
+        return resultat;
+    }
+}
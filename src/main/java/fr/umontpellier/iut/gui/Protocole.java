@@ -0,0 +1,56 @@
+package fr.umontpellier.iut.gui;
+
+/**
+ * Formats de transmission de l'état du jeu, négociés avec le client par le
+ * sous-protocole de la websocket
+ */
+public enum Protocole {
+    /**
+     * Document JSON complet à chaque mise à jour (interface web fournie, aucun sous-protocole)
+     */
+    JSON(""),
+    /**
+     * Instantané JSON versionné à la connexion, puis uniquement les différences
+     * (opérations JSON-Patch) par rapport à la dernière version reçue par le client.
+     * Les messages sont des trames binaires contenant le JSON encodé en UTF-8.
+     */
+    DELTA("rails-delta"),
+    /**
+     * Instantané complet à chaque mise à jour, dans l'encodage binaire compact
+     * décrit par EncodeurBinaire (entiers variables, identifiants numériques,
+     * ensembles de routes sous forme de bitsets)
+     */
+    BINAIRE("rails-bin"),
+    /**
+     * Les mêmes messages que DELTA, compressés en deflate avec un dictionnaire
+     * prédéfini (voir CompresseurTrames). Le premier message reçu par le client est
+     * le dictionnaire lui-même, non compressé.
+     */
+    DEFLATE("rails-deflate");
+
+    /**
+     * Nom du sous-protocole websocket correspondant
+     */
+    private final String sousProtocole;
+
+    Protocole(String sousProtocole) {
+        this.sousProtocole = sousProtocole;
+    }
+
+    public String getSousProtocole() {
+        return sousProtocole;
+    }
+
+    /**
+     * @param sousProtocole le sous-protocole négocié avec le client (éventuellement vide ou null)
+     * @return le protocole correspondant (JSON par défaut)
+     */
+    public static Protocole depuis(String sousProtocole) {
+        for (Protocole protocole : values()) {
+            if (protocole.sousProtocole.equals(sousProtocole)) {
+                return protocole;
+            }
+        }
+        return JSON;
+    }
+}
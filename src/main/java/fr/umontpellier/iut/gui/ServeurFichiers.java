@@ -0,0 +1,249 @@
+package fr.umontpellier.iut.gui;
+
+import org.glassfish.grizzly.CompletionHandler;
+import org.glassfish.grizzly.EmptyCompletionHandler;
+import org.glassfish.grizzly.WriteResult;
+import org.glassfish.grizzly.http.Method;
+import org.glassfish.grizzly.http.server.HttpHandler;
+import org.glassfish.grizzly.http.server.Request;
+import org.glassfish.grizzly.http.server.Response;
+import org.glassfish.grizzly.http.util.HttpStatus;
+import org.glassfish.grizzly.http.util.MimeType;
+import org.glassfish.grizzly.memory.Buffers;
+import org.glassfish.grizzly.memory.MemoryManager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serveur HTTP des fichiers de l'interface web (dossier web/).
+ *
+ * Les fichiers sont recensés au démarrage : pour chacun sont calculés un ETag fort
+ * (empreinte SHA-256 du contenu) et une variante compressée gzip pour les fichiers
+ * texte, conservée en mémoire. Une variante brotli est utilisée si un fichier .br a
+ * été produit à côté du fichier original (la JDK ne sait pas compresser en brotli).
+ *
+ * Les fichiers non compressés sont transmis par sendfile (FileChannel.transferTo,
+ * sans copie par la JVM). Les variantes compressées ne peuvent pas l'être (Grizzly
+ * force l'en-tête Content-Encoding: identity lors d'un sendfile) : elles sont
+ * transmises directement depuis leur tableau d'octets, sans recompression ni copie.
+ *
+ * Les fichiers de assets/ ont un nom qui contient l'empreinte de leur contenu : ils
+ * sont marqués immuables et mis en cache un an par les navigateurs. Les autres
+ * fichiers sont revalidés à chaque chargement (réponse 304 si l'ETag n'a pas changé).
+ */
+public class ServeurFichiers extends HttpHandler {
+    private static final String CACHE_IMMUABLE = "public, max-age=31536000, immutable";
+    private static final String CACHE_REVALIDATION = "no-cache";
+    /**
+     * Extensions des fichiers pour lesquels une variante compressée est préparée
+     */
+    private static final Set<String> EXTENSIONS_TEXTE = Set.of("html", "js", "css", "svg", "json", "txt");
+
+    /**
+     * Variante d'un fichier (originale ou compressée)
+     *
+     * @param encodage valeur de l'en-tête Content-Encoding (null pour l'originale)
+     * @param octets   contenu de la variante compressée (null pour l'originale, transmise par sendfile)
+     * @param etag     ETag fort de la variante
+     */
+    private record Variante(String encodage, byte[] octets, String etag) {
+    }
+
+    /**
+     * Fichier servi et ses variantes
+     */
+    private record Fichier(Path chemin, long taille, String type, String cache,
+                           Variante originale, Variante gzip, Variante brotli) {
+    }
+
+    /**
+     * Fichiers servis, indexés par leur chemin dans l'URL (ex : "/assets/index-4ba000e5.js")
+     */
+    private final Map<String, Fichier> fichiers;
+
+    /**
+     * @param racine le dossier contenant les fichiers de l'interface web
+     * @throws IOException si le dossier ne peut pas être lu
+     */
+    public ServeurFichiers(Path racine) throws IOException {
+        fichiers = new HashMap<>();
+        try (Stream<Path> chemins = Files.walk(racine)) {
+            for (Path chemin : (Iterable<Path>) chemins.filter(Files::isRegularFile)::iterator) {
+                String nom = chemin.getFileName().toString();
+                if (nom.endsWith(".br") || nom.endsWith(".gz")) {
+                    continue;
+                }
+                String url = "/" + racine.relativize(chemin).toString().replace('\\', '/');
+                fichiers.put(url, preparer(chemin, url));
+            }
+        }
+    }
+
+    private static Fichier preparer(Path chemin, String url) throws IOException {
+        String nom = chemin.getFileName().toString();
+        byte[] contenu = Files.readAllBytes(chemin);
+        String empreinte = empreinte(contenu);
+        String type = MimeType.getByFilename(nom);
+        String cache = url.startsWith("/assets/") ? CACHE_IMMUABLE : CACHE_REVALIDATION;
+
+        Variante gzip = null;
+        String extension = nom.substring(nom.lastIndexOf('.') + 1);
+        if (EXTENSIONS_TEXTE.contains(extension)) {
+            byte[] compresse = gzip(contenu);
+            if (compresse.length < contenu.length) {
+                gzip = new Variante("gzip", compresse, "\"" + empreinte + "-gz\"");
+            }
+        }
+        Variante brotli = null;
+        Path cheminBrotli = chemin.resolveSibling(nom + ".br");
+        if (Files.isRegularFile(cheminBrotli)) {
+            brotli = new Variante("br", Files.readAllBytes(cheminBrotli), "\"" + empreinte + "-br\"");
+        }
+        return new Fichier(chemin, contenu.length, type == null ? "application/octet-stream" : type, cache,
+                new Variante(null, null, "\"" + empreinte + "\""), gzip, brotli);
+    }
+
+    @Override
+    public void service(Request request, Response response) throws Exception {
+        Method methode = request.getMethod();
+        if (methode != Method.GET && methode != Method.HEAD) {
+            response.setHeader("Allow", "GET, HEAD");
+            response.sendError(HttpStatus.METHOD_NOT_ALLOWED_405.getStatusCode());
+            return;
+        }
+        String url = request.getDecodedRequestURI();
+        Fichier fichier = fichiers.get(url.endsWith("/") ? url + "index.html" : url);
+        if (fichier == null) {
+            response.sendError(HttpStatus.NOT_FOUND_404.getStatusCode());
+            return;
+        }
+
+        Variante variante = choisirVariante(fichier, request.getHeader("Accept-Encoding"));
+        response.setHeader("ETag", variante.etag());
+        response.setHeader("Cache-Control", fichier.cache());
+        response.setHeader("Vary", "Accept-Encoding");
+        if (correspond(request.getHeader("If-None-Match"), variante.etag())) {
+            response.setStatus(HttpStatus.NOT_MODIFIED_304);
+            return;
+        }
+        response.setContentType(fichier.type());
+        if (variante.encodage() != null) {
+            response.setHeader("Content-Encoding", variante.encodage());
+        }
+        if (methode == Method.HEAD) {
+            response.setContentLengthLong(variante.octets() == null ? fichier.taille() : variante.octets().length);
+            return;
+        }
+
+        if (variante.octets() != null) {
+            response.setContentLength(variante.octets().length);
+            response.getOutputBuffer().writeBuffer(Buffers.wrap(MemoryManager.DEFAULT_MEMORY_MANAGER, variante.octets()));
+        } else {
+            response.suspend();
+            response.getOutputBuffer().sendfile(fichier.chemin().toFile(), 0, fichier.taille(), reprise(response));
+        }
+    }
+
+    /**
+     * @return le gestionnaire qui reprend la réponse suspendue à la fin d'un sendfile
+     * (OutputBuffer.sendfile() attend un CompletionHandler du type brut WriteResult)
+     */
+    @SuppressWarnings("rawtypes")
+    private static CompletionHandler<WriteResult> reprise(Response response) {
+        return new EmptyCompletionHandler<>() {
+            @Override
+            public void completed(WriteResult resultat) {
+                response.resume();
+            }
+
+            @Override
+            public void failed(Throwable erreur) {
+                response.resume();
+            }
+        };
+    }
+
+    /**
+     * @return la meilleure variante acceptée par le client (brotli, puis gzip, puis l'originale)
+     */
+    private static Variante choisirVariante(Fichier fichier, String acceptEncoding) {
+        if (acceptEncoding != null) {
+            if (fichier.brotli() != null && accepte(acceptEncoding, "br")) {
+                return fichier.brotli();
+            }
+            if (fichier.gzip() != null && accepte(acceptEncoding, "gzip")) {
+                return fichier.gzip();
+            }
+        }
+        return fichier.originale();
+    }
+
+    /**
+     * @return true si l'en-tête Accept-Encoding contient l'encodage (sans q=0)
+     */
+    static boolean accepte(String acceptEncoding, String encodage) {
+        for (String element : acceptEncoding.split(",")) {
+            String[] parties = element.trim().split(";");
+            if (parties[0].trim().equalsIgnoreCase(encodage)) {
+                return parties.length < 2 || !parties[1].replace(" ", "").matches("(?i)q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true si l'en-tête If-None-Match contient l'ETag (ou "*"), y compris sous
+     * sa forme faible W/"..." (If-None-Match utilise la comparaison faible)
+     */
+    static boolean correspond(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String element : ifNoneMatch.split(",")) {
+            String valeur = element.trim();
+            if (valeur.startsWith("W/")) {
+                valeur = valeur.substring(2);
+            }
+            if (valeur.equals("*") || valeur.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String empreinte(byte[] contenu) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(contenu);
+            return HexFormat.of().formatHex(hash, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] gzip(byte[] contenu) {
+        ByteArrayOutputStream resultat = new ByteArrayOutputStream(contenu.length / 3);
+        try (GZIPOutputStream sortie = new GZIPOutputStream(resultat) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            sortie.write(contenu);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return resultat.toByteArray();
+    }
+}
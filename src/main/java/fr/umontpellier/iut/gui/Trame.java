@@ -0,0 +1,56 @@
+package fr.umontpellier.iut.gui;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Message déjà encodé, partagé par tous les clients qui doivent le recevoir.
+ *
+ * Les octets sont produits une seule fois et ne doivent jamais être modifiés :
+ * chaque envoi utilise une vue indépendante (position et limite propres) sur le
+ * même tableau. Le tableau a exactement la taille du message, car Tyrus envoie
+ * le tableau sous-jacent du tampon en entier (ByteBuffer.array()), ce qui exclut
+ * aussi les tampons directs ou en lecture seule.
+ */
+public final class Trame {
+    private final ByteBuffer octets;
+    /**
+     * Version compressée de la trame (calculée à la première demande)
+     */
+    private volatile Trame compressee;
+
+    public Trame(byte[] octets) {
+        this.octets = ByteBuffer.wrap(octets);
+    }
+
+    public static Trame depuisTexte(String texte) {
+        return new Trame(texte.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return une vue sur les octets de la trame, à utiliser pour un seul envoi
+     */
+    public ByteBuffer getOctets() {
+        return octets.duplicate();
+    }
+
+    /**
+     * @param compresseur le compresseur de la partie
+     * @return la trame compressée (compressée une seule fois pour tous les clients)
+     */
+    public Trame compressee(CompresseurTrames compresseur) {
+        Trame resultat = compressee;
+        if (resultat == null) {
+            resultat = compresseur.compresser(this);
+            compressee = resultat;
+        }
+        return resultat;
+    }
+
+    /**
+     * @return la taille de la trame en octets
+     */
+    public int taille() {
+        return octets.capacity();
+    }
+}
@@ -1,23 +1,55 @@
 package fr.umontpellier.iut.gui;
 
 import javax.websocket.*;
+import javax.websocket.server.PathParam;
 import javax.websocket.server.ServerEndpoint;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.RejectedExecutionException;
 
-@ServerEndpoint(value = "/")
+/**
+ * Point d'accès websocket d'une partie : les clients se connectent sur /game/{id}.
+ * Un joueur (client qui demande une place) crée la partie si elle n'existe pas en
+ * ajoutant le paramètre "creer", avec les noms donnés par le paramètre "joueurs"
+ * séparés par des virgules ; un spectateur ne crée jamais de partie. Le format des mises à jour est choisi par le
+ * sous-protocole demandé par le client (voir Protocole). Le paramètre "place" donne
+ * l'indice du joueur contrôlé par le client. Le premier client qui se connecte à une
+ * place reçoit le jeton de cette place, créé par le serveur, dans un message texte
+ * {"jeton": "..."} : seuls les clients qui présentent ensuite ce jeton avec le
+ * paramètre "jeton" peuvent jouer à cette place.
+ * Sans place, le client est spectateur : il ne reçoit aucune information cachée et
+ * ses messages sont ignorés. Un client qui se reconnecte peut donner la
+ * dernière version qu'il a reçue avec le paramètre "version" : il ne reçoit alors que
+ * ce qui a changé depuis (si cette version est encore dans l'historique de la partie).
+ */
+@ServerEndpoint(value = "/game/{id}", subprotocols = {"rails-delta", "rails-bin", "rails-deflate"})
 public class WebSocketClient {
+    /**
+     * Clé de la partie dans les propriétés de la session
+     */
+    static final String PARTIE = "partie";
+
     @OnOpen
-    public void onOpen(Session session) {
-        GameServer.addClient(session);
+    public void onOpen(Session session, @PathParam("id") String id) {
+        ouvrir(session, id, nomJoueurs(session), parametre(session, "creer") != null, place(session),
+                parametre(session, "jeton"), version(session));
     }
 
     @OnMessage
     public void onMessage(String message, Session session) {
-        GameServer.addInput(message);
+        Partie partie = (Partie) session.getUserProperties().get(PARTIE);
+        if (partie != null) {
+            partie.addInput(session, message);
+        }
     }
 
     @OnClose
     public void onClose(Session session) {
-        GameServer.removeClient(session);
+        Partie partie = (Partie) session.getUserProperties().get(PARTIE);
+        if (partie != null) {
+            GameServer.removeClient(partie, session);
+        }
     }
 
     @OnError
@@ -25,4 +57,97 @@ public class WebSocketClient {
         exception.printStackTrace();
         System.err.println("Error for client: " + session.getId());
     }
-}
\ No newline at end of file
+
+    /**
+     * Rattache la session à une partie, ou ferme la session si la partie n'existe pas
+     * (et ne doit pas être créée), si le serveur ne peut pas héberger de nouvelle
+     * partie, si les noms des joueurs de la partie à créer sont invalides ou si la
+     * place demandée est refusée
+     */
+    static void ouvrir(Session session, String id, String[] nomJoueurs, boolean creer, int place, String jeton,
+                       long version) {
+        try {
+            Partie partie = GameServer.addClient(id, nomJoueurs, creer, session, place, jeton, version);
+            if (partie == null) {
+                fermer(session, CloseReason.CloseCodes.VIOLATED_POLICY,
+                        GameServer.getPartie(id) == null ? "Partie inexistante" : "Place refusée");
+                return;
+            }
+            session.getUserProperties().put(PARTIE, partie);
+        } catch (IllegalArgumentException e) {
+            fermer(session, CloseReason.CloseCodes.CANNOT_ACCEPT, e.getMessage());
+        } catch (RejectedExecutionException e) {
+            fermer(session, CloseReason.CloseCodes.TRY_AGAIN_LATER, "Serveur complet");
+        }
+    }
+
+    private static void fermer(Session session, CloseReason.CloseCodes code, String raison) {
+        try {
+            session.close(new CloseReason(code, raison));
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * @return les noms des joueurs passés en paramètre de la connexion (sans les
+     * espaces autour de chaque nom), ou les noms par défaut
+     */
+    private static String[] nomJoueurs(Session session) {
+        String valeur = parametre(session, "joueurs");
+        if (valeur == null || valeur.isBlank()) {
+            return GameServer.NOMS_PAR_DEFAUT;
+        }
+        // limite -1 : les noms vides (par exemple ",") sont conservés, puis refusés
+        String[] noms = valeur.split(",", -1);
+        for (int i = 0; i < noms.length; i++) {
+            noms[i] = noms[i].strip();
+        }
+        return noms;
+    }
+
+    /**
+     * @return la place demandée par le client, ou Projection.SPECTATEUR si elle est
+     * absente ou invalide
+     */
+    private static int place(Session session) {
+        try {
+            return Math.max(Integer.parseInt(parametre(session, "place")), Projection.SPECTATEUR);
+        } catch (NumberFormatException e) {
+            return Projection.SPECTATEUR;
+        }
+    }
+
+    /**
+     * @return la dernière version reçue par le client, ou -1 si elle est absente ou invalide
+     */
+    private static long version(Session session) {
+        try {
+            return Long.parseLong(parametre(session, "version"));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Renvoie la valeur d'un paramètre de la chaîne de requête de la connexion
+     * (Tyrus ne place que les paramètres de chemin dans getRequestParameterMap())
+     *
+     * @param session la session du client
+     * @param nom     le nom du paramètre
+     * @return la valeur décodée du paramètre, ou null s'il est absent
+     */
+    static String parametre(Session session, String nom) {
+        String requete = session.getQueryString();
+        if (requete == null) {
+            return null;
+        }
+        for (String couple : requete.split("&")) {
+            int egal = couple.indexOf('=');
+            String cle = egal < 0 ? couple : couple.substring(0, egal);
+            if (URLDecoder.decode(cle, StandardCharsets.UTF_8).equals(nom)) {
+                return egal < 0 ? "" : URLDecoder.decode(couple.substring(egal + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,35 @@
+package fr.umontpellier.iut.gui;
+
+import javax.websocket.*;
+import javax.websocket.server.ServerEndpoint;
+
+/**
+ * Point d'accès websocket historique ("/") utilisé par l'interface web fournie :
+ * il est rattaché à la partie par défaut du serveur, avec la vue complète (tous les
+ * joueurs jouent sur le même écran)
+ */
+@ServerEndpoint(value = "/")
+public class WebSocketClientParDefaut {
+    private final WebSocketClient client = new WebSocketClient();
+
+    @OnOpen
+    public void onOpen(Session session) {
+        WebSocketClient.ouvrir(session, GameServer.PARTIE_PAR_DEFAUT, GameServer.NOMS_PAR_DEFAUT, false,
+                Projection.COMPLETE, null, -1);
+    }
+
+    @OnMessage
+    public void onMessage(String message, Session session) {
+        client.onMessage(message, session);
+    }
+
+    @OnClose
+    public void onClose(Session session) {
+        client.onClose(session);
+    }
+
+    @OnError
+    public void onError(Throwable exception, Session session) {
+        client.onError(exception, session);
+    }
+}
@@ -0,0 +1,218 @@
+package fr.umontpellier.iut.rails;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * File bornée à plusieurs producteurs et un seul consommateur (le thread du jeu).
+ *
+ * Les messages sont rangés dans un tableau circulaire préalloué : chaque case a un
+ * numéro de séquence qui indique si elle est libre pour le producteur du tour
+ * courant ou remplie pour le consommateur. Les producteurs réservent une case par
+ * une seule opération compareAndSet, sans verrou ni allocation. Le consommateur,
+ * quand la file est vide, se met en attente avec LockSupport.park() et c'est le
+ * producteur suivant qui le réveille (uniquement s'il attend réellement).
+ *
+ * Le consommateur peut aussi attendre sans bloquer de thread : il confie alors à la
+ * file une action (voir surveiller()), exécutée une seule fois par le prochain
+ * producteur ou par reveiller().
+ *
+ * @param <T> le type des messages
+ */
+public class BoiteAuxLettres<T> {
+    private final Object[] messages;
+    /**
+     * Numéro de séquence de chaque case : égal à la position d'écriture attendue si la
+     * case est libre, à cette position + 1 si elle contient un message
+     */
+    private final AtomicLongArray sequences;
+    private final int masque;
+    /**
+     * Prochaine position d'écriture (partagée par les producteurs)
+     */
+    private final AtomicLong queue;
+    /**
+     * Prochaine position de lecture (utilisée uniquement par le consommateur)
+     */
+    private long tete;
+    /**
+     * Thread consommateur, et indicateur qu'il est (ou va être) en attente d'un message
+     */
+    private volatile Thread consommateur;
+    private volatile boolean enAttente;
+    /**
+     * Action à exécuter à l'arrivée du prochain message ou au prochain réveil (null
+     * s'il n'y en a pas), voir surveiller()
+     */
+    private final AtomicReference<Runnable> veilleur = new AtomicReference<>();
+
+    /**
+     * @param capacite nombre maximal de messages en attente (arrondi à la puissance
+     *                 de 2 supérieure)
+     */
+    public BoiteAuxLettres(int capacite) {
+        int taille = Integer.highestOneBit(Math.max(2, capacite) - 1) << 1;
+        this.messages = new Object[taille];
+        this.sequences = new AtomicLongArray(taille);
+        for (int i = 0; i < taille; i++) {
+            sequences.set(i, i);
+        }
+        this.masque = taille - 1;
+        this.queue = new AtomicLong();
+    }
+
+    /**
+     * @return le nombre maximal de messages en attente
+     */
+    public int capacite() {
+        return messages.length;
+    }
+
+    /**
+     * Ajoute un message à la file (peut être appelée par plusieurs threads à la fois)
+     *
+     * @return true si le message a été ajouté, false si la file est pleine
+     */
+    public boolean offer(T message) {
+        while (true) {
+            long position = queue.get();
+            int indice = (int) position & masque;
+            long difference = sequences.get(indice) - position;
+            if (difference == 0) {
+                if (queue.compareAndSet(position, position + 1)) {
+                    messages[indice] = message;
+                    sequences.set(indice, position + 1);
+                    if (enAttente) {
+                        LockSupport.unpark(consommateur);
+                    }
+                    prevenirVeilleur();
+                    return true;
+                }
+            } else if (difference < 0) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Retire le plus ancien message de la file, sans attendre
+     * (réservée au thread consommateur)
+     *
+     * @return le message, ou null si la file est vide
+     */
+    @SuppressWarnings("unchecked")
+    public T poll() {
+        int indice = (int) tete & masque;
+        if (sequences.get(indice) != tete + 1) {
+            return null;
+        }
+        T message = (T) messages[indice];
+        messages[indice] = null;
+        sequences.set(indice, tete + messages.length);
+        tete++;
+        return message;
+    }
+
+    /**
+     * Retire le plus ancien message de la file, en attendant qu'il y en ait un
+     * (réservée au thread consommateur)
+     *
+     * @return le message
+     * @throws InterruptedException si le thread est interrompu pendant l'attente
+     */
+    public T take() throws InterruptedException {
+        return take(() -> false);
+    }
+
+    /**
+     * Retire le plus ancien message de la file, en attendant qu'il y en ait un ou que
+     * la condition d'abandon soit vraie (réservée au thread consommateur). La condition
+     * est vérifiée avant chaque attente et à chaque réveil : le thread qui la rend
+     * vraie doit ensuite appeler reveiller().
+     *
+     * @param abandon condition d'abandon de l'attente
+     * @return le message, ou null si l'attente a été abandonnée
+     * @throws InterruptedException si le thread est interrompu pendant l'attente
+     */
+    public T take(BooleanSupplier abandon) throws InterruptedException {
+        T message = poll();
+        if (message != null) {
+            return message;
+        }
+        consommateur = Thread.currentThread();
+        while (true) {
+            // l'indicateur est levé avant de vérifier une dernière fois la file : un
+            // producteur qui publie après cette vérification verra l'indicateur
+            enAttente = true;
+            message = poll();
+            if (message != null || abandon.getAsBoolean()) {
+                enAttente = false;
+                return message;
+            }
+            LockSupport.park(this);
+            enAttente = false;
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            message = poll();
+            if (message != null) {
+                return message;
+            }
+        }
+    }
+
+    /**
+     * Réveille le thread consommateur s'il attend un message, pour qu'il vérifie sa
+     * condition d'abandon (voir take(BooleanSupplier))
+     */
+    public void reveiller() {
+        if (enAttente) {
+            LockSupport.unpark(consommateur);
+        }
+        prevenirVeilleur();
+    }
+
+    /**
+     * Attend un message sans bloquer le thread consommateur : l'action est exécutée
+     * une seule fois, par le thread qui ajoute le prochain message ou qui appelle
+     * reveiller() (elle doit donc être courte, par exemple soumettre une tâche à un
+     * exécuteur). Si un message est déjà là ou si la condition d'abandon est déjà
+     * vraie, l'action n'est pas programmée (réservée au thread consommateur).
+     *
+     * @param action  l'action à exécuter
+     * @param abandon condition d'abandon de l'attente (voir take(BooleanSupplier))
+     * @return true si l'action a été programmée (elle a peut-être déjà été exécutée),
+     * false si le consommateur peut lire la file sans attendre
+     */
+    public boolean surveiller(Runnable action, BooleanSupplier abandon) {
+        veilleur.set(action);
+        // même principe que dans take() : un producteur qui publie après cette
+        // vérification trouvera l'action
+        boolean pret = sequences.get((int) tete & masque) == tete + 1 || abandon.getAsBoolean();
+        return !pret || !veilleur.compareAndSet(action, null);
+    }
+
+    /**
+     * Annule l'action programmée par surveiller(), si elle n'a pas encore été exécutée
+     * (une autre action programmée entre-temps n'est pas annulée)
+     *
+     * @param action l'action programmée
+     */
+    public void annulerSurveillance(Runnable action) {
+        veilleur.compareAndSet(action, null);
+    }
+
+    private void prevenirVeilleur() {
+        // lecture simple d'abord : le plus souvent, personne ne surveille la file
+        if (veilleur.get() == null) {
+            return;
+        }
+        Runnable action = veilleur.getAndSet(null);
+        if (action != null) {
+            action.run();
+        }
+    }
+}
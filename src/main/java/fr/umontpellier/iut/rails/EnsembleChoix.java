@@ -0,0 +1,132 @@
+package fr.umontpellier.iut.rails;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Ensemble des réponses valides à un choix, rangées par sorte : les cartes, routes et
+ * destinations sont désignées par le numéro de leur nom (C12 → 12, R42 → 42, D7 → 7),
+ * les villes par leur indice dans Jeu.getVilles(), et chaque sorte est un ensemble de
+ * bits. Les autres réponses (WAGON, BATEAU, nombres, "" pour passer, etc.) sont
+ * conservées telles quelles.
+ *
+ * L'ensemble est publié avec chaque choix (voir dataMap()) pour que le client sache
+ * quelles réponses sont valides, et sert à refuser les réponses invalides dès leur
+ * réception (contient() ne fait ni allocation ni calcul d'empreinte pour les cartes,
+ * routes et destinations).
+ */
+public class EnsembleChoix {
+    private final Map<String, Integer> idVilles;
+    private final BitSet cartes = new BitSet();
+    private final BitSet routes = new BitSet();
+    private final BitSet destinations = new BitSet();
+    private final BitSet villes = new BitSet();
+    private final Set<String> autres = new HashSet<>();
+    private boolean vide = true;
+    /**
+     * Forme publiée de l'ensemble (calculée à la première demande)
+     */
+    private Map<String, Object> dataMap;
+
+    /**
+     * @param idVilles indice de chaque ville dans Jeu.getVilles(), à partir de son nom
+     */
+    EnsembleChoix(Map<String, Integer> idVilles) {
+        this.idVilles = idVilles;
+    }
+
+    /**
+     * Ajoute une réponse valide (l'ensemble ne doit plus être modifié une fois publié)
+     */
+    void ajouter(String valeur) {
+        vide = false;
+        BitSet bits = bits(valeur);
+        if (bits == null) {
+            Integer ville = idVilles.get(valeur);
+            if (ville != null) {
+                villes.set(ville);
+            } else {
+                autres.add(valeur);
+            }
+        } else {
+            bits.set(numero(valeur));
+        }
+    }
+
+    public boolean estVide() {
+        return vide;
+    }
+
+    /**
+     * @return true si la valeur est une réponse valide
+     */
+    public boolean contient(String valeur) {
+        if (valeur == null) {
+            return false;
+        }
+        BitSet bits = bits(valeur);
+        if (bits != null) {
+            return bits.get(numero(valeur));
+        }
+        Integer ville = idVilles.get(valeur);
+        return ville != null ? villes.get(ville) : autres.contains(valeur);
+    }
+
+    /**
+     * @return l'ensemble sous sa forme publiée : pour chaque sorte, les bits encodés en
+     * base64 sans remplissage (octets en petit-boutiste : le bit i est le bit i % 8 de
+     * l'octet i / 8), et la liste des autres réponses
+     */
+    public Map<String, Object> dataMap() {
+        if (dataMap == null) {
+            List<String> listeAutres = new ArrayList<>(autres);
+            listeAutres.sort(null);
+            dataMap = Map.of(
+                    "cartes", base64(cartes),
+                    "routes", base64(routes),
+                    "destinations", base64(destinations),
+                    "villes", base64(villes),
+                    "autres", listeAutres);
+        }
+        return dataMap;
+    }
+
+    /**
+     * @return l'ensemble de bits de la sorte de la valeur si c'est un identifiant de
+     * carte, de route ou de destination sous sa forme canonique (lettre suivie d'un
+     * nombre écrit sans zéro en tête, comme getNom() l'écrit : "C05" n'est pas C5),
+     * null sinon
+     */
+    private BitSet bits(String valeur) {
+        if (valeur.length() < 2 || valeur.length() > 10) {
+            return null;
+        }
+        if (valeur.charAt(1) == '0' && valeur.length() > 2) {
+            return null;
+        }
+        for (int i = 1; i < valeur.length(); i++) {
+            if (valeur.charAt(i) < '0' || valeur.charAt(i) > '9') {
+                return null;
+            }
+        }
+        return switch (valeur.charAt(0)) {
+            case 'C' -> cartes;
+            case 'R' -> routes;
+            case 'D' -> destinations;
+            default -> null;
+        };
+    }
+
+    private static int numero(String valeur) {
+        return Integer.parseInt(valeur, 1, valeur.length(), 10);
+    }
+
+    private static String base64(BitSet bits) {
+        return Base64.getEncoder().withoutPadding().encodeToString(bits.toByteArray());
+    }
+}
@@ -0,0 +1,36 @@
+package fr.umontpellier.iut.rails;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Threads qui exécutent les parties.
+ *
+ * Une partie passe l'essentiel de sa vie à attendre la réponse d'un joueur. Sur le
+ * serveur, elle n'occupe aucun thread pendant ces attentes : elle est suspendue au
+ * choix en cours de chaque joueur attendu, puis reprise à ce choix par un petit groupe
+ * de threads (un par cœur) à l'arrivée de la réponse (voir Jeu.setReprise() et
+ * Jeu.executer()). Une partie exécutée sans action de reprise (entrée standard, tests)
+ * attend ses entrées en bloquant son thread, y compris pendant la mise en place
+ * simultanée, où les choix de tous les joueurs sont en cours en même temps.
+ */
+public final class ExecutionJeu {
+    private ExecutionJeu() {
+    }
+
+    /**
+     * Crée une fabrique de threads pour exécuter des parties. Les threads créés sont des
+     * threads démons, nommés prefixe-1, prefixe-2, etc.
+     *
+     * @param prefixe début du nom des threads créés
+     * @return la fabrique
+     */
+    public static ThreadFactory fabrique(String prefixe) {
+        AtomicInteger compteur = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefixe + "-" + compteur.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
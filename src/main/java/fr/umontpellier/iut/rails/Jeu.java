@@ -1,12 +1,18 @@
 package fr.umontpellier.iut.rails;
 
-import com.google.gson.Gson;
-import fr.umontpellier.iut.gui.GameServer;
+import fr.umontpellier.iut.gui.Partie;
 import fr.umontpellier.iut.rails.data.*;
 
 import java.util.*;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 public class Jeu implements Runnable {
     /**
@@ -14,9 +20,25 @@ public class Jeu implements Runnable {
      */
     private final List<Joueur> joueurs;
     /**
-     * Le joueur dont c'est le tour
+     * Le joueur dont c'est le tour (lu par les threads qui ajoutent des instructions
+     * sans préciser de joueur)
      */
-    private Joueur joueurCourant;
+    private volatile Joueur joueurCourant;
+    /**
+     * Liste de toutes les villes du plateau, triées par nom (l'indice d'une ville
+     * dans cette liste lui sert d'identifiant compact)
+     */
+    private final List<Ville> villes;
+    /**
+     * Indice de chaque ville dans la liste villes, à partir de son nom
+     */
+    private final Map<String, Integer> idVilles;
+    /**
+     * Toutes les réponses qu'un choix de la partie peut accepter (cartes, routes,
+     * destinations, villes, pioches, échanges de pions et nombres de pions) : la
+     * première étape d'une action préparée doit en faire partie
+     */
+    private final EnsembleChoix reponsesPossibles;
     /**
      * Liste des villes disponibles sur le plateau de jeu
      */
@@ -25,14 +47,31 @@ public class Jeu implements Runnable {
      * Liste des routes disponibles sur le plateau de jeu
      */
     private final List<Route> routesLibres;
+    /**
+     * Noms des ports libres et des routes libres, lus directement dans portsLibres et
+     * routesLibres (ils font partie des options du tour de chaque joueur)
+     */
+    private final List<String> nomsPortsLibres;
+    private final List<String> nomsRoutesLibres;
+    /**
+     * Longueur de la plus courte route libre, terrestre (indice 0) ou maritime (indice
+     * 1), de chaque couleur (Integer.MAX_VALUE s'il n'y en a pas), recalculée quand le
+     * nombre de routes libres a changé
+     */
+    private final int[][] plusCourtesRoutesLibres = new int[2][Couleur.values().length];
+    private int nbRoutesLibresCalculees = -1;
+    /**
+     * Routes du plateau, indexées par leur nom (libres ou non)
+     */
+    private final Map<String, Route> routesParNom;
     /**
      * Pile de pioche et défausse des cartes wagon
      */
-    private final PilesCartesTransport pilesDeCartesWagon;
+    private PilesCartesTransport pilesDeCartesWagon;
     /**
      * Pile de pioche et défausse des cartes bateau
      */
-    private final PilesCartesTransport pilesDeCartesBateau;
+    private PilesCartesTransport pilesDeCartesBateau;
     /**
      * Cartes de la pioche face visible (normalement il y a 6 cartes face visible)
      */
@@ -42,70 +81,204 @@ public class Jeu implements Runnable {
      */
     private final List<Destination> pileDestinations;
     /**
-     * File d'attente des instructions recues par le serveur
+     * Graine du générateur de la partie (publiée dans l'état complet du jeu pour que la
+     * partie puisse être rejouée)
+     */
+    private final long graine;
+    /**
+     * Générateur de la partie, utilisé pour tous ses mélanges (chaque pile de cartes
+     * transport a son propre générateur, obtenu par split())
+     */
+    private final SplittableRandom random;
+    /**
+     * Numérotation des routes, cartes et destinations de la partie
+     */
+    private final Numerotation numerotation;
+    /**
+     * Nombre maximal d'instructions en attente de lecture pour chaque joueur (les
+     * suivantes sont refusées)
+     */
+    static final int TAILLE_FILE_ENTREES = Integer.getInteger("rails.entrees.max", 64);
+    /**
+     * Nombre maximal d'étapes d'une action composée (une capture de route demande au
+     * plus la route et 7 cartes)
+     */
+    public static final int ETAPES_MAX = Integer.getInteger("rails.actions.etapes", 12);
+    /**
+     * Nombre de messages d'information conservés par le journal de la partie
+     */
+    private static final int TAILLE_JOURNAL = Integer.getInteger("rails.journal.taille", 256);
+    /**
+     * Messages d'information du jeu (seuls les TAILLE_JOURNAL derniers sont conservés)
      */
-    private final BlockingQueue<String> inputQueue;
+    private final JournalJeu log;
     /**
-     * Messages d'information du jeu
+     * Partie du serveur qui héberge le jeu et à laquelle l'état est transmis à chaque prompt
+     * (null si le jeu n'est pas hébergé par le serveur)
      */
-    private final List<String> log;
+    private Partie partie;
 
     private String instruction;
     private Collection<Bouton> boutons;
+    /**
+     * Version de l'état du jeu, incrémentée à chaque modification (choix accepté,
+     * message ajouté au log, nouvelle instruction). Un choix invalide ne modifie pas
+     * l'état : il n'est donc ni réaffiché ni retransmis aux clients.
+     */
+    private long version;
+    /**
+     * Version de l'état lors du dernier affichage (-1 si l'état n'a jamais été affiché)
+     */
+    private long versionAffichee = -1;
+    /**
+     * Indique si les joueurs font leurs choix de mise en place en même temps (chacun
+     * depuis son propre client) plutôt que l'un après l'autre
+     */
+    private boolean miseEnPlaceSimultanee;
+    /**
+     * Vrai pendant la mise en place simultanée : le choix en cours de chaque joueur
+     * est alors ajouté à l'état transmis aux clients
+     */
+    private volatile boolean miseEnPlaceEnCours;
+    /**
+     * Joueur dont le choix a été affiché en dernier (pendant la mise en place
+     * simultanée, ce n'est pas forcément le joueur courant)
+     */
+    private Joueur joueurQuiChoisit;
+    /**
+     * Délai de réponse à chaque choix et durée maximale d'un tour (en millisecondes,
+     * 0 pour ne pas limiter) : passé ce délai, le choix par défaut est fait à la place
+     * du joueur
+     */
+    private long delaiChoix;
+    private long delaiTour;
+    /**
+     * Mode simulation : tous les choix sont faits par des joueurs automatiques, et rien
+     * n'est préparé pour l'affichage (ni sortie console, ni log, ni état transmis)
+     */
+    private boolean simulation;
+    /**
+     * Nombre de tours joués depuis le début de la partie (sans compter la mise en place)
+     */
+    private int nbTours;
+    /**
+     * Action qui relance l'exécution d'une partie suspendue (null si la partie attend
+     * ses entrées en bloquant son thread, voir setReprise())
+     */
+    private Runnable reprise;
+    /**
+     * Attente en cours de la partie suspendue (null si elle n'est pas suspendue), voir
+     * executer()
+     */
+    private Reveil reveil;
+    /**
+     * Indique si la partie a commencé, et si elle est terminée
+     */
+    private boolean demarree;
+    private boolean terminee;
+    /**
+     * Source des entrées des joueurs (null pour lire les entrées dans la file de chaque
+     * joueur), voir setEntrees()
+     */
+    private Function<Joueur, String> entrees;
 
     public Jeu(String[] nomJoueurs) {
-        // initialisation des entrées/sorties
-        inputQueue = new LinkedBlockingQueue<>();
-        log = new ArrayList<>();
-
-        // création des villes et des routes
-        Plateau plateau = Plateau.makePlateauMonde();
-        portsLibres = plateau.getPorts();
-        routesLibres = plateau.getRoutes();
-
-        // création des piles de pioche et défausses des cartes Transport (wagon et
-        // bateau)
-        ArrayList<CarteTransport> cartesWagon = new ArrayList<>();
-        ArrayList<CarteTransport> cartesBateau = new ArrayList<>();
-        for (Couleur c : Couleur.values()) {
-            if (c == Couleur.GRIS) {
-                continue;
+        this(nomJoueurs, ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * @param nomJoueurs noms des joueurs
+     * @param graine     graine du générateur de la partie : deux parties créées avec la
+     *                   même graine ont les mêmes mélanges (cartes transport,
+     *                   destinations et couleurs des joueurs)
+     */
+    public Jeu(String[] nomJoueurs, long graine) {
+        this.graine = graine;
+        random = new SplittableRandom(graine);
+        // les routes, cartes et destinations de la partie sont numérotées à partir de 1
+        numerotation = new Numerotation();
+        // initialisation des sorties (chaque joueur a sa propre file d'entrées)
+        log = new JournalJeu(TAILLE_JOURNAL);
+
+        Numerotation precedente = Numerotation.lier(numerotation);
+        try {
+            // création des villes et des routes
+            Plateau plateau = Plateau.makePlateauMonde();
+            villes = plateau.getVilles().stream().sorted(Comparator.comparing(Ville::nom)).toList();
+            idVilles = new HashMap<>();
+            for (int i = 0; i < villes.size(); i++) {
+                idVilles.put(villes.get(i).nom(), i);
             }
-            for (int i = 0; i < 4; i++) {
-                // Cartes wagon simples avec une ancre
-                cartesWagon.add(new CarteTransport(TypeCarteTransport.WAGON, c, false, true));
+            portsLibres = plateau.getPorts();
+            routesLibres = plateau.getRoutes();
+            routesParNom = new HashMap<>();
+            routesLibres.forEach(r -> routesParNom.put(r.getNom(), r));
+            nomsPortsLibres = noms(portsLibres, Ville::nom);
+            nomsRoutesLibres = noms(routesLibres, Route::getNom);
+
+            // création des piles de pioche et défausses des cartes Transport (wagon et
+            // bateau)
+            ArrayList<CarteTransport> cartesWagon = new ArrayList<>();
+            ArrayList<CarteTransport> cartesBateau = new ArrayList<>();
+            for (Couleur c : Couleur.values()) {
+                if (c == Couleur.GRIS) {
+                    continue;
+                }
+                for (int i = 0; i < 4; i++) {
+                    // Cartes wagon simples avec une ancre
+                    cartesWagon.add(new CarteTransport(TypeCarteTransport.WAGON, c, false, true));
+                }
+                for (int i = 0; i < 7; i++) {
+                    // Cartes wagon simples sans ancre
+                    cartesWagon.add(new CarteTransport(TypeCarteTransport.WAGON, c, false, false));
+                }
+                for (int i = 0; i < 4; i++) {
+                    // Cartes bateau simples (toutes avec une ancre)
+                    cartesBateau.add(new CarteTransport(TypeCarteTransport.BATEAU, c, false, true));
+                }
+                for (int i = 0; i < 6; i++) {
+                    // Cartes bateau doubles (toutes sans ancre)
+                    cartesBateau.add(new CarteTransport(TypeCarteTransport.BATEAU, c, true, false));
+                }
             }
-            for (int i = 0; i < 7; i++) {
-                // Cartes wagon simples sans ancre
-                cartesWagon.add(new CarteTransport(TypeCarteTransport.WAGON, c, false, false));
+            for (int i = 0; i < 14; i++) {
+                // Cartes wagon joker
+                cartesWagon.add(new CarteTransport(TypeCarteTransport.JOKER, Couleur.GRIS, false, true));
             }
-            for (int i = 0; i < 4; i++) {
-                // Cartes bateau simples (toutes avec une ancre)
-                cartesBateau.add(new CarteTransport(TypeCarteTransport.BATEAU, c, false, true));
+            pilesDeCartesWagon = new PilesCartesTransport(cartesWagon, random.split());
+            pilesDeCartesBateau = new PilesCartesTransport(cartesBateau, random.split());
+
+            // création de la liste pile de cartes transport visibles
+            // (les cartes seront retournées plus tard, au début de la partie dans run())
+            cartesTransportVisibles = new ArrayList<>();
+
+            // création des destinations
+            pileDestinations = Destination.makeDestinationsMonde();
+            melanger(pileDestinations, random);
+
+            reponsesPossibles = new EnsembleChoix(idVilles);
+            for (String reponse : List.of("DESTINATION", "WAGON", "BATEAU", "PIONS WAGON", "PIONS BATEAU")) {
+                reponsesPossibles.ajouter(reponse);
             }
-            for (int i = 0; i < 6; i++) {
-                // Cartes bateau doubles (toutes sans ancre)
-                cartesBateau.add(new CarteTransport(TypeCarteTransport.BATEAU, c, true, false));
+            for (int i = 1; i <= 25; i++) {
+                reponsesPossibles.ajouter(String.valueOf(i));
             }
+            villes.forEach(v -> reponsesPossibles.ajouter(v.nom()));
+            routesLibres.forEach(r -> reponsesPossibles.ajouter(r.getNom()));
+            cartesWagon.forEach(c -> reponsesPossibles.ajouter(c.getNom()));
+            cartesBateau.forEach(c -> reponsesPossibles.ajouter(c.getNom()));
+            pileDestinations.forEach(d -> reponsesPossibles.ajouter(d.getNom()));
+        } finally {
+            Numerotation.lier(precedente);
         }
-        for (int i = 0; i < 14; i++) {
-            // Cartes wagon joker
-            cartesWagon.add(new CarteTransport(TypeCarteTransport.JOKER, Couleur.GRIS, false, true));
-        }
-        pilesDeCartesWagon = new PilesCartesTransport(cartesWagon);
-        pilesDeCartesBateau = new PilesCartesTransport(cartesBateau);
-
-        // création de la liste pile de cartes transport visibles
-        // (les cartes seront retournées plus tard, au début de la partie dans run())
-        cartesTransportVisibles = new ArrayList<>();
-
-        // création des destinations
-        pileDestinations = Destination.makeDestinationsMonde();
-        Collections.shuffle(pileDestinations);
+        // les objets créés ensuite hors d'une partie sont numérotés après ceux-ci
+        Route.continuerApres(numerotation);
+        CarteTransport.continuerApres(numerotation);
+        Destination.continuerApres(numerotation);
 
         // création des joueurs
         ArrayList<Joueur.CouleurJouer> couleurs = new ArrayList<>(Arrays.asList(Joueur.CouleurJouer.values()));
-        Collections.shuffle(couleurs);
+        melanger(couleurs, random);
         joueurs = new ArrayList<>();
         for (String nomJoueur : nomJoueurs) {
             joueurs.add(new Joueur(nomJoueur, this, couleurs.remove(0)));
@@ -115,14 +288,129 @@ public class Jeu implements Runnable {
 
 
 
+    public void setPartie(Partie partie) {
+        this.partie = partie;
+    }
+
+    /**
+     * Passe le jeu en mode simulation (à appeler avant run()) : les choix de chaque
+     * joueur sont faits par un joueur automatique, sans attente, et le jeu ne prépare
+     * plus rien pour l'affichage (prompt() et log() ne font rien). La partie se joue
+     * alors entièrement sur le thread qui exécute run().
+     *
+     * @param decisions le joueur automatique de chaque joueur, dans l'ordre des joueurs
+     */
+    public void setSimulation(List<? extends JoueurAutomatique> decisions) {
+        if (decisions.size() != joueurs.size()) {
+            throw new IllegalArgumentException("un joueur automatique est attendu pour chaque joueur");
+        }
+        simulation = true;
+        for (int i = 0; i < joueurs.size(); i++) {
+            joueurs.get(i).setAutomate(decisions.get(i));
+        }
+    }
+
+    public boolean estSimulation() {
+        return simulation;
+    }
+
+    public int getNbTours() {
+        return nbTours;
+    }
+
+    public long getGraine() {
+        return graine;
+    }
+
+    /**
+     * Mélange une liste (algorithme de Fisher-Yates) avec le générateur d'une partie,
+     * plutôt qu'avec le générateur global partagé par Collections.shuffle()
+     */
+    static <T> void melanger(List<T> liste, SplittableRandom random) {
+        for (int i = liste.size() - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            liste.set(i, liste.set(j, liste.get(i)));
+        }
+    }
+
+    public void setDelais(long delaiChoix, long delaiTour) {
+        this.delaiChoix = delaiChoix;
+        this.delaiTour = delaiTour;
+    }
+
+    public long getDelaiChoix() {
+        return delaiChoix;
+    }
+
+    /**
+     * Fixe l'échéance du tour (ou de la mise en place) qui commence pour un joueur
+     */
+    void commencerTour(Joueur joueur) {
+        joueur.setFinTour(delaiTour > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delaiTour) : 0);
+    }
+
+    /**
+     * Confie un joueur à un joueur automatique, par exemple quand il s'est déconnecté
+     * (avec null, le joueur reprend la main). Si le joueur est en train de faire un
+     * choix, le joueur automatique le fait immédiatement.
+     */
+    public void setAutomate(Joueur joueur, JoueurAutomatique automate) {
+        joueur.setAutomate(automate);
+    }
+
+    public void setMiseEnPlaceSimultanee(boolean miseEnPlaceSimultanee) {
+        this.miseEnPlaceSimultanee = miseEnPlaceSimultanee;
+    }
+
+    /**
+     * Fixe l'action qui relance l'exécution de la partie, par exemple en soumettant sa
+     * tâche à un exécuteur. La partie n'occupe alors plus de thread en attendant une
+     * entrée : elle est suspendue, et l'action est exécutée à l'arrivée de l'entrée
+     * (voir executer()). Avec null (par défaut), la partie attend ses entrées en
+     * bloquant son thread.
+     */
+    public void setReprise(Runnable reprise) {
+        this.reprise = reprise;
+    }
+
+    /**
+     * Remplace les files des joueurs par une autre source d'entrées (à appeler avant
+     * run()), par exemple des entrées préparées à l'avance : chaque réponse attendue
+     * d'un joueur est alors lue par source.apply(joueur), sans attente ni suspension
+     *
+     * @param source la source des entrées, ou null pour lire les files des joueurs
+     */
+    public void setEntrees(Function<Joueur, String> source) {
+        this.entrees = source;
+    }
+
+    public Joueur getJoueurCourant() {
+        return joueurCourant;
+    }
+
     public List<Joueur> getJoueurs() {
         return joueurs;
     }
 
+    public List<Ville> getVilles() {
+        return villes;
+    }
+
+    Map<String, Integer> getIdVilles() {
+        return idVilles;
+    }
+
     public List<Ville> getPortsLibres() {
         return new ArrayList<>(portsLibres);
     }
 
+    /**
+     * @return les noms des ports libres, sans copie (à ne pas modifier)
+     */
+    List<String> nomsPortsLibres() {
+        return nomsPortsLibres;
+    }
+
     public boolean removePortsLibres(Ville ville){
         return portsLibres.remove(ville);
     }
@@ -132,7 +420,7 @@ public class Jeu implements Runnable {
         while(!nom.equals(this.portsLibres.get(i).nom())){
             i++;
         }
-        Ville ville = this.getPortsLibres().get(i);
+        Ville ville = this.portsLibres.get(i);
         return ville;
     }
 
@@ -140,10 +428,66 @@ public class Jeu implements Runnable {
         return new ArrayList<>(routesLibres);
     }
 
+    /**
+     * @return les routes libres, sans copie (à ne pas modifier)
+     */
+    List<Route> routesLibres() {
+        return routesLibres;
+    }
+
+    /**
+     * @return les noms des routes libres, sans copie (à ne pas modifier)
+     */
+    List<String> nomsRoutesLibres() {
+        return nomsRoutesLibres;
+    }
+
     public boolean removeRoutesLibre(Route r){
         return routesLibres.remove(r);
     }
 
+    /**
+     * @return les noms des éléments d'une liste, lus dans la liste à chaque accès
+     */
+    private static <T> List<String> noms(List<T> liste, Function<T, String> nom) {
+        return new AbstractList<>() {
+            @Override
+            public String get(int index) {
+                return nom.apply(liste.get(index));
+            }
+
+            @Override
+            public int size() {
+                return liste.size();
+            }
+        };
+    }
+
+    private void calculerPlusCourtesRoutesLibres() {
+        nbRoutesLibresCalculees = routesLibres.size();
+        for (int[] longueurs : plusCourtesRoutesLibres) {
+            Arrays.fill(longueurs, Integer.MAX_VALUE);
+        }
+        for (Route route : routesLibres) {
+            int[] longueurs = plusCourtesRoutesLibres[route instanceof RouteMaritime ? 1 : 0];
+            int i = route.getCouleur().ordinal();
+            longueurs[i] = Math.min(longueurs[i], route.getLongueur());
+        }
+    }
+
+    /**
+     * @param maritime true pour les routes maritimes, false pour les routes terrestres
+     *                 (les routes paires sont des routes terrestres grises)
+     * @return la longueur de la plus courte route libre de cette sorte et de cette
+     * couleur (Integer.MAX_VALUE s'il n'y en a pas)
+     */
+    int plusCourteRouteLibre(boolean maritime, Couleur couleur) {
+        if (nbRoutesLibresCalculees != routesLibres.size()) {
+            calculerPlusCourtesRoutesLibres();
+        }
+        return plusCourtesRoutesLibres[maritime ? 1 : 0][couleur.ordinal()];
+    }
+
     /**
      * Renvoie une route se trouvant dans la liste routesLibres
      * @param nom Le nom d'une route
@@ -154,16 +498,34 @@ public class Jeu implements Runnable {
         while(!nom.equals(this.routesLibres.get(i).getNom())){
             i++;
         }
-        Route route = this.getRoutesLibres().get(i);
+        Route route = this.routesLibres.get(i);
         return route;
     }
 
+    /**
+     * @param nom un nom quelconque
+     * @return la route du plateau qui porte ce nom, libre ou non (null s'il n'y en a pas)
+     */
+    Route getRoute(String nom) {
+        return routesParNom.get(nom);
+    }
+
     public List<CarteTransport> getCartesTransportVisibles() {
         return new ArrayList<>(cartesTransportVisibles);
     }
 
+    /**
+     * @return les cartes transport visibles, sans copie (à ne pas modifier)
+     */
+    List<CarteTransport> cartesTransportVisibles() {
+        return cartesTransportVisibles;
+    }
+
     public void addCartesTransportVisibles(CarteTransport carte){
-        cartesTransportVisibles.add(carte);
+        // carte nulle quand la pioche est épuisée : la place reste vide
+        if(carte != null){
+            cartesTransportVisibles.add(carte);
+        }
     }
 
     public CarteTransport getCarteTransportVisiblesFromNom(String nom){
@@ -238,23 +600,265 @@ public class Jeu implements Runnable {
     }
 
     /**
-     * Exécute la partie
+     * Mise en place simultanée : les cartes de départ et les destinations proposées
+     * sont tirées dans l'ordre des joueurs, puis chaque joueur fait ses choix
+     * (destinations conservées, répartition des pions) sans attendre les autres : leurs
+     * choix sont en cours en même temps. Les destinations rendues sont replacées sous
+     * la pile à la fin, dans l'ordre des joueurs : le résultat ne dépend pas de l'ordre
+     * des réponses.
      *
-     * C'est cette méthode qui est appelée pour démarrer la partie. Elle doit intialiser le jeu
-     * (retourner les cartes transport visibles, puis demander à chaque joueur de choisir ses destinations initiales
-     * et le nombre de pions wagon qu'il souhaite prendre) puis exécuter les tours des joueurs en appelant la
-     * méthode Joueur.jouerTour() jusqu'à ce que la condition de fin de partie soit réalisée.
+     * @param suite la suite de la partie, une fois que tous les joueurs ont terminé
+     */
+    private void miseEnPlace(Runnable suite) {
+        List<List<Destination>> pioches = new ArrayList<>();
+        List<List<Destination>> rendues = new ArrayList<>();
+        for (Joueur j : joueurs) {
+            j.piocherCartesDepart();
+            pioches.add(j.tirerDestinations(5));
+            rendues.add(new ArrayList<>());
+        }
+
+        for (Joueur j : joueurs) {
+            commencerTour(j);
+        }
+        miseEnPlaceEnCours = true;
+        int[] nbEnCours = {joueurs.size()};
+        Runnable joueurTermine = () -> {
+            if (--nbEnCours[0] > 0) {
+                return;
+            }
+            miseEnPlaceEnCours = false;
+            for (List<Destination> rendu : rendues) {
+                rendu.forEach(this::replacerDestination);
+            }
+            joueurCourant = joueurs.get(0);
+            suite.run();
+        };
+        for (int i = 0; i < joueurs.size(); i++) {
+            Joueur joueur = joueurs.get(i);
+            joueur.garderDestinations(pioches.get(i), 3, rendues.get(i)::add, () -> joueur.repartitionPions(() -> {
+                // les étapes non jouées ne passent pas au premier tour du joueur
+                joueur.terminerTour();
+                joueurTermine.run();
+            }));
+        }
+    }
+
+    /**
+     * Exécute la partie (voir executer())
      */
     public void run() {
-        // IMPORTANT : Le corps de cette fonction est à réécrire entièrement
-        // Un exemple très simple est donné pour illustrer l'utilisation de certaines méthodes
+        executer();
+    }
 
-        //var pour début de fin de partie
-        boolean finDePartie = false;
+    /**
+     * Exécute la partie jusqu'à sa fin, ou jusqu'à sa suspension si une action de reprise
+     * a été fixée (voir setReprise()).
+     *
+     * La partie avance d'un choix à l'autre : chaque choix en cours d'un joueur garde
+     * tout ce qu'il faut pour continuer (instruction, réponses valides, délai, et la
+     * suite de la partie à exécuter avec la réponse, voir Joueur.choisir()). Quand plus
+     * aucun joueur attendu n'a de réponse disponible, une partie suspendue n'occupe
+     * aucun thread : à l'arrivée d'une entrée (ou au réveil) de l'un des joueurs
+     * attendus, l'action de reprise est exécutée une seule fois et doit rappeler cette
+     * méthode, qui reprend la partie là où elle s'était arrêtée.
+     *
+     * @return true si la partie est terminée, false si elle est suspendue
+     * @throws CancellationException si le thread est interrompu pendant l'attente d'une
+     *                               partie qui n'est pas suspendue
+     */
+    public boolean executer() {
+        // les objets créés pendant la partie sont numérotés avec ceux de la partie
+        Numerotation precedente = Numerotation.lier(numerotation);
+        try {
+            if (reveil != null) {
+                // reprise : les files des autres joueurs attendus ne sont plus surveillées
+                reveil.annuler();
+                reveil = null;
+            }
+            if (!demarree) {
+                demarree = true;
+                jouer(() -> terminee = true);
+            }
+            while (true) {
+                List<Joueur> attendus = avancer(() -> terminee);
+                if (terminee) {
+                    return true;
+                }
+                if (reprise == null) {
+                    attendre(attendus);
+                } else {
+                    Reveil suspension = new Reveil(attendus, reprise);
+                    if (suspension.programmer()) {
+                        reveil = suspension;
+                        return false;
+                    }
+                    // une entrée est arrivée pendant la suspension : la partie reprend sur ce thread
+                }
+            }
+        } finally {
+            Numerotation.lier(precedente);
+        }
+    }
 
-        //compteur de tour
-        int compteur = 2*getJoueurs().size()+1;
+    /**
+     * Exécute une suite d'étapes de la partie jusqu'à son terme, en attendant les
+     * entrées des joueurs sur le thread courant (utilisé pour faire jouer un tour ou
+     * un choix isolé, voir par exemple Joueur.jouerTour())
+     *
+     * @param etapes reçoit l'action à exécuter à la fin des étapes, et commence les étapes
+     * @throws CancellationException si le thread est interrompu pendant l'attente
+     */
+    void derouler(Consumer<Runnable> etapes) {
+        boolean[] fini = new boolean[1];
+        etapes.accept(() -> fini[0] = true);
+        while (!fini[0]) {
+            List<Joueur> attendus = avancer(() -> fini[0]);
+            if (!fini[0]) {
+                attendre(attendus);
+            }
+        }
+    }
 
+    /**
+     * Répond aux choix en cours des joueurs tant que l'un d'eux a une réponse
+     * disponible sans attendre (chaque réponse exécute la suite de la partie, qui
+     * commence en général un autre choix)
+     *
+     * @param fin condition d'arrêt (fin des étapes exécutées)
+     * @return les joueurs dont le choix attend une entrée
+     * @throws IllegalStateException si aucun joueur n'a de choix en cours alors que les
+     *                               étapes ne sont pas terminées
+     */
+    private List<Joueur> avancer(BooleanSupplier fin) {
+        boolean aAvance = true;
+        while (aAvance && !fin.getAsBoolean()) {
+            aAvance = false;
+            for (int i = 0; i < joueurs.size() && !fin.getAsBoolean(); i++) {
+                if (joueurs.get(i).avancer()) {
+                    aAvance = true;
+                }
+            }
+        }
+        List<Joueur> attendus = new ArrayList<>();
+        if (fin.getAsBoolean()) {
+            return attendus;
+        }
+        for (Joueur joueur : joueurs) {
+            if (estEnTrainDeChoisir(joueur)) {
+                attendus.add(joueur);
+            }
+        }
+        if (attendus.isEmpty()) {
+            throw new IllegalStateException("aucun choix en cours");
+        }
+        return attendus;
+    }
+
+    /**
+     * Attend, en bloquant le thread courant, la prochaine entrée (ou le prochain réveil)
+     * de l'un des joueurs attendus
+     *
+     * @throws CancellationException si le thread est interrompu
+     */
+    private void attendre(List<Joueur> attendus) {
+        Thread thread = Thread.currentThread();
+        Reveil attente = new Reveil(attendus, () -> LockSupport.unpark(thread));
+        if (attente.programmer()) {
+            while (!attente.estDeclenche() && !thread.isInterrupted()) {
+                LockSupport.park(this);
+            }
+            attente.annuler();
+        }
+        if (thread.isInterrupted()) {
+            // la partie est arrêtée : le thread se termine en conservant son interruption
+            throw new CancellationException("partie interrompue");
+        }
+    }
+
+    /**
+     * Attente de la prochaine entrée (ou du prochain réveil) de l'un des joueurs
+     * attendus : l'action est exécutée une seule fois, par la première entrée qui
+     * arrive, et la surveillance des files des autres joueurs est alors annulée. Une
+     * entrée qui arrive pendant la programmation de l'attente n'exécute pas l'action :
+     * c'est le thread qui programme l'attente qui continue la partie (une partie n'est
+     * jamais exécutée par deux threads à la fois).
+     */
+    private static final class Reveil implements Runnable {
+        private static final int PROGRAMMATION = 0;
+        private static final int PROGRAMME = 1;
+        private static final int DECLENCHE = 2;
+
+        private final List<Joueur> attendus;
+        private final Runnable action;
+        private final AtomicInteger etat = new AtomicInteger(PROGRAMMATION);
+
+        Reveil(List<Joueur> attendus, Runnable action) {
+            this.attendus = attendus;
+            this.action = action;
+        }
+
+        /**
+         * Surveille les files des joueurs attendus
+         *
+         * @return true si l'action sera exécutée à la prochaine entrée, false si une
+         * entrée est déjà arrivée (la surveillance est alors annulée, et la partie
+         * continue sur le thread courant)
+         */
+        boolean programmer() {
+            for (Joueur joueur : attendus) {
+                if (!joueur.getEntrees().surveiller(this, joueur::attenteAbandonnee)) {
+                    annuler();
+                    return false;
+                }
+            }
+            if (etat.compareAndSet(PROGRAMMATION, PROGRAMME)) {
+                return true;
+            }
+            annulerSurveillance();
+            return false;
+        }
+
+        @Override
+        public void run() {
+            if (etat.compareAndSet(PROGRAMME, DECLENCHE)) {
+                annulerSurveillance();
+                action.run();
+            } else {
+                etat.compareAndSet(PROGRAMMATION, DECLENCHE);
+            }
+        }
+
+        boolean estDeclenche() {
+            return etat.get() == DECLENCHE;
+        }
+
+        /**
+         * Annule l'attente (l'action ne sera pas exécutée)
+         */
+        void annuler() {
+            etat.set(DECLENCHE);
+            annulerSurveillance();
+        }
+
+        private void annulerSurveillance() {
+            for (Joueur joueur : attendus) {
+                joueur.getEntrees().annulerSurveillance(this);
+            }
+        }
+    }
+
+    /**
+     * Déroulement de la partie
+     *
+     * C'est cette méthode qui est appelée pour démarrer la partie. Elle doit intialiser le jeu
+     * (retourner les cartes transport visibles, puis demander à chaque joueur de choisir ses destinations initiales
+     * et le nombre de pions wagon qu'il souhaite prendre) puis exécuter les tours des joueurs en appelant la
+     * méthode Joueur.jouerTour() jusqu'à ce que la condition de fin de partie soit réalisée.
+     *
+     * @param fin exécutée à la fin de la partie
+     */
+    private void jouer(Runnable fin) {
         //ajoue des cartes de Transport Visible
         for(int i=0; i<3; i++){
             cartesTransportVisibles.add(piocherCarteBateau());
@@ -264,30 +868,62 @@ public class Jeu implements Runnable {
         if(!cartesTransportVisiblesSontValide()){
             resetCartesTransportVisibles();
         }
-        
-        for (Joueur j: joueurs) {
-            joueurCourant = j;
-            j.setUp();
-        }
-        while(compteur > 0) {
-            for (Joueur j : joueurs) {
-                joueurCourant = j;
-                j.jouerTour();
-                if(j.getNbPions()<=6){
-                    finDePartie= true;
-                }
-                if(finDePartie){
-                    compteur--;
-                }
-                if(compteur==0){
-                    break;
-                }
-            }
 
+        //compteur de tour
+        int compteur = 2*getJoueurs().size()+1;
+        Runnable premierTour = () -> jouerTour(0, compteur, false, fin);
+        if (miseEnPlaceSimultanee) {
+            miseEnPlace(premierTour);
+        } else {
+            setUp(0, premierTour);
+        }
+    }
+
+    /**
+     * Mise en place de chaque joueur, l'un après l'autre, à partir du joueur d'indice i
+     */
+    private void setUp(int i, Runnable suite) {
+        if (i == joueurs.size()) {
+            suite.run();
+            return;
         }
+        Joueur j = joueurs.get(i);
+        joueurCourant = j;
+        commencerTour(j);
+        j.setUp(() -> {
+            j.terminerTour();
+            setUp(i + 1, suite);
+        });
+    }
 
-        // Fin de la partie
+    /**
+     * Tour du joueur d'indice i, suivi des tours suivants jusqu'à la fin de la partie
+     *
+     * @param compteur    nombre de tours restants une fois la fin de partie commencée
+     * @param finDePartie vrai si un joueur n'a plus que 6 pions ou moins
+     */
+    private void jouerTour(int i, int compteur, boolean finDePartie, Runnable fin) {
+        Joueur j = joueurs.get(i);
+        joueurCourant = j;
+        commencerTour(j);
+        j.jouerTour(() -> {
+            j.terminerTour();
+            nbTours++;
+            boolean finCommencee = finDePartie || j.getNbPions() <= 6;
+            int restants = finCommencee ? compteur - 1 : compteur;
+            if (restants == 0) {
+                terminer();
+                fin.run();
+            } else {
+                jouerTour((i + 1) % joueurs.size(), restants, finCommencee, fin);
+            }
+        });
+    }
 
+    /**
+     * Fin de la partie
+     */
+    private void terminer() {
         //calcul score
         for(Joueur j : joueurs){
             j.calculerScoreFinal();
@@ -369,31 +1005,176 @@ public class Jeu implements Runnable {
      * Ajoute un message au log du jeu
      */
     public void log(String message) {
-        log.add(message);
+        if (simulation) {
+            return;
+        }
+        log.ajouter(message);
+        version++;
+    }
+
+    /**
+     * Ajoute un message au log du jeu, sans le construire en mode simulation
+     */
+    public void log(Supplier<String> message) {
+        if (!simulation) {
+            log(message.get());
+        }
+    }
+
+    /**
+     * Indique que l'état du jeu a (peut-être) été modifié
+     * (appelée lorsqu'un joueur fait un choix valide, avant que le choix soit appliqué)
+     */
+    void incrementerVersion() {
+        version++;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public JournalJeu getJournal() {
+        return log;
     }
 
     /**
-     * Ajoute un message à la file d'entrées
+     * Ajoute un message à la file d'entrées du joueur courant (entrée standard et
+     * interface web fournie, où tous les joueurs jouent sur le même écran)
+     *
+     * @return true si le message a été ajouté, false s'il a été refusé
+     */
+    public boolean addInput(String message) {
+        return addInput(joueurCourant, message);
+    }
+
+    /**
+     * Ajoute un message à la file d'entrées d'un joueur, s'il s'agit d'une réponse
+     * valide au choix que ce joueur est en train de faire et que sa file n'est pas
+     * pleine. Un message refusé ne réveille pas le thread du jeu.
+     *
+     * @return true si le message a été ajouté, false s'il a été refusé
      */
-    public void addInput(String message) {
-        inputQueue.add(message);
+    public boolean addInput(Joueur joueur, String message) {
+        return estChoixAttendu(joueur, message) && joueur.getEntrees().offer(message);
     }
 
     /**
-     * Lit une ligne de l'entrée standard
-     * C'est cette méthode qui doit être appelée à chaque fois qu'on veut lire
-     * l'entrée clavier de l'utilisateur (par exemple dans {@code Player.choisir})
+     * Enregistre l'action préparée par un joueur qui n'est pas en train de faire un
+     * choix (par exemple une carte visible ou une route à prendre pendant le tour d'un
+     * autre joueur). Elle remplace l'action préparée précédente ; un message vide
+     * l'annule. L'action est jouée au prochain choix du joueur si elle en est une
+     * réponse valide, et abandonnée sinon.
+     *
+     * @return true si l'action a été enregistrée (ou transmise au choix que le joueur
+     * vient de commencer)
+     */
+    public boolean preparerAction(Joueur joueur, String message) {
+        joueur.getEtapesRestantes().set(null);
+        joueur.getActionPreparee().set(message.isEmpty() ? null : message);
+        // si le joueur a commencé un choix entre-temps, il n'a peut-être pas vu
+        // l'action : elle est alors traitée comme une réponse à ce choix
+        if (joueur.getChoixAttendus() != null) {
+            String action = joueur.getActionPreparee().getAndSet(null);
+            if (action != null) {
+                return addInput(joueur, action);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Ajoute une action composée : les réponses à plusieurs choix successifs du joueur
+     * envoyées en un seul message (par exemple une route puis les cartes utilisées pour
+     * la prendre, ou deux cartes à piocher). La première étape doit être une réponse
+     * valide au choix en cours ; si le joueur n'a pas de choix en cours, elle doit être
+     * une réponse possible dans la partie et l'action devient l'action préparée du
+     * joueur. Les étapes suivantes sont jouées sans attendre par les choix suivants.
+     * Chaque étape est vérifiée avant d'être jouée : à la première étape invalide,
+     * l'action s'arrête et le joueur termine son tour normalement.
+     *
+     * @return true si l'action a été acceptée
+     */
+    public boolean addActions(Joueur joueur, List<String> etapes) {
+        if (etapes.isEmpty() || etapes.size() > ETAPES_MAX) {
+            return false;
+        }
+        List<String> suivantes = etapes.size() > 1 ? List.copyOf(etapes.subList(1, etapes.size())) : null;
+        if (!estEnTrainDeChoisir(joueur)) {
+            if (!reponsesPossibles.contient(etapes.get(0))) {
+                return false;
+            }
+            // toute l'action est publiée d'un coup : le prochain choix la trouve
+            // entière (première étape comprise) ou pas du tout
+            List<String> action = List.copyOf(etapes);
+            joueur.getActionPreparee().set(null);
+            joueur.getEtapesRestantes().set(action);
+            // si le joueur a commencé un choix entre-temps sans voir l'action, elle
+            // est reprise et traitée comme une réponse à ce choix
+            if (!estEnTrainDeChoisir(joueur) || !joueur.getEtapesRestantes().compareAndSet(action, null)) {
+                return true;
+            }
+        }
+        if (!estChoixAttendu(joueur, etapes.get(0))) {
+            return false;
+        }
+        // les étapes suivantes sont en place avant que la première ne soit lue
+        joueur.getEtapesRestantes().set(suivantes);
+        if (!joueur.getEntrees().offer(etapes.get(0))) {
+            joueur.getEtapesRestantes().set(null);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return true si le joueur est en train de faire un choix
+     */
+    public boolean estEnTrainDeChoisir(Joueur joueur) {
+        return joueur.getChoixAttendus() != null;
+    }
+
+    /**
+     * @return true si le joueur est en train de faire un choix et que le message est
+     * une réponse valide à ce choix
+     */
+    public boolean estChoixAttendu(Joueur joueur, String message) {
+        EnsembleChoix choix = joueur.getChoixAttendus();
+        return choix != null && choix.contient(message);
+    }
+
+    /**
+     * Lit la prochaine entrée du joueur courant, sans attendre
      *
      * @return une chaîne de caractères correspondant à l'entrée suivante dans la
-     * file
+     * file (null s'il n'y en a pas)
      */
     public String lireLigne() {
-        try {
-            return inputQueue.take();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-            return null;
+        return lireLigne(joueurCourant);
+    }
+
+    /**
+     * Lit la prochaine entrée d'un joueur, sans attendre
+     * C'est cette méthode qui est appelée à chaque fois qu'on veut lire la réponse
+     * d'un joueur (par exemple dans {@code Joueur.choisir}). L'entrée est lue dans la
+     * source fixée par setEntrees() s'il y en a une, et sinon dans la file du joueur :
+     * si elle est vide, la partie attend la prochaine entrée du joueur (voir executer()).
+     *
+     * @return une chaîne de caractères correspondant à l'entrée suivante dans la
+     * file du joueur (null s'il n'y en a pas)
+     */
+    public String lireLigne(Joueur joueur) {
+        if (entrees != null) {
+            return entrees.apply(joueur);
         }
+        return joueur.getEntrees().poll();
+    }
+
+    /**
+     * Affiche le choix qu'un joueur commence à faire (voir prompt())
+     */
+    void afficherChoix(Joueur joueur, String instruction, Collection<Bouton> boutons, boolean peutPasser) {
+        joueurQuiChoisit = joueur;
+        prompt(instruction, boutons, peutPasser);
     }
 
     /**
@@ -404,21 +1185,44 @@ public class Jeu implements Runnable {
      * @param peutPasser  indique si le joueur peut passer sans faire de choix
      */
     public void prompt(String instruction, Collection<Bouton> boutons, boolean peutPasser) {
+        if (simulation) {
+            return;
+        }
+        if (!Objects.equals(instruction, this.instruction) || !Objects.equals(boutons, this.boutons)) {
+            version++;
+        }
         this.instruction = instruction;
         this.boutons = boutons;
+        afficher();
+    }
+
+    /**
+     * Affiche l'état de la partie et l'instruction en cours, et transmet l'état aux
+     * clients, s'il a changé depuis le dernier affichage
+     */
+    private void afficher() {
+        // rien n'a changé depuis le dernier affichage (le choix précédent était invalide)
+        if (version == versionAffichee) {
+            return;
+        }
+        versionAffichee = version;
+        // pendant la mise en place simultanée, le joueur qui choisit n'est pas forcément le joueur courant
+        String nom = (joueurQuiChoisit != null ? joueurQuiChoisit : joueurCourant).getNom();
 
         System.out.println();
         System.out.println(this);
         if (boutons.isEmpty()) {
-            System.out.printf(">>> %s: %s <<<\n", joueurCourant.getNom(), instruction);
+            System.out.printf(">>> %s: %s <<<\n", nom, instruction);
         } else {
             StringJoiner joiner = new StringJoiner(" / ");
             for (Bouton bouton : boutons) {
                 joiner.add(bouton.toPrompt());
             }
-            System.out.printf(">>> %s: %s [%s] <<<\n", joueurCourant.getNom(), instruction, joiner);
+            System.out.printf(">>> %s: %s [%s] <<<\n", nom, instruction, joiner);
+        }
+        if (partie != null) {
+            partie.setEtatJeu(version, dataMap());
         }
-        GameServer.setEtatJeu(new Gson().toJson(dataMap()));
     }
 
     @Override
@@ -430,8 +1234,17 @@ public class Jeu implements Runnable {
         return joiner.toString();
     }
 
+    /**
+     * @return les réponses valides au choix en cours du joueur courant, sous leur forme
+     * publiée (voir EnsembleChoix.dataMap()), ou une map vide s'il n'a pas de choix en cours
+     */
+    private Map<String, Object> choixCourants() {
+        EnsembleChoix choix = joueurCourant.getChoixAttendus();
+        return choix == null ? Map.of() : choix.dataMap();
+    }
+
     public Map<String, Object> dataMap() {
-        return Map.ofEntries(
+        Map<String, Object> data = Map.ofEntries(
                 Map.entry("joueurs", joueurs.stream().map(Joueur::dataMap).toList()),
                 Map.entry("joueurCourant", joueurs.indexOf(joueurCourant)),
                 Map.entry("piocheWagon", pilesDeCartesWagon.dataMap()),
@@ -440,6 +1253,17 @@ public class Jeu implements Runnable {
                 Map.entry("nbDestinations", pileDestinations.size()),
                 Map.entry("instruction", instruction),
                 Map.entry("boutons", boutons),
-                Map.entry("log", log));
+                Map.entry("choix", choixCourants()),
+                Map.entry("graine", Long.toString(graine)),
+                Map.entry("log", log.recents()));
+        if (!miseEnPlaceEnCours) {
+            return data;
+        }
+        // choix en cours de chaque joueur (map vide si le joueur a terminé)
+        Map<String, Object> avecChoix = new HashMap<>(data);
+        avecChoix.put("choixEnCours", joueurs.stream()
+                .map(j -> Objects.requireNonNullElse(j.getChoixEnCours(), Map.of()))
+                .toList());
+        return avecChoix;
     }
 }
@@ -1,11 +1,16 @@
 package fr.umontpellier.iut.rails;
 
+import fr.umontpellier.iut.gui.Metriques;
 import fr.umontpellier.iut.rails.data.*;
 
 import java.awt.*;
 import java.lang.reflect.Array;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import javax.print.DocFlavor.STRING;
 
@@ -16,6 +21,18 @@ public class Joueur {
         JAUNE, ROUGE, BLEU, VERT, ROSE;
     }
 
+    /**
+     * Choix faits en priorité à la place d'un joueur qui n'a pas répondu à temps
+     * (voir choixParDefaut())
+     */
+    private static final List<String> CHOIX_NEUTRES = List.of("WAGON", "BATEAU");
+    /**
+     * Couleurs des cartes transport, dans l'ordre où les combinaisons sont cherchées
+     */
+    private static final Couleur[] COULEURS_CARTES = {Couleur.BLANC, Couleur.JAUNE, Couleur.NOIR, Couleur.ROUGE, Couleur.VERT, Couleur.VIOLET};
+    private static final Couleur[] COULEURS = Couleur.values();
+    private static final int NB_COULEURS = COULEURS.length;
+
     /**
      * Jeu auquel le joueur est rattaché
      */
@@ -70,6 +87,155 @@ public class Joueur {
      * perdus lors des échanges de pions)
      */
     private int score;
+    /**
+     * File des réponses du joueur (remplie par les threads du serveur, lue par le
+     * thread du jeu dans choisir())
+     */
+    private final BoiteAuxLettres<String> entrees;
+    /**
+     * Réponses valides au choix que le joueur est en train de faire (null s'il n'a
+     * pas de choix à faire) : les autres messages sont refusés dès leur réception
+     */
+    private volatile EnsembleChoix choixAttendus;
+    /**
+     * Instruction et boutons du choix que le joueur est en train de faire (null s'il
+     * n'a pas de choix à faire), transmis dans l'état du jeu pendant la mise en place
+     * simultanée
+     */
+    private volatile Map<String, Object> choixEnCours;
+    /**
+     * Action préparée par le joueur pendant le tour des autres (null s'il n'y en a
+     * pas) : elle est jouée dès son prochain choix si elle est encore valide
+     */
+    private final AtomicReference<String> actionPreparee;
+    /**
+     * Étapes restantes d'une action composée envoyée en un seul message (null s'il
+     * n'y en a pas) : chacune répond au choix suivant du joueur, sans attendre. Une
+     * action préparée pendant le tour des autres y est rangée entière.
+     */
+    private final AtomicReference<List<String>> etapesRestantes;
+    /**
+     * Numéro du choix en cours (incrémenté à chaque appel de choisir()) et numéro du
+     * dernier choix dont le délai de réponse est dépassé (écrit par la roue temporelle)
+     */
+    private long numeroChoix;
+    private volatile long choixExpire = -1;
+    /**
+     * Échéance du tour en cours (System.nanoTime()), 0 s'il n'y en a pas
+     */
+    private long finTour;
+    /**
+     * Indique si le délai du choix en cours est celui de la fin du tour (sinon c'est
+     * le délai par choix)
+     */
+    private boolean delaiParTour;
+    /**
+     * Nombre de choix faits par défaut parce que le joueur n'a pas répondu à temps
+     */
+    private int nbChoixParDefaut;
+    /**
+     * Joueur automatique qui joue à la place du joueur (null si le joueur joue
+     * lui-même), et dernier joueur automatique annoncé dans le log
+     */
+    private volatile JoueurAutomatique automate;
+    private JoueurAutomatique automateAnnonce;
+    /**
+     * Choix que le joueur est en train de faire (null s'il n'a pas de choix à faire),
+     * voir choisir()
+     */
+    private Demande demande;
+
+    /**
+     * Choix en cours d'un joueur : tout ce qu'il faut pour le reprendre là où il en
+     * est, jusqu'à ce qu'une réponse valide soit donnée à la suite de la partie
+     */
+    private static final class Demande {
+        private final String instruction;
+        private final Collection<String> choix;
+        private final Collection<Bouton> boutons;
+        private final boolean peutPasser;
+        /**
+         * Réponses valides (null en mode simulation : le joueur automatique répond
+         * directement)
+         */
+        private final EnsembleChoix choixDistincts;
+        private final Consumer<String> suite;
+        /**
+         * Action préparée ou étape d'une action composée valide, jouée sans attendre
+         */
+        private String entree;
+        /**
+         * Délai de réponse au choix (il continue de courir pendant une suspension de la
+         * partie)
+         */
+        private RoueTemporelle.Delai delai;
+        /**
+         * Indique si le choix a déjà été affiché
+         */
+        private boolean affiche;
+
+        Demande(String instruction, Collection<String> choix, Collection<Bouton> boutons, boolean peutPasser,
+                EnsembleChoix choixDistincts, Consumer<String> suite) {
+            this.instruction = instruction;
+            this.choix = choix;
+            this.boutons = boutons;
+            this.peutPasser = peutPasser;
+            this.choixDistincts = choixDistincts;
+            this.suite = suite;
+        }
+    }
+
+    /**
+     * Listes de choix mises bout à bout, sans copie : les options du tour comprennent
+     * toutes les routes libres, et les boutons s'ajoutent aux choix proposés
+     */
+    private static final class ListeConcatenee extends AbstractList<String> {
+        private final List<List<String>> parties;
+
+        ListeConcatenee(List<List<String>> parties) {
+            this.parties = parties;
+        }
+
+        /**
+         * @return la même liste, suivie d'une autre
+         */
+        ListeConcatenee suivieDe(List<String> suite) {
+            List<List<String>> toutes = new ArrayList<>(parties);
+            toutes.add(suite);
+            return new ListeConcatenee(toutes);
+        }
+
+        @Override
+        public String get(int index) {
+            for (int i = 0; i < parties.size(); i++) {
+                List<String> partie = parties.get(i);
+                if (index < partie.size()) {
+                    return partie.get(index);
+                }
+                index -= partie.size();
+            }
+            throw new IndexOutOfBoundsException(index);
+        }
+
+        @Override
+        public int size() {
+            int taille = 0;
+            for (int i = 0; i < parties.size(); i++) {
+                taille += parties.get(i).size();
+            }
+            return taille;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            for (int i = 0; i < parties.size(); i++) {
+                if (parties.get(i).contains(o)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
 
     public Joueur(String nom, Jeu jeu, CouleurJouer couleur) {
         this.nom = nom;
@@ -85,55 +251,141 @@ public class Joueur {
         this.cartesTransportPosees = new ArrayList<>();
         this.destinations = new ArrayList<>();
         this.score = 0;
+        this.entrees = new BoiteAuxLettres<>(Jeu.TAILLE_FILE_ENTREES);
+        this.actionPreparee = new AtomicReference<>();
+        this.etapesRestantes = new AtomicReference<>();
     }
 
     public String getNom() {
         return nom;
     }
 
+    BoiteAuxLettres<String> getEntrees() {
+        return entrees;
+    }
+
+    EnsembleChoix getChoixAttendus() {
+        return choixAttendus;
+    }
+
+    Map<String, Object> getChoixEnCours() {
+        return choixEnCours;
+    }
+
+    AtomicReference<String> getActionPreparee() {
+        return actionPreparee;
+    }
+
+    AtomicReference<List<String>> getEtapesRestantes() {
+        return etapesRestantes;
+    }
+
+    /**
+     * Termine le tour du joueur : les étapes d'une action composée qui n'ont pas été
+     * jouées pendant le tour sont abandonnées
+     */
+    void terminerTour() {
+        if (etapesRestantes.getAndSet(null) != null) {
+            Metriques.ACTIONS_COMPOSEES_INTERROMPUES.increment();
+        }
+    }
+
+    void setFinTour(long finTour) {
+        this.finTour = finTour;
+    }
+
+    /**
+     * @return true si le délai de réponse au choix en cours est dépassé
+     */
+    boolean delaiDepasse() {
+        return choixExpire == numeroChoix;
+    }
+
+    /**
+     * @return true si l'attente de la réponse du joueur doit être abandonnée (délai
+     * dépassé ou joueur remplacé par un joueur automatique)
+     */
+    boolean attenteAbandonnee() {
+        return delaiDepasse() || automate != null;
+    }
+
+    /**
+     * Confie le joueur à un joueur automatique (ou le rend au joueur avec null) : un
+     * choix en cours est fait immédiatement par le joueur automatique
+     */
+    void setAutomate(JoueurAutomatique automate) {
+        this.automate = automate;
+        entrees.reveiller();
+    }
+
+    public boolean estAutomatique() {
+        return automate != null;
+    }
+
     public void setUp(){
+        jeu.derouler(this::setUp);
+    }
+
+    /**
+     * Mise en place du joueur : cartes de départ, destinations et répartition des pions
+     *
+     * @param suite exécutée une fois la mise en place terminée
+     */
+    void setUp(Runnable suite){
+        piocherCartesDepart();
+
+        piocherCarteDestination(5, 3, () -> repartitionPions(suite));
+    }
+
+    /**
+     * Pioche les cartes transport de départ (3 wagons et 7 bateaux)
+     */
+    void piocherCartesDepart(){
         for(int i=0; i<3;i++){
             cartesTransport.add(jeu.piocherCarteWagon());
         }
         for(int i=0; i<7;i++){
             cartesTransport.add(jeu.piocherCarteBateau());
         }
-
-        piocherCarteDestination(5, 3);
-        
-        repartitionPions();
-        
     }
 
-    private void repartitionPions(){
+    void repartitionPions(Runnable suite){
         List<String> nombreWagonOption = Arrays.asList("10","11","12","13","14","15","16","17","18","19","20","21","22","23","24","25");
-        int nbPionsWagonChoisi;
-        int nbPionsBateauChoisi;
-        String choix;
 
-        choix = choisir(
+        choisir(
                 "Entrez le nombre de pion wagon à conserver parmis les " + nbPionsWagonEnReserve + " en réserve (la somme des wagon et des bateau devras être égale à 60)",
                 nombreWagonOption,
                 null,
-                true);
+                true,
+                choix -> {
+                    int nbPionsWagonChoisi;
+                    int nbPionsBateauChoisi;
 
-        if(!choix.equals("")){
-            nbPionsWagonChoisi = Integer.valueOf(choix);
-        }
-        else{
-            nbPionsWagonChoisi = 20;
-        }
+                    if(!choix.equals("")){
+                        nbPionsWagonChoisi = Integer.valueOf(choix);
+                    }
+                    else{
+                        nbPionsWagonChoisi = 20;
+                    }
 
-        nbPionsBateauChoisi = 60 - nbPionsWagonChoisi;
+                    nbPionsBateauChoisi = 60 - nbPionsWagonChoisi;
 
-        nbPionsBateauEnReserve -= nbPionsBateauChoisi;
-        nbPionsBateau += nbPionsBateauChoisi;
+                    nbPionsBateauEnReserve -= nbPionsBateauChoisi;
+                    nbPionsBateau += nbPionsBateauChoisi;
 
-        nbPionsWagonEnReserve -= nbPionsWagonChoisi;
-        nbPionsWagon += nbPionsWagonChoisi;
+                    nbPionsWagonEnReserve -= nbPionsWagonChoisi;
+                    nbPionsWagon += nbPionsWagonChoisi;
+                    suite.run();
+                });
     }
 
-
+    /**
+     * Joue un tour complet du joueur, en attendant ses réponses sur le thread courant
+     * (voir jouerTour(Runnable))
+     */
+    void jouerTour() {
+        jeu.derouler(this::jouerTour);
+    }
 
     /**
      * Cette méthode est appelée à tour de rôle pour chacun des joueurs de la partie.
@@ -143,104 +395,18 @@ public class Joueur {
      *  - prendre de nouvelles destinations
      *  - capturer une route
      *  - construire un port
+     *
+     * @param suite exécutée à la fin du tour
      */
-    void jouerTour() {
-        String choix;
-        boolean aJoue = false;
-        ArrayList<String> carteVisibleNom = new ArrayList<String>();
-        ArrayList<String> routeNom = new ArrayList<String>();
-
-        List<Ville> portLibre = jeu.getPortsLibres();
-        ArrayList<String> portLibreNom = new ArrayList<String>();
-
+    void jouerTour(Runnable suite) {
         //le joueur remplace les carte transport visible au début de son tour si c'est possible
-        if(jeu.getCartesTransportVisibles().size() < 6 && (!jeu.piocheBateauEstVide() || !jeu.piocheWagonEstVide())){
-            for(int i=0; i<6-jeu.getCartesTransportVisibles().size(); i++){
-                remplacerCarteTransportVisible();
-            }
+        if(jeu.cartesTransportVisibles().size() < 6 && (!jeu.piocheBateauEstVide() || !jeu.piocheWagonEstVide())){
+            remplacerCartesTransportVisibles(0, () -> choisirAction(suite));
         }
-
-        List<Bouton> boutons = new ArrayList<Bouton>();
-        if(nbPionsBateau!=0 && nbPionsWagonEnReserve!=0){
-            boutons.add(new Bouton("Échanger wagon","PIONS WAGON"));
-        }
-        if(nbPionsWagon!=0 && nbPionsBateauEnReserve!=0){
-            boutons.add(new Bouton("Échanger bateau","PIONS BATEAU"));
-        }
-            
-
-            
-
-
-        List<String> options = new ArrayList<String>();
-        if(!jeu.piocheDestinationEstVide()){
-            options.add("DESTINATION");
-        }
-
-        if(!jeu.piocheWagonEstVide()){
-            options.add("WAGON");
-        }
-        if(!jeu.piocheBateauEstVide()){
-            options.add("BATEAU");
-        }
-        
-        for(CarteTransport c : jeu.getCartesTransportVisibles()){
-            options.add(c.getNom());
-            carteVisibleNom.add(c.getNom());
-        }
-        for(Route r : jeu.getRoutesLibres()){
-            options.add(r.getNom());
-            routeNom.add(r.getNom());
-        }
-        if(ports.size()<3){
-            for(Ville v : portLibre){
-                options.add(v.nom());
-                portLibreNom.add(v.getNom());
-            }
+        else{
+            choisirAction(suite);
         }
 
-        do{
-            choix = choisir(
-                    "Choisissez l'action à exécuter durant votre tour :",
-                    options,
-                    boutons,
-                    false);
-
-            if (choix.equals("")) {
-                log(String.format("%s passe son tour", toLog()));
-            }
-            else {
-                log(String.format("%s a choisi %s", toLog(), choix));
-
-                if(choix.equals("BATEAU") || choix.equals("WAGON") || carteVisibleNom.contains(choix) ){
-                    aJoue = this.piocherCarteTransport(choix);
-                }
-                if(choix.equals("PIONS WAGON") || choix.equals("PIONS BATEAU")) {
-                    echangerPion(choix);
-                    aJoue = true;
-                }
-                if(choix.equals("DESTINATION")){
-                    piocherCarteDestination(4,1);
-                    aJoue = true;
-                }
-                if(routeNom.contains(choix)) {
-                    //TODO
-                    log(String.format("%b",peutPrendreRoute(jeu.getRouteFromNom(choix))));
-                    if(peutPrendreRoute(jeu.getRouteFromNom(choix))){
-                        prendreRoute(choix);
-                        aJoue = true;
-                    }
-                    
-                }
-                if(portLibreNom.contains(choix)){
-                    if(peutConstruirePort(jeu.getPortFromNom(choix))){
-                        construirePort(choix);
-                        aJoue = true;
-                    } 
-                }
-            }
-        }while(!aJoue);
-
         //NE PAS SUPPRIMER
         // IMPORTANT : Le corps de cette fonction est à réécrire entièrement
         // Un exemple très simple est donné pour illustrer l'utilisation de certaines méthodes
@@ -260,184 +426,366 @@ public class Joueur {
                 true);
 
         if (choix.equals("")) {
-            log(String.format("%s n'aime aucune ville", toLog()));
+            log(() -> String.format("%s n'aime aucune ville", toLog()));
         } else {
-            log(String.format("%s a choisi %s", toLog(), choix));
+            log(() -> String.format("%s a choisi %s", toLog(), choix));
         }
         */
     }
 
+    /**
+     * Remplace les cartes transport visibles manquantes au début du tour, à partir de
+     * la i-ème
+     */
+    private void remplacerCartesTransportVisibles(int i, Runnable suite) {
+        if(i<6-jeu.cartesTransportVisibles().size()){
+            remplacerCarteTransportVisible(() -> remplacerCartesTransportVisibles(i + 1, suite));
+        }
+        else{
+            suite.run();
+        }
+    }
+
+    /**
+     * Propose au joueur les actions de son tour
+     *
+     * @param suite exécutée une fois que le joueur a joué
+     */
+    private void choisirAction(Runnable suite) {
+        ArrayList<String> carteVisibleNom = new ArrayList<String>(6);
+
+        List<Bouton> boutons = new ArrayList<Bouton>();
+        if(nbPionsBateau>0 && nbPionsWagonEnReserve>0){
+            boutons.add(new Bouton("Échanger wagon","PIONS WAGON"));
+        }
+        if(nbPionsWagon>0 && nbPionsBateauEnReserve>0){
+            boutons.add(new Bouton("Échanger bateau","PIONS BATEAU"));
+        }
+
+        List<String> pioches = new ArrayList<String>(9);
+        if(!jeu.piocheDestinationEstVide()){
+            pioches.add("DESTINATION");
+        }
+
+        if(!jeu.piocheWagonEstVide()){
+            pioches.add("WAGON");
+        }
+        if(!jeu.piocheBateauEstVide()){
+            pioches.add("BATEAU");
+        }
+        
+        for(CarteTransport c : jeu.cartesTransportVisibles()){
+            // une place reste vide quand les pioches sont épuisées
+            if(c != null){
+                pioches.add(c.getNom());
+                carteVisibleNom.add(c.getNom());
+            }
+        }
+        // les noms des routes et des ports libres sont tenus à jour par le jeu : ils ne
+        // sont pas recopiés à chaque tour
+        List<String> options = new ListeConcatenee(ports.size()<3
+                ? List.of(pioches, jeu.nomsRoutesLibres(), jeu.nomsPortsLibres())
+                : List.of(pioches, jeu.nomsRoutesLibres()));
+
+        choisirAction(options, boutons, carteVisibleNom, suite);
+    }
+
+    /**
+     * Fait choisir au joueur l'une des actions de son tour, jusqu'à ce qu'il en ait
+     * joué une (une route ou un port qu'il ne peut pas prendre ne compte pas)
+     */
+    private void choisirAction(List<String> options, List<Bouton> boutons, List<String> carteVisibleNom, Runnable suite) {
+        Runnable recommencer = () -> choisirAction(options, boutons, carteVisibleNom, suite);
+        choisir(
+                "Choisissez l'action à exécuter durant votre tour :",
+                options,
+                boutons,
+                false,
+                choix -> {
+                    if (choix.equals("")) {
+                        log(() -> String.format("%s passe son tour", toLog()));
+                        recommencer.run();
+                        return;
+                    }
+                    log(() -> String.format("%s a choisi %s", toLog(), choix));
+
+                    if(choix.equals("BATEAU") || choix.equals("WAGON") || carteVisibleNom.contains(choix) ){
+                        piocherCarteTransport(choix, aPioche -> (aPioche ? suite : recommencer).run());
+                        return;
+                    }
+                    if(choix.equals("PIONS WAGON") || choix.equals("PIONS BATEAU")) {
+                        echangerPion(choix, suite);
+                        return;
+                    }
+                    if(choix.equals("DESTINATION")){
+                        piocherCarteDestination(4,1, suite);
+                        return;
+                    }
+                    // seules les routes libres et les ports libres sont proposés : une route
+                    // ou une ville choisie est donc libre (recherche par nom sans parcourir les listes)
+                    Route route = jeu.getRoute(choix);
+                    if(route != null) {
+                        //TODO
+                        log(() -> String.format("%b",peutPrendreRoute(route)));
+                        if(peutPrendreRoute(route)){
+                            prendreRoute(choix, suite);
+                            return;
+                        }
+                    }
+                    if(jeu.getIdVilles().containsKey(choix)){
+                        if(peutConstruirePort(jeu.getPortFromNom(choix))){
+                            construirePort(choix, suite);
+                            return;
+                        }
+                    }
+                    recommencer.run();
+                });
+    }
+
     /**
      * Gère la pioche de carte Transport par le joueur
      * 
-     * @param //nbCartePioche nombre de carte transport déja pioché
-     * 
-     * @return la carte qui a été piochée (ou null si aucune carte disponible)
-     */
-    private boolean piocherCarteTransport(String mode){
-        int nbCartePioche = 0;
-        String choix;
-        do{
-            if(nbCartePioche>0){
-                List<String> optionPioche = new ArrayList<String>();
-                if(!jeu.piocheWagonEstVide()){
-                    optionPioche.add("WAGON");
-                }
-                if(!jeu.piocheBateauEstVide()){
-                    optionPioche.add("BATEAU");
-                }
-                for(int i=0; i<jeu.getCartesTransportVisibles().size();i++){
-                    optionPioche.add(jeu.getCartesTransportVisibles().get(i).getNom());
-                }
-                choix = choisir("Choisissez quel carte piocher", optionPioche, null,true);
+     * @param mode  la première carte piochée (pioche ou carte visible)
+     * @param suite reçoit true si le joueur a pioché au moins une carte
+     */
+    private void piocherCarteTransport(String mode, Consumer<Boolean> suite){
+        piocherCarteTransport(mode, 0, suite);
+    }
+
+    /**
+     * Pioche une carte transport
+     *
+     * @param choix         la carte choisie ("" si le joueur s'arrête)
+     * @param nbCartePioche nombre de carte transport déja pioché
+     */
+    private void piocherCarteTransport(String choix, int nbCartePioche, Consumer<Boolean> suite){
+        if(nbCartePioche<2 && !choix.equals("")){
+            String pioche = choix;
+            log(() -> String.format("%s %s", toLog(), pioche));
+            if(choix.equals("WAGON")){
+                this.cartesTransport.add(this.jeu.piocherCarteWagon());
+                continuerPioche(choix, nbCartePioche + 1, suite);
             }
-            else{
-                choix = mode;
+            else if(choix.equals("BATEAU")){
+                this.cartesTransport.add(this.jeu.piocherCarteBateau());
+                continuerPioche(choix, nbCartePioche + 1, suite);
             }
-            
-            
-            if(nbCartePioche<2 && !choix.equals("")){
-                log(String.format("%s %s", toLog(), choix));
-                if(choix.equals("WAGON")){
-                    this.cartesTransport.add(this.jeu.piocherCarteWagon());
-                    nbCartePioche++;
-                }
-                else if(choix.equals("BATEAU")){
-                    this.cartesTransport.add(this.jeu.piocherCarteBateau());
-                    nbCartePioche++;
+            else{
+                CarteTransport carte = jeu.getCarteTransportVisiblesFromNom(choix);
+                int nbPioche = nbCartePioche;
+                boolean remplacer = false;
+                if(carte.getType()==TypeCarteTransport.JOKER){
+                    if(nbCartePioche == 0){
+                        this.cartesTransport.add(carte);
+                        nbPioche +=2;
+                        jeu.removeCarteTransportVisibles(carte);
+                        remplacer = true;
+                    }
                 }
                 else{
-                    CarteTransport carte = jeu.getCarteTransportVisiblesFromNom(choix);
-                    if(carte.getType()==TypeCarteTransport.JOKER){
-                        if(nbCartePioche == 0){
-                            this.cartesTransport.add(carte);
-                            nbCartePioche +=2;
-                            jeu.removeCarteTransportVisibles(carte);
-                            remplacerCarteTransportVisible();
-
-                        }
-                    }
-                    else{
-                        if(nbCartePioche<2){
-                            this.cartesTransport.add(carte);
-                            nbCartePioche++;
-                            jeu.removeCarteTransportVisibles(carte);
-                            remplacerCarteTransportVisible();
-                        }
+                    if(nbCartePioche<2){
+                        this.cartesTransport.add(carte);
+                        nbPioche++;
+                        jeu.removeCarteTransportVisibles(carte);
+                        remplacer = true;
                     }
+                }
 
+                int nbPiocheApres = nbPioche;
+                Runnable apres = () -> {
                     if(!jeu.cartesTransportVisiblesSontValide()){
                         jeu.resetCartesTransportVisibles();
                     }
-
+                    continuerPioche(choix, nbPiocheApres, suite);
+                };
+                if(remplacer){
+                    remplacerCarteTransportVisible(apres);
+                }
+                else{
+                    apres.run();
                 }
-                
             }
+        }
+        else{
+            continuerPioche(choix, nbCartePioche, suite);
+        }
+    }
 
-        }while(!choix.equals("") && nbCartePioche!=2);
-
-        boolean aPioche = !(nbCartePioche==0);
-        return aPioche;
+    /**
+     * Propose au joueur une autre carte à piocher, tant qu'il n'a pas pioché deux cartes
+     * et qu'il ne s'est pas arrêté
+     */
+    private void continuerPioche(String choix, int nbCartePioche, Consumer<Boolean> suite){
+        if(!choix.equals("") && nbCartePioche!=2){
+            List<String> optionPioche = new ArrayList<String>();
+            if(!jeu.piocheWagonEstVide()){
+                optionPioche.add("WAGON");
+            }
+            if(!jeu.piocheBateauEstVide()){
+                optionPioche.add("BATEAU");
+            }
+            for(CarteTransport c : jeu.cartesTransportVisibles()){
+                if(c != null){
+                    optionPioche.add(c.getNom());
+                }
+            }
+            choisir("Choisissez quel carte piocher", optionPioche, null,true,
+                    suivant -> piocherCarteTransport(suivant, nbCartePioche, suite));
+        }
+        else{
+            boolean aPioche = !(nbCartePioche==0);
+            suite.accept(aPioche);
+        }
     }
 
-    private void remplacerCarteTransportVisible(){
+    private void remplacerCarteTransportVisible(Runnable suite){
         if(!jeu.piocheBateauEstVide() || !jeu.piocheWagonEstVide()){
 
-            String choix = choisir("Choisissez dans quel deck piocher pour remplacer la carte visible",Arrays.asList("WAGON","BATEAU") , null, false);
-            if(choix.equals("WAGON")){
-                jeu.addCartesTransportVisibles(this.jeu.piocherCarteWagon());
-            }
-            else if(choix.equals("BATEAU")){
-                jeu.addCartesTransportVisibles(this.jeu.piocherCarteBateau());
-            }
+            choisir("Choisissez dans quel deck piocher pour remplacer la carte visible",Arrays.asList("WAGON","BATEAU") , null, false, choix -> {
+                if(choix.equals("WAGON")){
+                    jeu.addCartesTransportVisibles(this.jeu.piocherCarteWagon());
+                }
+                else if(choix.equals("BATEAU")){
+                    jeu.addCartesTransportVisibles(this.jeu.piocherCarteBateau());
+                }
+                suite.run();
+            });
+        }
+        else{
+            suite.run();
         }
     }
 
     /**
      * Gère la pioche de destination par le joueurs
      */
-    private void piocherCarteDestination(int nbCartePioche, int nbCarteMin){
-        String choix;
+    private void piocherCarteDestination(int nbCartePioche, int nbCarteMin, Runnable suite){
+        garderDestinations(tirerDestinations(nbCartePioche), nbCarteMin, jeu::replacerDestination, suite);
+    }
+
+    /**
+     * Tire des cartes de la pile de destinations (moins si la pile est épuisée)
+     */
+    List<Destination> tirerDestinations(int nbCartePioche){
         List<Destination> pioche = new ArrayList<Destination>();
-        int nbCarteGarde = nbCartePioche;
-        boolean peutPasser = true;
 
         for(int i=0; i<nbCartePioche; i++){
             if(!jeu.piocheDestinationEstVide()){
                 pioche.add(this.jeu.piocheDestination());
             }
         }
+        return pioche;
+    }
 
+    /**
+     * Fait choisir au joueur les destinations tirées qu'il conserve
+     *
+     * @param pioche     les destinations tirées
+     * @param nbCarteMin nombre minimal de destinations à conserver
+     * @param remettre   reçoit chaque destination rendue, à replacer sous la pile
+     * @param suite      exécutée une fois les destinations conservées
+     */
+    void garderDestinations(List<Destination> pioche, int nbCarteMin, Consumer<Destination> remettre, Runnable suite){
         List<Bouton> boutons = new ArrayList<Bouton>();
 
-        for(int i=0; i<nbCartePioche; i++){
-            if(pioche.get(i) != null){
-                boutons.add(new Bouton(pioche.get(i).toString(), pioche.get(i).getNom()));
-            }
+        for(int i=0; i<pioche.size(); i++){
+            // les boutons ne sont pas affichés en mode simulation
+            String label = jeu.estSimulation() ? pioche.get(i).getNom() : pioche.get(i).toString();
+            boutons.add(new Bouton(label, pioche.get(i).getNom()));
         }
 
-        do{
-            choix = choisir("Choisissez la/les destination(s) que vous ne souhaitez pas conserver", null, boutons, peutPasser);
-            
+        garderDestinations(pioche, nbCarteMin, remettre, boutons, suite);
+    }
+
+    /**
+     * Propose au joueur de rendre l'une des destinations encore tirées (une par bouton)
+     */
+    private void garderDestinations(List<Destination> pioche, int nbCarteMin, Consumer<Destination> remettre, List<Bouton> boutons, Runnable suite){
+        boolean peutPasser = true;
+
+        choisir("Choisissez la/les destination(s) que vous ne souhaitez pas conserver", null, boutons, peutPasser, choix -> {
             if(!choix.equals("")){
                 
-                if(nbCarteGarde>nbCarteMin){
+                if(pioche.size()>nbCarteMin){
 
-                    log(String.format("%s remet une carte au bas de la pile", toLog()));
+                    log(() -> String.format("%s remet une carte au bas de la pile", toLog()));
 
                     for(int i=0; i<pioche.size(); i++){
                         if(choix.equals(pioche.get(i).getNom())){
                             boutons.remove(i);
-                            jeu.replacerDestination(pioche.get(i));
+                            remettre.accept(pioche.get(i));
                             pioche.remove(i);
-                            nbCarteGarde--;
                         }
                     }
                 }
                 
             }
             else{
-                log(String.format("%s ajoute les cartes destination à son jeu", toLog()));
+                log(() -> String.format("%s ajoute les cartes destination à son jeu", toLog()));
             }
 
-        }while(!choix.equals("") && nbCarteGarde!=nbCarteMin);
-
-        for(int i=0; i<pioche.size(); i++){
-            this.destinations.add(pioche.get(i));
-        }
+            if(!choix.equals("") && pioche.size()!=nbCarteMin){
+                garderDestinations(pioche, nbCarteMin, remettre, boutons, suite);
+                return;
+            }
 
+            for(int i=0; i<pioche.size(); i++){
+                this.destinations.add(pioche.get(i));
+            }
+            suite.run();
+        });
     }
 
     /**
      * Gère la prise d'une route par un joueur
+     *
+     * @param suite exécutée une fois la route prise
      */
-    private void prendreRoute(String nomChoisie){
-        Route routeChoisie = jeu.getRouteFromNom(nomChoisie);
-        String choix;
-        int compteur=0;
-        ArrayList<String> options = new ArrayList<String>();
-        CarteTransport carteChoisie;
-        int nbJokerDispo = nombreCarteTransport(TypeCarteTransport.JOKER);
-        ArrayList<RouteTerrestre> sousRoutes= new ArrayList<>();
-        Map<RouteTerrestre, Integer> nbMateriauxParRoute = new HashMap<RouteTerrestre, Integer>();
-        boolean BateauNonDoubleJoue = false;
-
-        //double le nombre de matériaux nécessaire si la route est double
-        int nbMateriauNecessaire = routeChoisie.getLongueur();
-        if(routeChoisie.getClass().getName() == "fr.umontpellier.iut.rails.RoutePaire"){
-            nbMateriauNecessaire = nbMateriauNecessaire*2;
-        }
-
+    private void prendreRoute(String nomChoisie, Runnable suite){
+        // la route choisie est libre (voir choisirAction())
+        PriseDeRoute prise = new PriseDeRoute(jeu.getRoute(nomChoisie), suite);
+        poserCarteTransportCompatible(prise.routeChoisie);
+        prise.choisirCarte();
+    }
 
-        poserCarteTransportCompatible(routeChoisie);
-        do{
+    /**
+     * Prise de route en cours : le joueur choisit une à une les cartes qu'il utilise,
+     * jusqu'à avoir assez de matériaux pour la route
+     */
+    private class PriseDeRoute {
+        private final Route routeChoisie;
+        private final Runnable suite;
+        private int compteur=0;
+        private final ArrayList<String> options = new ArrayList<String>();
+        private int nbJokerDispo = nombreCarteTransport(TypeCarteTransport.JOKER);
+        private final ArrayList<RouteTerrestre> sousRoutes= new ArrayList<>();
+        private final Map<RouteTerrestre, Integer> nbMateriauxParRoute = new HashMap<RouteTerrestre, Integer>();
+        private boolean BateauNonDoubleJoue = false;
+        private final int nbMateriauNecessaire;
+
+        PriseDeRoute(Route routeChoisie, Runnable suite) {
+            this.routeChoisie = routeChoisie;
+            this.suite = suite;
+
+            //double le nombre de matériaux nécessaire si la route est double
+            int nbMateriauNecessaire = routeChoisie.getLongueur();
+            if(routeChoisie.getClass().getName() == "fr.umontpellier.iut.rails.RoutePaire"){
+                nbMateriauNecessaire = nbMateriauNecessaire*2;
+            }
+            this.nbMateriauNecessaire = nbMateriauNecessaire;
+        }
+
+        void choisirCarte() {
             options.clear();
             for(CarteTransport c : cartesTransportPosees){
                 options.add(c.getNom());
             }
 
-            choix = choisir("Choisissez les cartes que vous souhaitez utiliser", options, null, false);
-            carteChoisie = getCarteTransportPoseFromNom(choix);
+            choisir("Choisissez les cartes que vous souhaitez utiliser", options, null, false, this::utiliserCarte);
+        }
+
+        private void utiliserCarte(String choix) {
+            CarteTransport carteChoisie = getCarteTransportPoseFromNom(choix);
             if(carteChoisie.getType() == TypeCarteTransport.BATEAU && !carteChoisie.estDouble()){
                 BateauNonDoubleJoue = true;
             }
@@ -512,36 +860,44 @@ public class Joueur {
             else if(carteChoisie.getType() == TypeCarteTransport.BATEAU){
                 jeu.defausserBateau(carteChoisie);
             }
-            
-
-        }while(nbMateriauNecessaire>compteur);
 
-        //retrait des pions
-        if(routeChoisie.getClass().getName() == "fr.umontpellier.iut.rails.RouteTerrestre" || routeChoisie.getClass().getName() == "fr.umontpellier.iut.rails.RoutePaire"){
-            nbPionsBateau = nbPionsBateau - nbMateriauNecessaire;
-        }
-        else if(routeChoisie.getClass().getName() == "fr.umontpellier.iut.rails.RouteMaritime"){
-            nbPionsWagon = nbPionsWagon - nbMateriauNecessaire;
+            if(nbMateriauNecessaire>compteur){
+                choisirCarte();
+            }
+            else{
+                terminer();
+            }
         }
 
-        //remise des carte restantes dans Cartes Transport
-        cartesTransport.addAll(cartesTransportPosees);
-        cartesTransportPosees.removeAll(cartesTransport);
+        private void terminer() {
+            //retrait des pions
+            if(routeChoisie.getClass().getName() == "fr.umontpellier.iut.rails.RouteTerrestre" || routeChoisie.getClass().getName() == "fr.umontpellier.iut.rails.RoutePaire"){
+                nbPionsBateau = nbPionsBateau - nbMateriauNecessaire;
+            }
+            else if(routeChoisie.getClass().getName() == "fr.umontpellier.iut.rails.RouteMaritime"){
+                nbPionsWagon = nbPionsWagon - nbMateriauNecessaire;
+            }
+
+            //remise des carte restantes dans Cartes Transport
+            cartesTransport.addAll(cartesTransportPosees);
+            cartesTransportPosees.removeAll(cartesTransport);
 
-        //attribution de la route
-        routes.add(routeChoisie);
-        jeu.removeRoutesLibre(routeChoisie);
+            //attribution de la route
+            routes.add(routeChoisie);
+            jeu.removeRoutesLibre(routeChoisie);
 
-        //elimination de la route parallèle si il y en a si il y a moins de 4 joueur
-        if(jeu.getJoueurs().size()<4){
-            if(routeChoisie.getRouteParallele()!=null){
-                jeu.removeRoutesLibre(routeChoisie.getRouteParallele());
+            //elimination de la route parallèle si il y en a si il y a moins de 4 joueur
+            if(jeu.getJoueurs().size()<4){
+                if(routeChoisie.getRouteParallele()!=null){
+                    jeu.removeRoutesLibre(routeChoisie.getRouteParallele());
+                }
             }
-        }
 
-        //attribution du score
-        score+= routeChoisie.getScore();
+            //attribution du score
+            score+= routeChoisie.getScore();
 
+            suite.run();
+        }
     }
 
     private static int indexOfRouteDeCouleurVide(ArrayList<RouteTerrestre> sousRoutes, Map<RouteTerrestre, Integer>sousRouteQuantite,Couleur coul){
@@ -621,15 +977,21 @@ public class Joueur {
      * @return true si le joueur peut prendre la route
      */
     private boolean peutPrendreRoute(Route route){
+        return peutPrendreRoute(route, compterCartesTransport());
+    }
+
+    /**
+     * @param route une route voulant être prise par la joueur
+     * @param main  les cartes du joueur (voir compterCartesTransport())
+     * @return true si le joueur peut prendre la route
+     */
+    private boolean peutPrendreRoute(Route route, CartesEnMain main){
         boolean estPossible = true;
-        if(route.getRouteParallele() != null && routes.contains(route.getRouteParallele())){
-            estPossible = false;
-        }
-        else if(route instanceof RoutePaire){
+        if(route instanceof RoutePaire){
             if(route.getLongueur()> nbPionsWagon){
                 estPossible = false;
             }
-            else if(route.getLongueur() > nbCombinaisonCarteTransportMin(TypeCarteTransport.WAGON,2)){
+            else if(route.getLongueur() > main.paires()){
                 estPossible = false;
             }
         }
@@ -638,10 +1000,7 @@ public class Joueur {
             if(route.getLongueur()> nbPionsWagon){
                 estPossible = false;
             }
-            else if(route.getCouleur() == Couleur.GRIS && route.getLongueur() > nbCombinaisonCarteTransportMax(TypeCarteTransport.WAGON)){
-                estPossible = false;
-            }
-            else if(route.getCouleur() != Couleur.GRIS && route.getLongueur() > nombreCarteTransportDeCouleur(TypeCarteTransport.WAGON, route.getCouleur())){
+            else if(route.getLongueur() > main.pourRoute(false, route.getCouleur())){
                 estPossible = false;
             }
         }
@@ -650,21 +1009,141 @@ public class Joueur {
             if(route.getLongueur()> nbPionsBateau){
                 estPossible = false;
             }
-            else if(route.getCouleur() == Couleur.GRIS && route.getLongueur() > nbCombinaisonCarteTransportMax(TypeCarteTransport.BATEAU)){
-                estPossible = false;
-            }
-            else if(route.getCouleur() != Couleur.GRIS && route.getLongueur() > nombreCarteTransportDeCouleur(TypeCarteTransport.BATEAU, route.getCouleur())){
+            else if(route.getLongueur() > main.pourRoute(true, route.getCouleur())){
                 estPossible = false;
             }
         }
+        // vérifiée en dernier : c'est la seule qui parcourt une liste
+        if(estPossible && route.getRouteParallele() != null && routes.contains(route.getRouteParallele())){
+            estPossible = false;
+        }
         return estPossible;
     }
 
-    private int nbCombinaisonCarteTransportMin(TypeCarteTransport type,int min){//TODO vérifier qu'un joker ne compte pas dans plusieurs
-        List<Integer> listeCombinaison = Arrays.asList(nombreCarteTransportDeCouleurSansJoker(type, Couleur.BLANC),nombreCarteTransportDeCouleurSansJoker(type, Couleur.JAUNE),nombreCarteTransportDeCouleurSansJoker(type, Couleur.NOIR), nombreCarteTransportDeCouleurSansJoker(type, Couleur.ROUGE), nombreCarteTransportDeCouleurSansJoker(type, Couleur.VERT),nombreCarteTransportDeCouleurSansJoker(type, Couleur.VIOLET));
+    /**
+     * Cherche une route libre que le joueur peut prendre (utilisé par les joueurs
+     * automatiques). La main du joueur n'est lue qu'une fois, et non pour chaque route.
+     *
+     * @param debut indice (quelconque) de la première route libre examinée, pour ne pas
+     *              toujours favoriser les mêmes routes
+     * @return le nom d'une route libre que le joueur peut prendre, ou null s'il n'y en a pas
+     */
+    String routePrenable(int debut) {
+        List<Route> libres = jeu.routesLibres();
+        // la main du joueur est comptée une seule fois pour toutes les routes
+        CartesEnMain main = compterCartesTransport();
+        // longueur maximale des routes que le joueur peut prendre (la couleur la plus
+        // fournie pour les routes simples) : les plus longues sont écartées sans autre vérification
+        int maxTerrestre = Math.min(nbPionsWagon, Math.max(main.pourRoute(false, Couleur.GRIS), main.paires()));
+        int maxMaritime = Math.min(nbPionsBateau, main.pourRoute(true, Couleur.GRIS));
+        // le plus souvent, aucune route libre n'est assez courte : les routes ne sont pas parcourues
+        if (!routeLibreAssezCourte(false, main, nbPionsWagon) && !routeLibreAssezCourte(true, main, nbPionsBateau)) {
+            return null;
+        }
+        int nbLibres = libres.size();
+        for (int i = 0, j = debut % Math.max(nbLibres, 1); i < nbLibres; i++, j = j + 1 == nbLibres ? 0 : j + 1) {
+            Route route = libres.get(j);
+            boolean maritime = route instanceof RouteMaritime;
+            if (route.getLongueur() <= (maritime ? maxMaritime : maxTerrestre)
+                    && peutPrendreRoute(route, main)) {
+                return route.getNom();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return true s'il reste une route libre de cette sorte assez courte pour les cartes
+     * et les pions du joueur, dans l'une des couleurs (condition nécessaire pour qu'il
+     * puisse en prendre une)
+     */
+    private boolean routeLibreAssezCourte(boolean maritime, CartesEnMain main, int nbPions) {
+        for (Couleur couleur : COULEURS) {
+            int max = main.pourRoute(maritime, couleur);
+            if (!maritime && couleur == Couleur.GRIS) {
+                max = Math.max(max, main.paires());
+            }
+            if (jeu.plusCourteRouteLibre(maritime, couleur) <= Math.min(nbPions, max)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param option une option du tour du joueur (voir jouerTour())
+     * @return true si l'option est une route ou un port que le joueur ne peut pas
+     * prendre (le tour recommence alors)
+     */
+    boolean estConstructionImpossible(String option) {
+        Route route = jeu.getRoute(option);
+        if (route != null) {
+            return !peutPrendreRoute(route);
+        }
+        return jeu.getIdVilles().containsKey(option) && !peutConstruirePort(jeu.getPortFromNom(option));
+    }
+
+    /**
+     * Cartes transport dans la main du joueur
+     *
+     * @param wagons            nombre de cartes wagon de chaque couleur, à l'indice Couleur.ordinal()
+     * @param bateaux           nombre de cartes bateau de chaque couleur, à l'indice Couleur.ordinal()
+     * @param jokers            nombre de jokers
+     * @param plusFournieWagon  nombre de cartes wagon de la couleur la plus fournie
+     * @param plusFournieBateau nombre de cartes bateau de la couleur la plus fournie
+     * @param paires            nombre de paires de cartes wagon de même couleur (voir nbCombinaisonCarteTransportMin())
+     */
+    private record CartesEnMain(int[] wagons, int[] bateaux, int jokers, int plusFournieWagon, int plusFournieBateau,
+            int paires) {
+        /**
+         * @return le nombre de cartes utilisables pour une route simple de cette sorte et
+         * de cette couleur (la couleur la plus fournie pour une route grise), jokers compris
+         */
+        int pourRoute(boolean maritime, Couleur couleur) {
+            if (couleur == Couleur.GRIS) {
+                return (maritime ? plusFournieBateau : plusFournieWagon) + jokers;
+            }
+            return (maritime ? bateaux : wagons)[couleur.ordinal()] + jokers;
+        }
+    }
+
+    /**
+     * Compte en une seule lecture les cartes transport de la main du joueur. Une carte
+     * double compte pour deux.
+     */
+    private CartesEnMain compterCartesTransport(){
+        int[] wagons = new int[NB_COULEURS];
+        int[] bateaux = new int[NB_COULEURS];
+        int jokers = 0;
+        for(int i = 0; i<cartesTransport.size();i++){
+            CarteTransport carte = cartesTransport.get(i);
+            int nb = carte.estDouble() ? 2 : 1;
+            if(carte.getType() == TypeCarteTransport.JOKER){
+                jokers += nb;
+            }
+            else if(carte.getType() == TypeCarteTransport.WAGON){
+                wagons[carte.getCouleur().ordinal()] += nb;
+            }
+            else if(carte.getType() == TypeCarteTransport.BATEAU){
+                bateaux[carte.getCouleur().ordinal()] += nb;
+            }
+        }
+        return new CartesEnMain(wagons, bateaux, jokers, plusFournie(wagons), plusFournie(bateaux),
+                nbCombinaisonCarteTransportMin(wagons, jokers, 2));
+    }
+
+    private static int plusFournie(int[] parCouleur){
+        int max = 0;
+        for(Couleur couleur : COULEURS_CARTES){
+            max = Math.max(max, parCouleur[couleur.ordinal()]);
+        }
+        return max;
+    }
+
+    private static int nbCombinaisonCarteTransportMin(int[] parCouleur,int nbJoker,int min){//TODO vérifier qu'un joker ne compte pas dans plusieurs
         int compteur=0;
-        int nbJoker = nombreCarteTransport(TypeCarteTransport.JOKER);
-        for(int i : listeCombinaison){
+        for(Couleur couleur : COULEURS_CARTES){
+            int i = parCouleur[couleur.ordinal()];
             if(i>=min){
                 compteur += (int) (i/min);
             }
@@ -676,11 +1155,6 @@ public class Joueur {
         return compteur;
     }
 
-    private int nbCombinaisonCarteTransportMax(TypeCarteTransport type){
-        List<Integer> listeCombinaison = Arrays.asList(nombreCarteTransportDeCouleur(type, Couleur.BLANC),nombreCarteTransportDeCouleur(type, Couleur.JAUNE),nombreCarteTransportDeCouleur(type, Couleur.NOIR), nombreCarteTransportDeCouleur(type, Couleur.ROUGE), nombreCarteTransportDeCouleur(type, Couleur.VERT),nombreCarteTransportDeCouleur(type, Couleur.VIOLET));
-        return Collections.max(listeCombinaison);
-    }
-
     private int nombreCarteTransport(TypeCarteTransport type){
         int compteur = 0;
         for(int i = 0; i<cartesTransport.size();i++){
@@ -841,19 +1315,6 @@ public class Joueur {
         return compteur;
     }
 
-    private int nombreCarteTransportDeCouleurSansJoker(TypeCarteTransport type ,Couleur couleur){
-        int compteur = 0;
-        for(int i = 0; i<cartesTransport.size();i++){
-            if((cartesTransport.get(i).getCouleur() == couleur && cartesTransport.get(i).getType() == type)){
-                compteur++;
-                if(cartesTransport.get(i).estDouble()){
-                    compteur++;
-                }
-            }
-        }
-        return compteur;
-    }
-
     private int nombreCarteTransportPoseesDeCouleurSansJoker(TypeCarteTransport type ,Couleur couleur){
         int compteur = 0;
         for(int i = 0; i<cartesTransportPosees.size();i++){
@@ -867,80 +1328,94 @@ public class Joueur {
         return compteur;
     }
 
-    private void echangerPion(String mode){
-        String choix;
-        boolean fini = false;
+    private void echangerPion(String mode, Runnable suite){
         if(mode.equals("PIONS WAGON")){
-            int nbWagon = 0;
-            log(String.format("ECHANGE PIONS WAGON",toLog()));
-            List<String> nombreWagonOption = Arrays.asList("1", "2", "3", "4", "5", "6", "7", "8", "9","10","11","12","13","14","15","16","17","18","19","20","21","22","23","24","25");
-            do{
-                choix = choisir(
-                        "Entrez dans la zone de texte la quantité à échanger. Attention vous perdrez 1 point de score pour chaque pion échangé.",
-                        nombreWagonOption,
-                        null,
-                        false);
-                nbWagon = Integer.valueOf(choix);
-                if(nbWagon <= this.nbPionsBateau){
-                    if(nbWagon <= this.nbPionsWagonEnReserve){
-                        this.nbPionsWagon+=nbWagon;
-                        this.nbPionsBateau-=nbWagon;
-                        this.nbPionsWagonEnReserve-=nbWagon;
-                        this.nbPionsBateauEnReserve+=nbWagon;
-                        this.score-=nbWagon;
-                        log(String.format("Vous venez d'échanger "+nbWagon+" pions Bateau\n contre "+nbWagon+" pions Wagon.",toLog()));
-                        fini =true;
+            log(() -> String.format("ECHANGE PIONS WAGON",toLog()));
+            echangerPionsWagon(suite);
+        }
+        if(mode.equals("PIONS BATEAU")){
+            echangerPionsBateau(suite);
+        }
+    }
+
+    /**
+     * Demande le nombre de pions bateau à échanger contre des pions wagon, jusqu'à ce
+     * que l'échange soit possible
+     */
+    private void echangerPionsWagon(Runnable suite){
+        List<String> nombreWagonOption = Arrays.asList("1", "2", "3", "4", "5", "6", "7", "8", "9","10","11","12","13","14","15","16","17","18","19","20","21","22","23","24","25");
+        choisir(
+                "Entrez dans la zone de texte la quantité à échanger. Attention vous perdrez 1 point de score pour chaque pion échangé.",
+                nombreWagonOption,
+                null,
+                false,
+                choix -> {
+                    int nbWagon = Integer.valueOf(choix);
+                    if(nbWagon <= this.nbPionsBateau){
+                        if(nbWagon <= this.nbPionsWagonEnReserve){
+                            this.nbPionsWagon+=nbWagon;
+                            this.nbPionsBateau-=nbWagon;
+                            this.nbPionsWagonEnReserve-=nbWagon;
+                            this.nbPionsBateauEnReserve+=nbWagon;
+                            this.score-=nbWagon;
+                            int echange = nbWagon;
+                            log(() -> String.format("Vous venez d'échanger "+echange+" pions Bateau\n contre "+echange+" pions Wagon.",toLog()));
+                            suite.run();
+                            return;
+                        }
+                        else{
+                            log(() -> String.format("L'échange est impossible, pas assez de Pions Wagon\n en réserve.",toLog()));
+                        }
                     }
                     else{
-                        log(String.format("L'échange est impossible, pas assez de Pions Wagon\n en réserve.",toLog()));
+                        log(() -> String.format("L'échange est impossible, pas assez de Pions Bateau\n à échanger.",toLog()));
                     }
-                }
-                else{
-                    log(String.format("L'échange est impossible, pas assez de Pions Bateau\n à échanger.",toLog()));
-                }
-            }while(!fini);
-        }
-        if(mode.equals("PIONS BATEAU")){
-            int nbBateau = 0;
-            List<String> nombreBateauOption = Arrays.asList("1", "2", "3", "4", "5", "6", "7", "8", "9","10","11","12","13","14","15","16","17","18","19","20","21","22","23","24","25");
-            do{
-                choix = choisir(
-                        "Entrez dans la zone de texte la quantité à échanger. Attention vous perdrez 1 point de score pour chaque pion échangé.",
-                        nombreBateauOption,
-                        null,
-                        false);
-                nbBateau = Integer.valueOf(choix);
-                if(nbBateau <= this.nbPionsWagon){
-                    if(nbBateau <= this.nbPionsBateauEnReserve){
-                        this.nbPionsWagon-=nbBateau;
-                        this.nbPionsBateau+=nbBateau;
-                        this.nbPionsWagonEnReserve+=nbBateau;
-                        this.nbPionsBateauEnReserve-=nbBateau;
-                        this.score-=nbBateau;
-                        log(String.format("Vous venez d'échanger "+nbBateau+" pions Bateau\n contre "+nbBateau+" pions Wagon.",toLog()));
-                        fini=true;
+                    echangerPionsWagon(suite);
+                });
+    }
+
+    /**
+     * Demande le nombre de pions wagon à échanger contre des pions bateau, jusqu'à ce
+     * que l'échange soit possible
+     */
+    private void echangerPionsBateau(Runnable suite){
+        List<String> nombreBateauOption = Arrays.asList("1", "2", "3", "4", "5", "6", "7", "8", "9","10","11","12","13","14","15","16","17","18","19","20","21","22","23","24","25");
+        choisir(
+                "Entrez dans la zone de texte la quantité à échanger. Attention vous perdrez 1 point de score pour chaque pion échangé.",
+                nombreBateauOption,
+                null,
+                false,
+                choix -> {
+                    int nbBateau = Integer.valueOf(choix);
+                    if(nbBateau <= this.nbPionsWagon){
+                        if(nbBateau <= this.nbPionsBateauEnReserve){
+                            this.nbPionsWagon-=nbBateau;
+                            this.nbPionsBateau+=nbBateau;
+                            this.nbPionsWagonEnReserve+=nbBateau;
+                            this.nbPionsBateauEnReserve-=nbBateau;
+                            this.score-=nbBateau;
+                            int echange = nbBateau;
+                            log(() -> String.format("Vous venez d'échanger "+echange+" pions Bateau\n contre "+echange+" pions Wagon.",toLog()));
+                            suite.run();
+                            return;
+                        }
+                        else{
+                            log(() -> String.format("L'échange est impossible, pas assez de Pions Bateau\n en réserve.",toLog()));
+                        }
                     }
                     else{
-                        log(String.format("L'échange est impossible, pas assez de Pions Bateau\n en réserve.",toLog()));
+                        log(() -> String.format("L'échange est impossible, pas assez de Pions Bateau\n à échanger.",toLog()));
                     }
-                }
-                else{
-                    log(String.format("L'échange est impossible, pas assez de Pions Bateau\n à échanger.",toLog()));
-                }
-            }while (!fini);
-        }
+                    echangerPionsBateau(suite);
+                });
     }
 
 
-    private void construirePort(String nomPort){
+    private void construirePort(String nomPort, Runnable suite){
         //capturer le port qui est donné en paramètre et qui est dans la liste des ports, si il est déjà dans la liste c'est qu'il est capturable
-        Ville portChoisi = jeu.getPortFromNom(nomPort);
-        String choix;
-        int nbCarteChoisi = 0;
         int[] repartitionCarteTransport = new int[2];
         //liste des noms cartes que le joueur peut choisir
         ArrayList<String> options = new ArrayList<>();
-        CarteTransport carteChoisie;
 
 
         //poser cartes transport
@@ -957,19 +1432,24 @@ public class Joueur {
         }
         cartesTransport.removeAll(cartesTransportPosees);
 
-        //joueur choisi les cartes à utiliser
-        do {
-            options.clear();
-            for (CarteTransport c : cartesTransportPosees) {
-                options.add(c.getNom());
+        choisirCartePort(nomPort, 0, repartitionCarteTransport, options, suite);
+    }
 
-            }
+    /**
+     * Le joueur choisit les cartes à utiliser pour construire le port (4 cartes)
+     *
+     * @param nbCarteChoisi nombre de cartes déjà choisies
+     */
+    private void choisirCartePort(String nomPort, int nbCarteChoisi, int[] repartitionCarteTransport, ArrayList<String> options, Runnable suite){
+        options.clear();
+        for (CarteTransport c : cartesTransportPosees) {
+            options.add(c.getNom());
 
-            choix = choisir("Choisissez les cartes a utiliser pour construire ce port", options, null, false);
-            carteChoisie = getCarteTransportPoseFromNom(choix);
+        }
 
+        choisir("Choisissez les cartes a utiliser pour construire ce port", options, null, false, choix -> {
+            CarteTransport carteChoisie = getCarteTransportPoseFromNom(choix);
 
-            nbCarteChoisi++;
             if(carteChoisie.getType() == TypeCarteTransport.BATEAU){
                 repartitionCarteTransport[0]++;
                 jeu.defausserBateau(carteChoisie);
@@ -986,18 +1466,22 @@ public class Joueur {
 
             mettreAJourCartePosePort(carteChoisie, repartitionCarteTransport);
 
-        }while(nbCarteChoisi<4);
-
+            if(nbCarteChoisi+1<4){
+                choisirCartePort(nomPort, nbCarteChoisi+1, repartitionCarteTransport, options, suite);
+                return;
+            }
 
-        //remise des cartes restantes dans Cartes Transport
-        cartesTransport.addAll(cartesTransportPosees);
-        cartesTransportPosees.removeAll(cartesTransport);
+            //remise des cartes restantes dans Cartes Transport
+            cartesTransport.addAll(cartesTransportPosees);
+            cartesTransportPosees.removeAll(cartesTransport);
 
-        //attribution du port
-        this.ports.add(portChoisi);
-        jeu.removePortsLibres(portChoisi);
-        log(String.format("Vous venez de capturer le port de "+nomPort+".",toLog()));
-    
+            //attribution du port
+            Ville portChoisi = jeu.getPortFromNom(nomPort);
+            this.ports.add(portChoisi);
+            jeu.removePortsLibres(portChoisi);
+            log(() -> String.format("Vous venez de capturer le port de "+nomPort+".",toLog()));
+            suite.run();
+        });
     }
 
 
@@ -1088,7 +1572,8 @@ public class Joueur {
 
     /**
      * Attend une entrée de la part du joueur (au clavier ou sur la websocket) et
-     * renvoie le choix du joueur.<Destination> destinations = TestUtils.getDestinations(joueur1);
+     * renvoie le choix du joueur (sur le thread courant, voir Jeu.derouler() : les
+     * règles du jeu utilisent choisir() avec une suite).<Destination> destinations = TestUtils.getDestinations(joueur1);
         destinations.clear();
 
      *
@@ -1096,7 +1581,9 @@ public class Joueur {
      * qu'un choix valide (un élément de `choix` ou de `boutons` ou
      * éventuellement la chaîne vide si l'utilisateur est autorisé à passer) soit
      * reçu.
-     * Lorsqu'un choix valide est obtenu, il est renvoyé par la fonction.
+     * Lorsqu'un choix valide est obtenu, il est renvoyé par la fonction. Si le
+     * joueur ne répond pas dans le délai de la partie (Jeu.setDelais()), le choix
+     * par défaut est fait à sa place (passer s'il en a le droit).
      *
      * Exemple d'utilisation pour demander à un joueur de répondre à une question
      * par "oui" ou "non" :
@@ -1136,27 +1623,244 @@ public class Joueur {
             Collection<String> choix,
             Collection<Bouton> boutons,
             boolean peutPasser) {
+        String[] reponse = new String[1];
+        jeu.derouler(fin -> choisir(instruction, choix, boutons, peutPasser, entree -> {
+            reponse[0] = entree;
+            fin.run();
+        }));
+        return reponse[0];
+    }
+
+    /**
+     * Commence un choix du joueur, sans attendre sa réponse : le choix reste en cours
+     * (avec son instruction, ses réponses valides et son délai) jusqu'à ce qu'une
+     * réponse valide soit disponible, et c'est alors la partie qui exécute la suite
+     * avec cette réponse (voir avancer() et Jeu.executer()). Les règles du jeu sont
+     * ainsi écrites d'un choix au suivant : une partie suspendue reprend au choix en
+     * cours de chaque joueur attendu, sans rien rejouer.
+     *
+     * @param suite reçoit la réponse du joueur (voir choisir(String, Collection,
+     *              Collection, boolean) pour les autres paramètres)
+     */
+    void choisir(
+            String instruction,
+            Collection<String> choix,
+            Collection<Bouton> boutons,
+            boolean peutPasser,
+            Consumer<String> suite) {
         if (choix == null)
             choix = new ArrayList<>();
         if (boutons == null)
             boutons = new ArrayList<>();
+        if (jeu.estSimulation()) {
+            demande = new Demande(instruction, choix, boutons, peutPasser, null, suite);
+            return;
+        }
+
+        EnsembleChoix choixDistincts = new EnsembleChoix(jeu.getIdVilles());
+        for (String valeur : choix) {
+            choixDistincts.ajouter(valeur);
+        }
+        for (Bouton bouton : boutons) {
+            choixDistincts.ajouter(bouton.valeur());
+        }
+        if (peutPasser || choixDistincts.estVide()) {
+            choixDistincts.ajouter("");
+        }
+
+        Demande nouvelle = new Demande(instruction, choix, boutons, peutPasser, choixDistincts, suite);
+        demande = nouvelle;
+        choixAttendus = choixDistincts;
+        choixEnCours = Map.of("instruction", instruction, "boutons", boutons, "choix", choixDistincts.dataMap());
+
+        // une action préparée pendant le tour des autres joueurs, ou l'étape suivante
+        // d'une action composée, est jouée sans attendre si elle est encore valide
+        // (sinon elle est abandonnée, avec les étapes suivantes)
+        String entree = actionPreparee.getAndSet(null);
+        if (entree == null) {
+            entree = etapeSuivante();
+        }
+        if (entree != null && !choixDistincts.contient(entree) && etapesRestantes.getAndSet(null) != null) {
+            Metriques.ACTIONS_COMPOSEES_INTERROMPUES.increment();
+        }
+        if (entree != null && choixDistincts.contient(entree)) {
+            nouvelle.entree = entree;
+        } else {
+            nouvelle.delai = armerDelai();
+        }
+    }
 
-        HashSet<String> choixDistincts = new HashSet<>(choix);
-        choixDistincts.addAll(boutons.stream().map(Bouton::valeur).toList());
-        if (peutPasser || choixDistincts.isEmpty()) {
-            choixDistincts.add("");
+    /**
+     * Répond au choix en cours du joueur si une réponse valide est disponible sans
+     * attendre, et exécute alors la suite du choix
+     *
+     * @return true si le joueur a répondu
+     */
+    boolean avancer() {
+        Demande enCours = demande;
+        if (enCours == null) {
+            return false;
+        }
+        String entree = reponse(enCours);
+        if (entree == null) {
+            return false;
+        }
+        // une réponse valide est obtenue, elle est donnée à la suite du choix
+        demande = null;
+        if (enCours.choixDistincts != null) {
+            choixAttendus = null;
+            choixEnCours = null;
+            if (enCours.delai != null) {
+                enCours.delai.annuler();
+            }
+            jeu.incrementerVersion();
         }
+        enCours.suite.accept(entree);
+        return true;
+    }
 
-        String entree;
+    /**
+     * Cherche une réponse valide au choix en cours : réponse du joueur automatique,
+     * action préparée, choix par défaut si le délai est dépassé, ou entrée du joueur
+     * (les entrées invalides sont ignorées)
+     *
+     * @return la réponse, ou null s'il faut attendre une entrée du joueur
+     */
+    private String reponse(Demande enCours) {
+        if (enCours.choixDistincts == null) {
+            return choisirEnSimulation(enCours.instruction, enCours.choix, enCours.boutons, enCours.peutPasser);
+        }
+        String entree = enCours.entree;
+        if (entree != null) {
+            enCours.entree = null;
+            return entree;
+        }
         // Lit l'entrée de l'utilisateur jusqu'à obtenir un choix valide
         while (true) {
-            jeu.prompt(instruction, boutons, peutPasser);
-            entree = jeu.lireLigne();
-            // si une réponse valide est obtenue, elle est renvoyée
-            if (choixDistincts.contains(entree)) {
+            JoueurAutomatique automate = this.automate;
+            if (automate != null) {
+                if (automate != automateAnnonce) {
+                    log(() -> String.format("%s est remplacé par un joueur automatique", toLog()));
+                    automateAnnonce = automate;
+                }
+                entree = automate.choisir(this, enCours.instruction, valeurs(enCours.choix, enCours.boutons),
+                        enCours.choixDistincts.contient(""));
+            } else if (delaiDepasse()) {
+                (delaiParTour ? Metriques.DELAIS_DEPASSES_TOUR : Metriques.DELAIS_DEPASSES_CHOIX).increment();
+                entree = choixParDefaut(enCours.choix, enCours.boutons, enCours.choixDistincts);
+                log(() -> String.format("%s n'a pas répondu à temps", toLog()));
                 return entree;
+            } else {
+                if (!enCours.affiche) {
+                    jeu.afficherChoix(this, enCours.instruction, enCours.boutons, enCours.peutPasser);
+                    enCours.affiche = true;
+                }
+                entree = jeu.lireLigne(this);
+                if (entree == null) {
+                    return null;
+                }
+            }
+            if (enCours.choixDistincts.contient(entree)) {
+                return entree;
+            }
+        }
+    }
+
+    /**
+     * Choix en mode simulation (voir Jeu.setSimulation()) : il est fait directement par
+     * le joueur automatique, sans préparer ni l'affichage ni l'ensemble des choix qui
+     * sert à valider les entrées des clients
+     *
+     * @throws IllegalStateException si le joueur automatique ne renvoie pas un choix valide
+     */
+    private String choisirEnSimulation(
+            String instruction,
+            Collection<String> choix,
+            Collection<Bouton> boutons,
+            boolean peutPasser) {
+        List<String> valeurs = valeurs(choix, boutons);
+        boolean passer = peutPasser || valeurs.isEmpty();
+        String entree = automate.choisir(this, instruction, valeurs, passer);
+        if (!(passer && "".equals(entree)) && !valeurs.contains(entree)) {
+            throw new IllegalStateException(String.format("choix invalide de %s : %s", nom, entree));
+        }
+        return entree;
+    }
+
+    /**
+     * @return l'étape suivante de l'action composée en cours (null s'il n'y en a pas)
+     */
+    private String etapeSuivante() {
+        List<String> etapes = etapesRestantes.getAndUpdate(
+                restantes -> restantes == null || restantes.size() <= 1 ? null : restantes.subList(1, restantes.size()));
+        return etapes == null ? null : etapes.get(0);
+    }
+
+    /**
+     * Commence un nouveau choix et planifie son délai de réponse sur la roue
+     * temporelle partagée : le plus proche du délai par choix et de la fin du tour.
+     *
+     * @return le délai planifié (null s'il n'y a pas de délai ou s'il est déjà dépassé)
+     */
+    private RoueTemporelle.Delai armerDelai() {
+        long numero = ++numeroChoix;
+        long maintenant = System.nanoTime();
+        long echeance = jeu.getDelaiChoix() > 0
+                ? maintenant + TimeUnit.MILLISECONDS.toNanos(jeu.getDelaiChoix())
+                : Long.MAX_VALUE;
+        delaiParTour = finTour != 0 && finTour - echeance < 0;
+        if (delaiParTour) {
+            echeance = finTour;
+        }
+        if (echeance == Long.MAX_VALUE) {
+            return null;
+        }
+        if (echeance - maintenant <= 0) {
+            choixExpire = numero;
+            return null;
+        }
+        return RoueTemporelle.partagee().planifier(TimeUnit.NANOSECONDS.toMillis(echeance - maintenant), () -> {
+            choixExpire = numero;
+            entrees.reveiller();
+        });
+    }
+
+    /**
+     * Choix fait à la place d'un joueur qui n'a pas répondu à temps : passer si c'est
+     * permis, sinon piocher dans une pioche (action sans conséquence durable, au
+     * contraire par exemple de prendre des destinations) si c'est l'un des choix
+     * proposés, et sinon l'un des choix proposés (un choix différent à chaque fois,
+     * pour ne pas répéter indéfiniment une action qui n'aboutit pas)
+     */
+    private String choixParDefaut(Collection<String> choix, Collection<Bouton> boutons, EnsembleChoix choixDistincts) {
+        if (choixDistincts.contient("")) {
+            return "";
+        }
+        for (String neutre : CHOIX_NEUTRES) {
+            if (choixDistincts.contient(neutre)) {
+                return neutre;
             }
         }
+        List<String> valeurs = valeurs(choix, boutons);
+        return valeurs.get(nbChoixParDefaut++ % valeurs.size());
+    }
+
+    /**
+     * @return les valeurs des choix et des boutons proposés
+     */
+    private static List<String> valeurs(Collection<String> choix, Collection<Bouton> boutons) {
+        // pas de copie des choix quand c'est une liste (choisir() est appelé à chaque choix)
+        List<String> liste = choix instanceof List<String> l ? l : new ArrayList<>(choix);
+        if (boutons.isEmpty()) {
+            return liste instanceof ListeConcatenee ? liste : Collections.unmodifiableList(liste);
+        }
+        List<String> valeursBoutons = new ArrayList<>(boutons.size());
+        for (Bouton bouton : boutons) {
+            valeursBoutons.add(bouton.valeur());
+        }
+        return liste instanceof ListeConcatenee concatenee
+                ? concatenee.suivieDe(valeursBoutons)
+                : new ListeConcatenee(List.of(liste, valeursBoutons));
     }
 
     /**
@@ -1169,6 +1873,14 @@ public class Joueur {
         jeu.log(message);
     }
 
+    /**
+     * Affiche un message dans le log du jeu, sans le construire si le jeu n'a pas de
+     * log (mode simulation, voir Jeu.setSimulation())
+     */
+    public void log(Supplier<String> message) {
+        jeu.log(message);
+    }
+
     @Override
     public String toString() {
         StringJoiner joiner = new StringJoiner("\n");
@@ -1327,6 +2039,19 @@ public class Joueur {
         return scoreFinal;
     }
 
+    /**
+     * @return le nombre de destinations du joueur qui sont complètes
+     */
+    public int getNbDestinationsCompletes() {
+        int nb = 0;
+        for (Destination d : destinations) {
+            if (destinationEstComplete(d)) {
+                nb++;
+            }
+        }
+        return nb;
+    }
+
     //renvoie le score du joueur
     public int getScore(){
         return this.score;
@@ -0,0 +1,70 @@
+package fr.umontpellier.iut.rails;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Joueur automatique le plus simple : il passe dès qu'il en a le droit (il garde les
+ * destinations piochées, ne prend pas de deuxième carte, etc.) et choisit sinon un
+ * coup au hasard. Pendant son tour, il prend une route dès qu'il en a une à sa portée
+ * (pour que la partie avance vers sa fin), et pioche sinon des cartes transport. Quand
+ * les pioches sont vides, il ne choisit jamais une route ou un port qu'il ne peut pas
+ * prendre (le tour serait à recommencer).
+ */
+public class JoueurAleatoire implements JoueurAutomatique {
+    private static final List<String> PIOCHES = List.of("WAGON", "BATEAU");
+
+    private final Random random;
+
+    public JoueurAleatoire() {
+        this(new Random());
+    }
+
+    public JoueurAleatoire(Random random) {
+        this.random = random;
+    }
+
+    @Override
+    public String choisir(Joueur joueur, String instruction, List<String> choix, boolean peutPasser) {
+        if (peutPasser || choix.isEmpty()) {
+            return "";
+        }
+        // les choix peuvent être nombreux (toutes les routes libres) : la recherche des
+        // routes s'arrête à la première (elles suivent les pioches dans les options du tour)
+        boolean wagon = choix.contains("WAGON");
+        boolean bateau = choix.contains("BATEAU");
+        boolean routes = false;
+        int nbChoix = choix.size();
+        for (int i = 0; i < nbChoix && !routes; i++) {
+            routes = estRoute(choix.get(i));
+        }
+        if (routes && joueur != null) {
+            // les routes proposées au tour sont toutes les routes libres
+            String route = joueur.routePrenable(random.nextInt(nbChoix));
+            if (route != null) {
+                return route;
+            }
+        }
+        if (wagon || bateau) {
+            List<String> pioches = wagon && bateau ? PIOCHES : wagon ? List.of("WAGON") : List.of("BATEAU");
+            return pioches.get(random.nextInt(pioches.size()));
+        }
+        int debut = random.nextInt(nbChoix);
+        if (routes && joueur != null) {
+            for (int i = 0; i < nbChoix; i++) {
+                String valeur = choix.get((debut + i) % nbChoix);
+                if (!joueur.estConstructionImpossible(valeur)) {
+                    return valeur;
+                }
+            }
+        }
+        return choix.get(debut);
+    }
+
+    /**
+     * @return true si la valeur est le nom d'une route (R suivi de chiffres)
+     */
+    private static boolean estRoute(String valeur) {
+        return valeur.length() > 1 && valeur.charAt(0) == 'R' && Character.isDigit(valeur.charAt(1));
+    }
+}
@@ -0,0 +1,19 @@
+package fr.umontpellier.iut.rails;
+
+import java.util.List;
+
+/**
+ * Stratégie d'un joueur automatique, qui prend la place d'un joueur absent (voir
+ * Jeu.setAutomate()). Elle est appelée par Joueur.choisir() à la place de l'attente
+ * d'une réponse, sur le thread du jeu, et doit répondre immédiatement.
+ */
+public interface JoueurAutomatique {
+    /**
+     * @param joueur      le joueur remplacé
+     * @param instruction l'instruction du choix
+     * @param choix       les choix valides (valeurs des options et des boutons proposés)
+     * @param peutPasser  indique si le joueur peut passer (en répondant "")
+     * @return le choix du joueur automatique (un élément de choix, ou "" s'il peut passer)
+     */
+    String choisir(Joueur joueur, String instruction, List<String> choix, boolean peutPasser);
+}
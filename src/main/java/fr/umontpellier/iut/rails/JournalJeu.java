@@ -0,0 +1,84 @@
+package fr.umontpellier.iut.rails;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Journal des messages d'information du jeu.
+ *
+ * Chaque message reçoit un numéro croissant (le premier message a le numéro 1).
+ * Seuls les derniers messages sont conservés dans un tampon circulaire de taille
+ * fixe : les plus anciens sont oubliés, ce qui borne la mémoire utilisée par une
+ * partie et la taille des états transmis. Un client qui connaît le numéro du
+ * dernier message qu'il a reçu peut ne demander que les messages suivants.
+ *
+ * Le journal est rempli par le thread du jeu et lu par les threads d'envoi du
+ * serveur.
+ */
+public class JournalJeu {
+    /**
+     * Messages conservés : le message de numéro n est à l'indice (n - 1) % capacite
+     */
+    private final String[] messages;
+    /**
+     * Numéro du dernier message ajouté (0 si le journal est vide)
+     */
+    private long dernier;
+
+    public JournalJeu(int capacite) {
+        this.messages = new String[capacite];
+        this.dernier = 0;
+    }
+
+    /**
+     * Ajoute un message au journal (le plus ancien est oublié si le tampon est plein)
+     *
+     * @return le numéro du message
+     */
+    public synchronized long ajouter(String message) {
+        dernier++;
+        messages[(int) ((dernier - 1) % messages.length)] = message;
+        return dernier;
+    }
+
+    /**
+     * @return le numéro du dernier message ajouté (0 si le journal est vide)
+     */
+    public synchronized long getDernier() {
+        return dernier;
+    }
+
+    /**
+     * @return le numéro du plus ancien message encore conservé
+     * (getDernier() + 1 si le journal est vide)
+     */
+    public synchronized long getPremier() {
+        return Math.max(1, dernier - messages.length + 1);
+    }
+
+    /**
+     * Renvoie les messages conservés dont le numéro est compris entre apres + 1 et
+     * jusqua (inclus). Les messages déjà oubliés ne sont pas renvoyés : le premier
+     * message de la liste a alors le numéro max(apres + 1, getPremier()).
+     *
+     * @param apres  numéro du dernier message connu du client
+     * @param jusqua numéro du dernier message à renvoyer
+     * @return les messages, du plus ancien au plus récent
+     */
+    public synchronized List<String> entre(long apres, long jusqua) {
+        long debut = Math.max(apres + 1, getPremier());
+        long fin = Math.min(jusqua, dernier);
+        List<String> resultat = new ArrayList<>();
+        for (long numero = debut; numero <= fin; numero++) {
+            resultat.add(messages[(int) ((numero - 1) % messages.length)]);
+        }
+        return resultat;
+    }
+
+    /**
+     * @return tous les messages conservés, du plus ancien au plus récent
+     */
+    public List<String> recents() {
+        return entre(0, Long.MAX_VALUE);
+    }
+}
@@ -3,19 +3,28 @@ package fr.umontpellier.iut.rails;
 import fr.umontpellier.iut.rails.data.CarteTransport;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.SplittableRandom;
 
 public class PilesCartesTransport {
     private final List<CarteTransport> pilePioche;
     private final List<CarteTransport> pileDefausse;
+    /**
+     * Générateur utilisé pour mélanger les cartes (issu de celui de la partie)
+     */
+    private final SplittableRandom random;
 
     public PilesCartesTransport(List<CarteTransport> cartes) {
+        this(cartes, new SplittableRandom());
+    }
+
+    public PilesCartesTransport(List<CarteTransport> cartes, SplittableRandom random) {
         pilePioche = cartes;
         pileDefausse = new ArrayList<>();
+        this.random = random;
         // on mélange la pile de pioche
-        Collections.shuffle(pilePioche);
+        Jeu.melanger(pilePioche, random);
     }
 
     /**
@@ -29,7 +38,7 @@ public class PilesCartesTransport {
             return this.pilePioche.remove(0);
         }
         else if(this.pileDefausse.size()!=0){
-            Collections.shuffle(pileDefausse);
+            Jeu.melanger(pileDefausse, random);
             this.pilePioche.addAll(pileDefausse);
             pileDefausse.clear();
             return piocher();
@@ -0,0 +1,180 @@
+package fr.umontpellier.iut.rails;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Roue temporelle hachée : exécute des actions après un délai, avec une précision
+ * d'une graduation (DUREE_GRADUATION millisecondes).
+ *
+ * Les délais en cours sont rangés dans un tableau circulaire de cases, une case par
+ * graduation : un délai est placé dans la case de sa graduation d'échéance, avec le
+ * nombre de tours de roue restant avant cette échéance. Un seul thread fait tourner
+ * la roue et ne parcourt à chaque graduation que la case courante. Planifier et
+ * annuler un délai coûtent O(1) et ne réveillent pas ce thread : une seule roue
+ * partagée (partagee()) sert les délais de toutes les parties.
+ *
+ * Les actions sont exécutées par le thread de la roue : elles doivent être courtes
+ * (par exemple lever un indicateur et réveiller un autre thread).
+ */
+public class RoueTemporelle {
+    /**
+     * Durée d'une graduation de la roue partagée (en millisecondes)
+     */
+    private static final long DUREE_GRADUATION = Long.getLong("rails.roue.graduation", 100);
+    /**
+     * Nombre de cases de la roue partagée (un tour de roue dure NB_CASES graduations)
+     */
+    private static final int NB_CASES = 512;
+
+    /**
+     * Roue partagée, démarrée à sa première utilisation
+     */
+    private static final class Partagee {
+        private static final RoueTemporelle ROUE = new RoueTemporelle(DUREE_GRADUATION, NB_CASES);
+    }
+
+    /**
+     * Délai planifié sur la roue
+     */
+    public static final class Delai {
+        private final Runnable action;
+        private final long echeance;
+        private long toursRestants;
+        private final AtomicBoolean termine = new AtomicBoolean();
+
+        private Delai(Runnable action, long echeance) {
+            this.action = action;
+            this.echeance = echeance;
+        }
+
+        /**
+         * Annule le délai
+         *
+         * @return true si l'action ne sera pas exécutée, false si elle l'a déjà été
+         * (ou est en cours d'exécution)
+         */
+        public boolean annuler() {
+            return termine.compareAndSet(false, true);
+        }
+    }
+
+    private final long dureeGraduation;
+    private final List<ArrayDeque<Delai>> cases;
+    private final int masque;
+    /**
+     * Délais planifiés depuis la dernière graduation, rangés dans leur case par le
+     * thread de la roue
+     */
+    private final ConcurrentLinkedQueue<Delai> nouveaux;
+    private final long debut;
+    /**
+     * Numéro de la graduation courante (écrit uniquement par le thread de la roue)
+     */
+    private volatile long graduation;
+
+    /**
+     * Crée une roue et démarre son thread
+     *
+     * @param dureeGraduation durée d'une graduation (en millisecondes)
+     * @param nbCases         nombre de cases (arrondi à la puissance de 2 supérieure)
+     */
+    public RoueTemporelle(long dureeGraduation, int nbCases) {
+        int taille = Integer.highestOneBit(Math.max(2, nbCases) - 1) << 1;
+        this.dureeGraduation = TimeUnit.MILLISECONDS.toNanos(dureeGraduation);
+        this.cases = new ArrayList<>(taille);
+        for (int i = 0; i < taille; i++) {
+            cases.add(new ArrayDeque<>());
+        }
+        this.masque = taille - 1;
+        this.nouveaux = new ConcurrentLinkedQueue<>();
+        this.debut = System.nanoTime();
+
+        Thread thread = new Thread(this::tourner, "roue-temporelle");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return la roue partagée par toutes les parties
+     */
+    public static RoueTemporelle partagee() {
+        return Partagee.ROUE;
+    }
+
+    /**
+     * Planifie l'exécution d'une action
+     *
+     * @param delai  délai avant l'exécution (en millisecondes)
+     * @param action l'action à exécuter (par le thread de la roue)
+     * @return le délai planifié, qui peut être annulé
+     */
+    public Delai planifier(long delai, Runnable action) {
+        long graduations = Math.max(1, (TimeUnit.MILLISECONDS.toNanos(delai) + dureeGraduation - 1) / dureeGraduation);
+        Delai resultat = new Delai(action, graduation + graduations);
+        nouveaux.add(resultat);
+        return resultat;
+    }
+
+    private void tourner() {
+        while (true) {
+            // attend la fin de la graduation courante
+            long fin = debut + (graduation + 1) * dureeGraduation;
+            long attente;
+            while ((attente = fin - System.nanoTime()) > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(attente);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            ranger();
+            expirer(cases.get((int) graduation & masque));
+            graduation++;
+        }
+    }
+
+    /**
+     * Range les délais planifiés depuis la dernière graduation dans leur case
+     */
+    private void ranger() {
+        Delai delai;
+        while ((delai = nouveaux.poll()) != null) {
+            if (delai.termine.get()) {
+                continue;
+            }
+            long echeance = Math.max(delai.echeance, graduation);
+            delai.toursRestants = (echeance - graduation) / cases.size();
+            cases.get((int) echeance & masque).add(delai);
+        }
+    }
+
+    /**
+     * Exécute les délais de la case arrivés à échéance pendant ce tour de roue
+     */
+    private void expirer(ArrayDeque<Delai> delais) {
+        Iterator<Delai> iterateur = delais.iterator();
+        while (iterateur.hasNext()) {
+            Delai delai = iterateur.next();
+            if (delai.termine.get()) {
+                iterateur.remove();
+            } else if (delai.toursRestants > 0) {
+                delai.toursRestants--;
+            } else {
+                iterateur.remove();
+                if (delai.termine.compareAndSet(false, true)) {
+                    try {
+                        delai.action.run();
+                    } catch (RuntimeException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package fr.umontpellier.iut.rails;
 
 import fr.umontpellier.iut.rails.data.Couleur;
+import fr.umontpellier.iut.rails.data.Numerotation;
 import fr.umontpellier.iut.rails.data.Ville;
 
 public abstract class Route {
@@ -31,8 +32,8 @@ public abstract class Route {
     private Route routeParallele = null;
 
     /**
-     * Compteur du nombre de routes instanciées (utilisé pour donner automatiquement
-     * un id unique à chaque route)
+     * Compteur du nombre de routes instanciées hors d'une partie (utilisé pour donner
+     * automatiquement un id unique à chaque route, voir Numerotation)
      * Vous ne devez pas toucher à cet attribut qui est utilisé pour les interfaces (console et web)
      */
     static private int compteur = 1;
@@ -42,7 +43,20 @@ public abstract class Route {
         this.ville2 = ville2;
         this.couleur = couleur;
         this.longueur = longueur;
-        this.nom = "R" + compteur++;
+        Numerotation numerotation = Numerotation.courante();
+        this.nom = "R" + (numerotation != null ? numerotation.prochaineRoute() : prochainNumero());
+    }
+
+    private static synchronized int prochainNumero() {
+        return compteur++;
+    }
+
+    /**
+     * Fait reprendre le compteur après les routes d'une partie : une route créée ensuite
+     * hors d'une partie ne porte le nom d'aucune route de cette partie
+     */
+    static synchronized void continuerApres(Numerotation numerotation) {
+        compteur = Math.max(compteur, numerotation.getProchaineRoute());
     }
 
     public Ville getVille1() {
@@ -0,0 +1,270 @@
+package fr.umontpellier.iut.rails;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.StringJoiner;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Simulation de Monte-Carlo : joue un grand nombre de parties complètes entre joueurs
+ * automatiques, en mode simulation (voir Jeu.setSimulation()), sur les threads d'un
+ * ForkJoinPool.
+ *
+ * Les parties sont réparties par un ForkJoinPool : l'intervalle des parties à jouer
+ * est coupé en deux jusqu'à des lots de TAILLE_LOT parties, que les threads libres
+ * volent aux autres. Chaque lot reçoit son propre générateur, obtenu en divisant celui
+ * de son lot parent (SplittableRandom.split()) : les lots ne partagent aucun
+ * générateur, et la même graine redonne les mêmes parties quel que soit l'ordre
+ * d'exécution des lots. Les résultats sont cumulés dans des LongAdder, sans verrou.
+ * Une partie interrompue par une exception est comptée comme une erreur, et la première
+ * de ces exceptions est conservée dans les résultats (main() l'affiche).
+ *
+ * À lancer avec
+ * java -cp target/classes fr.umontpellier.iut.rails.Simulateur [nbParties] [graine] [nbJoueurs]
+ */
+public class Simulateur {
+    /**
+     * Nombre de parties jouées à la suite par un même thread (en dessous, un lot n'est
+     * plus divisé)
+     */
+    private static final int TAILLE_LOT = 16;
+    private static final String[] NOMS = {"Guybrush", "Largo", "LeChuck", "Elaine", "Murray"};
+
+    /**
+     * Résultats cumulés des parties simulées (mis à jour par tous les threads à la fois)
+     */
+    public static final class Resultats {
+        private final LongAdder parties = new LongAdder();
+        private final LongAdder erreurs = new LongAdder();
+        private final AtomicReference<RuntimeException> premiereErreur = new AtomicReference<>();
+        private final LongAdder tours = new LongAdder();
+        private final LongAdder destinationsCompletes = new LongAdder();
+        private final LongAdder scores = new LongAdder();
+        private final LongAccumulator scoreMin = new LongAccumulator(Math::min, Long.MAX_VALUE);
+        private final LongAccumulator scoreMax = new LongAccumulator(Math::max, Long.MIN_VALUE);
+        /**
+         * Nombre de victoires de chaque place (en cas d'égalité, la première place
+         * l'emporte, comme dans Jeu.run())
+         */
+        private final LongAdder[] victoires;
+
+        private Resultats(int nbJoueurs) {
+            victoires = new LongAdder[nbJoueurs];
+            for (int i = 0; i < nbJoueurs; i++) {
+                victoires[i] = new LongAdder();
+            }
+        }
+
+        private void ajouter(Jeu jeu) {
+            List<Joueur> joueurs = jeu.getJoueurs();
+            int gagnant = 0;
+            int meilleurScore = Integer.MIN_VALUE;
+            for (int i = 0; i < joueurs.size(); i++) {
+                Joueur joueur = joueurs.get(i);
+                int score = joueur.calculerScoreFinal();
+                scores.add(score);
+                scoreMin.accumulate(score);
+                scoreMax.accumulate(score);
+                destinationsCompletes.add(joueur.getNbDestinationsCompletes());
+                if (score > meilleurScore) {
+                    meilleurScore = score;
+                    gagnant = i;
+                }
+            }
+            victoires[gagnant].increment();
+            tours.add(jeu.getNbTours());
+            parties.increment();
+        }
+
+        /**
+         * @return le nombre de parties jouées jusqu'au bout
+         */
+        public long getParties() {
+            return parties.sum();
+        }
+
+        /**
+         * @return le nombre de parties interrompues par une exception
+         */
+        public long getErreurs() {
+            return erreurs.sum();
+        }
+
+        /**
+         * @return l'exception qui a interrompu la première partie en erreur (null s'il n'y
+         * a eu aucune erreur)
+         */
+        public RuntimeException getPremiereErreur() {
+            return premiereErreur.get();
+        }
+
+        private void ajouterErreur(RuntimeException e) {
+            premiereErreur.compareAndSet(null, e);
+            erreurs.increment();
+        }
+
+        public long getTours() {
+            return tours.sum();
+        }
+
+        public long getDestinationsCompletes() {
+            return destinationsCompletes.sum();
+        }
+
+        /**
+         * @return la somme des scores finaux de tous les joueurs
+         */
+        public long getScores() {
+            return scores.sum();
+        }
+
+        public long getScoreMin() {
+            return scoreMin.get();
+        }
+
+        public long getScoreMax() {
+            return scoreMax.get();
+        }
+
+        public long getVictoires(int place) {
+            return victoires[place].sum();
+        }
+
+        @Override
+        public String toString() {
+            long nbParties = Math.max(1, getParties());
+            long nbScores = nbParties * victoires.length;
+            StringJoiner joiner = new StringJoiner("\n");
+            joiner.add(String.format("Parties : %d (%d erreurs)", getParties(), getErreurs()));
+            joiner.add(String.format("Tours par partie : %.1f", (double) getTours() / nbParties));
+            joiner.add(String.format("Destinations complètes par joueur : %.2f",
+                    (double) getDestinationsCompletes() / nbScores));
+            joiner.add(String.format("Score : moyen %.1f  min %d  max %d",
+                    (double) getScores() / nbScores, getScoreMin(), getScoreMax()));
+            for (int i = 0; i < victoires.length; i++) {
+                joiner.add(String.format("Victoires de la place %d : %.1f %%", i + 1,
+                        100.0 * getVictoires(i) / nbParties));
+            }
+            return joiner.toString();
+        }
+    }
+
+    private final String[] nomJoueurs;
+    /**
+     * Crée le joueur automatique d'une place à partir du générateur de la partie
+     */
+    private final Function<Random, JoueurAutomatique> fabriqueJoueurs;
+    private final ForkJoinPool pool;
+
+    /**
+     * @param nomJoueurs      noms des joueurs de chaque partie
+     * @param fabriqueJoueurs crée le joueur automatique d'une place (chaque joueur
+     *                        automatique ne sert qu'à une seule partie)
+     * @param pool            le pool qui exécute les parties
+     */
+    public Simulateur(String[] nomJoueurs, Function<Random, JoueurAutomatique> fabriqueJoueurs, ForkJoinPool pool) {
+        this.nomJoueurs = nomJoueurs;
+        this.fabriqueJoueurs = fabriqueJoueurs;
+        this.pool = pool;
+    }
+
+    /**
+     * Simulateur de parties entre joueurs aléatoires, sur le pool commun
+     */
+    public Simulateur(String[] nomJoueurs) {
+        this(nomJoueurs, JoueurAleatoire::new, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Joue des parties et attend qu'elles soient toutes terminées
+     *
+     * @param nbParties nombre de parties à jouer
+     * @param graine    graine du générateur dont sont tirés ceux de toutes les parties
+     * @return les résultats cumulés des parties
+     */
+    public Resultats simuler(long nbParties, long graine) {
+        Resultats resultats = new Resultats(nomJoueurs.length);
+        pool.invoke(new Lot(0, nbParties, new SplittableRandom(graine), resultats));
+        return resultats;
+    }
+
+    /**
+     * Lot de parties [debut, fin), joué directement ou divisé en deux sous-lots (jamais
+     * sérialisé : RecursiveAction est Serializable, pas le simulateur)
+     */
+    @SuppressWarnings("serial")
+    private class Lot extends RecursiveAction {
+        private final long debut;
+        private final long fin;
+        private final SplittableRandom random;
+        private final Resultats resultats;
+
+        Lot(long debut, long fin, SplittableRandom random, Resultats resultats) {
+            this.debut = debut;
+            this.fin = fin;
+            this.random = random;
+            this.resultats = resultats;
+        }
+
+        @Override
+        protected void compute() {
+            if (fin - debut <= TAILLE_LOT) {
+                for (long i = debut; i < fin; i++) {
+                    jouer(random.nextLong(), resultats);
+                }
+            } else {
+                long milieu = (debut + fin) >>> 1;
+                // le sous-lot de droite reçoit un générateur indépendant de celui de gauche
+                Lot droite = new Lot(milieu, fin, random.split(), resultats);
+                invokeAll(new Lot(debut, milieu, random, resultats), droite);
+            }
+        }
+    }
+
+    /**
+     * Joue une partie complète
+     *
+     * @param graine graine dont sont tirées celles du jeu et des joueurs automatiques
+     */
+    private void jouer(long graine, Resultats resultats) {
+        SplittableRandom random = new SplittableRandom(graine);
+        Jeu jeu = new Jeu(nomJoueurs, random.nextLong());
+        List<JoueurAutomatique> decisions = new ArrayList<>();
+        for (int i = 0; i < nomJoueurs.length; i++) {
+            decisions.add(fabriqueJoueurs.apply(new Random(random.nextLong())));
+        }
+        jeu.setSimulation(decisions);
+        try {
+            jeu.run();
+            resultats.ajouter(jeu);
+        } catch (RuntimeException e) {
+            resultats.ajouterErreur(e);
+        }
+    }
+
+    public static void main(String[] args) {
+        long nbParties = args.length > 0 ? Long.parseLong(args[0]) : 10_000;
+        long graine = args.length > 1 ? Long.parseLong(args[1]) : System.nanoTime();
+        int nbJoueurs = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        String[] noms = new String[nbJoueurs];
+        System.arraycopy(NOMS, 0, noms, 0, nbJoueurs);
+
+        long debut = System.nanoTime();
+        Resultats resultats = new Simulateur(noms).simuler(nbParties, graine);
+        double secondes = (System.nanoTime() - debut) / 1e9;
+        System.out.println(resultats);
+        if (resultats.getPremiereErreur() != null) {
+            System.out.println("Première erreur :");
+            resultats.getPremiereErreur().printStackTrace(System.out);
+        }
+        System.out.printf("Graine %d, %d threads, %.1f s (%.0f parties/s)%n", graine,
+                ForkJoinPool.commonPool().getParallelism(), secondes, resultats.getParties() / secondes);
+    }
+}
@@ -3,8 +3,8 @@ package fr.umontpellier.iut.rails.data;
 public final class CarteTransport implements Comparable<CarteTransport> {
 
     /**
-     * Compteur du nombre de routes instanciées (utilisé pour donner automatiquement
-     * un id unique à chaque route)
+     * Compteur du nombre de cartes instanciées hors d'une partie (utilisé pour donner
+     * automatiquement un id unique à chaque carte, voir Numerotation)
      */
 
     private static int compteur = 1;
@@ -19,7 +19,20 @@ public final class CarteTransport implements Comparable<CarteTransport> {
         this.couleur = couleur;
         this.estDouble = estDouble;
         this.ancre = ancre;
-        this.nom = "C" + compteur++;
+        Numerotation numerotation = Numerotation.courante();
+        this.nom = "C" + (numerotation != null ? numerotation.prochaineCarte() : prochainNumero());
+    }
+
+    private static synchronized int prochainNumero() {
+        return compteur++;
+    }
+
+    /**
+     * Fait reprendre le compteur après les cartes d'une partie : une carte créée ensuite
+     * hors d'une partie ne porte le nom d'aucune carte de cette partie
+     */
+    public static synchronized void continuerApres(Numerotation numerotation) {
+        compteur = Math.max(compteur, numerotation.getProchaineCarte());
     }
 
     public TypeCarteTransport getType() {
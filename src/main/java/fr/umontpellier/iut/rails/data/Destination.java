@@ -24,13 +24,14 @@ public class Destination {
      */
     private final int penalite;
     /**
-     * Nom de la destination automatiquement assigné à la création en fonction du compteur statique.
+     * Nom de la destination automatiquement assigné à la création en fonction de la numérotation
+     * de la partie (ou du compteur statique hors d'une partie).
      * Le nom d'une destination est "Dxx" (où xx est le numéro de la destination)
      */
     private final String nom;
     /**
-     * Compteur du nombre de destinations instanciées (utilisé pour donner
-     * automatiquement un id unique à chaque destination)
+     * Compteur du nombre de destinations instanciées hors d'une partie (utilisé pour
+     * donner automatiquement un id unique à chaque destination, voir Numerotation)
      * Vous ne devez pas toucher à cet attribut qui est utilisé pour les interfaces
      * (console et web)
      */
@@ -41,7 +42,20 @@ public class Destination {
         this.valeurSimple = valeurSimple;
         this.valeurMax = valeurMax;
         this.penalite = penalite;
-        this.nom = "D" + compteur++;
+        Numerotation numerotation = Numerotation.courante();
+        this.nom = "D" + (numerotation != null ? numerotation.prochaineDestination() : prochainNumero());
+    }
+
+    private static synchronized int prochainNumero() {
+        return compteur++;
+    }
+
+    /**
+     * Fait reprendre le compteur après les destinations d'une partie : une destination
+     * créée ensuite hors d'une partie ne porte le nom d'aucune destination de cette partie
+     */
+    public static synchronized void continuerApres(Numerotation numerotation) {
+        compteur = Math.max(compteur, numerotation.getProchaineDestination());
     }
 
     public Destination(String ville1, String ville2, int valeur) {
@@ -0,0 +1,80 @@
+package fr.umontpellier.iut.rails.data;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Numérotation des routes, cartes transport et destinations d'une partie (R1, C1, D1...).
+ *
+ * Chaque partie a sa propre numérotation, qui commence à 1 : les cartes d'une partie
+ * sont toujours nommées de C1 à C140, quel que soit le nombre de parties créées avant
+ * elle sur le serveur, et plusieurs parties peuvent être créées en même temps.
+ *
+ * Les constructeurs des routes, cartes et destinations utilisent la numérotation liée
+ * au thread courant (voir lier()) : Jeu la lie pendant son constructeur et pendant
+ * Jeu.run(), puis rétablit la liaison précédente. Un objet créé par un thread sans
+ * numérotation (hors d'une partie) est numéroté par le compteur statique de sa classe,
+ * que chaque partie créée fait avancer après ses propres numéros.
+ */
+public final class Numerotation {
+    /**
+     * Numérotation liée à chaque thread (null si aucune partie n'est liée au thread)
+     */
+    private static final ThreadLocal<Numerotation> COURANTE = new ThreadLocal<>();
+
+    private final AtomicInteger routes = new AtomicInteger(1);
+    private final AtomicInteger cartes = new AtomicInteger(1);
+    private final AtomicInteger destinations = new AtomicInteger(1);
+
+    /**
+     * Lie une numérotation au thread courant : les routes, cartes et destinations que
+     * ce thread crée ensuite sont numérotées par elle
+     *
+     * @param numerotation la numérotation à lier (null pour délier le thread)
+     * @return la numérotation liée jusque-là au thread (null s'il n'y en avait pas), à
+     * rétablir une fois les objets créés
+     */
+    public static Numerotation lier(Numerotation numerotation) {
+        Numerotation precedente = COURANTE.get();
+        if (numerotation == null) {
+            COURANTE.remove();
+        } else {
+            COURANTE.set(numerotation);
+        }
+        return precedente;
+    }
+
+    /**
+     * @return la numérotation liée au thread courant (null si le thread n'est lié à
+     * aucune partie)
+     */
+    public static Numerotation courante() {
+        return COURANTE.get();
+    }
+
+    public int prochaineRoute() {
+        return routes.getAndIncrement();
+    }
+
+    public int prochaineCarte() {
+        return cartes.getAndIncrement();
+    }
+
+    public int prochaineDestination() {
+        return destinations.getAndIncrement();
+    }
+
+    /**
+     * @return le numéro que porterait la prochaine route (sans l'attribuer)
+     */
+    public int getProchaineRoute() {
+        return routes.get();
+    }
+
+    public int getProchaineCarte() {
+        return cartes.get();
+    }
+
+    public int getProchaineDestination() {
+        return destinations.get();
+    }
+}
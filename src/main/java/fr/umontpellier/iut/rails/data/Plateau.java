@@ -26,6 +26,10 @@ public class Plateau {
         this.routes = routes;
     }
 
+    public List<Ville> getVilles() {
+        return villes;
+    }
+
     public List<Ville> getPorts() {
         return villes.stream().filter(Ville::estPort).collect(Collectors.toList());
     }
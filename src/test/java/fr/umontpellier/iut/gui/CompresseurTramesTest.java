@@ -0,0 +1,51 @@
+package fr.umontpellier.iut.gui;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.gson.Gson;
+
+import fr.umontpellier.iut.rails.Bouton;
+import fr.umontpellier.iut.rails.Jeu;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.zip.Inflater;
+
+public class CompresseurTramesTest {
+
+    private static byte[] decompresser(byte[] donnees, byte[] dictionnaire) throws Exception {
+        // en deflate brut, le dictionnaire est donné avant de commencer
+        Inflater inflater = new Inflater(true);
+        inflater.setDictionary(dictionnaire);
+        inflater.setInput(donnees);
+        ByteArrayOutputStream sortie = new ByteArrayOutputStream();
+        byte[] tampon = new byte[4096];
+        while (!inflater.finished()) {
+            int n = inflater.inflate(tampon);
+            sortie.write(tampon, 0, n);
+        }
+        inflater.end();
+        return sortie.toByteArray();
+    }
+
+    @Test
+    void testCompressionAvecDictionnaire() throws Exception {
+        Jeu jeu = new Jeu(new String[]{"Guybrush", "Largo"});
+        jeu.prompt("Choisissez", List.of(new Bouton("Paris")), true);
+        Trame trame = Trame.depuisTexte(new Gson().toJson(jeu.dataMap()));
+        CompresseurTrames compresseur = new CompresseurTrames(jeu.getVilles());
+
+        Trame compressee = trame.compressee(compresseur);
+
+        byte[] dictionnaire = new byte[compresseur.getDictionnaire().taille()];
+        compresseur.getDictionnaire().getOctets().get(dictionnaire);
+        byte[] originale = new byte[trame.taille()];
+        trame.getOctets().get(originale);
+        byte[] octets = new byte[compressee.taille()];
+        compressee.getOctets().get(octets);
+        assertArrayEquals(originale, decompresser(octets, dictionnaire));
+        assertTrue(compressee.taille() < trame.taille() / 4);
+    }
+}
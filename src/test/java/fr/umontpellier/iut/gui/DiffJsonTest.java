@@ -0,0 +1,87 @@
+package fr.umontpellier.iut.gui;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.junit.jupiter.api.Test;
+
+public class DiffJsonTest {
+
+    /**
+     * Applique des opérations JSON-Patch (add, remove, replace) à une copie du document
+     */
+    private static JsonElement appliquer(JsonElement document, JsonArray operations) {
+        JsonElement resultat = document.deepCopy();
+        for (JsonElement e : operations) {
+            JsonObject operation = e.getAsJsonObject();
+            String op = operation.get("op").getAsString();
+            String chemin = operation.get("path").getAsString();
+            JsonElement valeur = operation.get("value");
+            if (chemin.isEmpty()) {
+                resultat = valeur;
+                continue;
+            }
+            String[] cles = chemin.substring(1).split("/", -1);
+            for (int i = 0; i < cles.length; i++) {
+                cles[i] = cles[i].replace("~1", "/").replace("~0", "~");
+            }
+            JsonElement parent = resultat;
+            for (int i = 0; i < cles.length - 1; i++) {
+                parent = parent.isJsonArray()
+                        ? parent.getAsJsonArray().get(Integer.parseInt(cles[i]))
+                        : parent.getAsJsonObject().get(cles[i]);
+            }
+            String derniere = cles[cles.length - 1];
+            if (parent.isJsonArray()) {
+                JsonArray tableau = parent.getAsJsonArray();
+                switch (op) {
+                    case "add" -> tableau.add(valeur);
+                    case "remove" -> tableau.remove(Integer.parseInt(derniere));
+                    default -> tableau.set(Integer.parseInt(derniere), valeur);
+                }
+            } else {
+                JsonObject objet = parent.getAsJsonObject();
+                if (op.equals("remove")) {
+                    objet.remove(derniere);
+                } else {
+                    objet.add(derniere, valeur);
+                }
+            }
+        }
+        return resultat;
+    }
+
+    @Test
+    void testDocumentsEgaux() {
+        JsonElement document = JsonParser.parseString("{\"a\":1,\"b\":[1,2,{\"c\":\"x\"}]}");
+        assertEquals(0, DiffJson.diff(document, document.deepCopy()).size());
+    }
+
+    @Test
+    void testAjoutEnFinDeTableau() {
+        JsonElement avant = JsonParser.parseString("{\"log\":[\"a\",\"b\"],\"n\":3}");
+        JsonElement apres = JsonParser.parseString("{\"log\":[\"a\",\"b\",\"c\"],\"n\":3}");
+        JsonArray operations = DiffJson.diff(avant, apres);
+        assertEquals(1, operations.size());
+        assertEquals("/log/-", operations.get(0).getAsJsonObject().get("path").getAsString());
+        assertEquals(apres, appliquer(avant, operations));
+    }
+
+    @Test
+    void testDiffPuisApplicationRedonneLeDocument() {
+        JsonElement avant = JsonParser.parseString(
+                "{\"joueurs\":[{\"nom\":\"A\",\"main\":[1,2,3]},{\"nom\":\"B\",\"main\":[]}],"
+                        + "\"instruction\":\"x\",\"a/b\":1,\"supprime\":true}");
+        JsonElement apres = JsonParser.parseString(
+                "{\"joueurs\":[{\"nom\":\"A\",\"main\":[2,3]},{\"nom\":\"B\",\"main\":[4]}],"
+                        + "\"instruction\":\"y\",\"a/b\":2,\"nouveau\":{\"k\":null}}");
+        JsonArray operations = DiffJson.diff(avant, apres);
+        assertTrue(operations.size() > 0);
+        assertEquals(apres, appliquer(avant, operations));
+    }
+}
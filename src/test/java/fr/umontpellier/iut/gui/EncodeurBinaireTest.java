@@ -0,0 +1,31 @@
+package fr.umontpellier.iut.gui;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import fr.umontpellier.iut.rails.Bouton;
+import fr.umontpellier.iut.rails.Jeu;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+public class EncodeurBinaireTest {
+
+    @Test
+    void testEncodageDebutDePartie() {
+        Jeu jeu = new Jeu(new String[]{"Guybrush", "Largo"});
+        jeu.prompt("Choisissez", List.of(new Bouton("Paris", "Paris"), new Bouton("Route", "R12")), true);
+        JsonObject etat = new Gson().toJsonTree(jeu.dataMap()).getAsJsonObject();
+        EncodeurBinaire encodeur = new EncodeurBinaire(jeu.getVilles());
+
+        byte[] octets = encodeur.encoder(300, etat, 1, List.of("début"));
+
+        // version 300 en varint : 0xAC 0x02
+        assertEquals((byte) 0xAC, octets[0]);
+        assertEquals((byte) 0x02, octets[1]);
+        assertTrue(octets.length < new Gson().toJson(etat).length() / 4);
+    }
+}
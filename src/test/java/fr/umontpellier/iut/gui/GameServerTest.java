@@ -0,0 +1,72 @@
+package fr.umontpellier.iut.gui;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class GameServerTest {
+
+    @Test
+    void testNomsDesJoueurs() {
+        assertDoesNotThrow(() -> GameServer.verifierNoms(GameServer.NOMS_PAR_DEFAUT));
+        assertDoesNotThrow(() -> GameServer.verifierNoms(new String[]{"A", "B", "C", "D", "E"}));
+
+        // 5 couleurs de joueurs au plus
+        assertThrows(IllegalArgumentException.class,
+                () -> GameServer.verifierNoms(new String[]{"A", "B", "C", "D", "E", "F"}));
+        assertThrows(IllegalArgumentException.class, () -> GameServer.verifierNoms(new String[]{"A"}));
+        // "?joueurs=," et "?joueurs=A,,B"
+        assertThrows(IllegalArgumentException.class, () -> GameServer.verifierNoms(new String[]{"", ""}));
+        assertThrows(IllegalArgumentException.class, () -> GameServer.verifierNoms(new String[]{"A", " ", "B"}));
+        assertThrows(IllegalArgumentException.class, () -> GameServer.verifierNoms(new String[]{"A", "B", "A"}));
+    }
+
+    @Test
+    void testSpectateurNeCreePasDePartie() {
+        assertNull(GameServer.addClient("inconnue", GameServer.NOMS_PAR_DEFAUT, true, null,
+                Projection.SPECTATEUR, null, -1));
+        // un joueur doit demander explicitement la création
+        assertNull(GameServer.addClient("inconnue", GameServer.NOMS_PAR_DEFAUT, false, null, 0, null, -1));
+        assertNull(GameServer.getPartie("inconnue"));
+    }
+
+    @Test
+    void testPartieSansJoueurAbandonnee() {
+        Partie partie = new Partie("abandon", GameServer.NOMS_PAR_DEFAUT);
+        long delai = 1_000_000_000L;
+        long maintenant = System.nanoTime();
+        assertFalse(partie.estAbandonnee(maintenant, delai));
+        assertTrue(partie.estAbandonnee(maintenant + 2 * delai, delai));
+
+        // une partie abandonnée n'est plus exécutée
+        partie.abandonner();
+        partie.run();
+        assertTrue(partie.estTerminee());
+        assertEquals(0, partie.getJeu().getVersion());
+    }
+
+    @Test
+    void testJetonsDesPlaces() {
+        Partie partie = new Partie("jetons", GameServer.NOMS_PAR_DEFAUT);
+        // le jeton choisi par le premier client est ignoré : le serveur crée le sien
+        String jeton = partie.reserverPlace(0, "choisi");
+        assertNotNull(jeton);
+        assertNotEquals("choisi", jeton);
+        assertNull(partie.reserverPlace(0, "choisi"));
+        assertNull(partie.reserverPlace(0, null));
+        assertEquals(jeton, partie.reserverPlace(0, jeton));
+        // chaque place a son propre jeton
+        String autre = partie.reserverPlace(1, null);
+        assertNotNull(autre);
+        assertNotEquals(jeton, autre);
+        assertNull(partie.reserverPlace(1, jeton));
+        assertNull(partie.reserverPlace(4, null));
+    }
+}
@@ -0,0 +1,25 @@
+package fr.umontpellier.iut.gui;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class LimiteurDebitTest {
+
+    @Test
+    void testRafalePuisDebit() {
+        LimiteurDebit limiteur = new LimiteurDebit(3, 2);
+        long t = System.nanoTime();
+
+        assertTrue(limiteur.tenter(t));
+        assertTrue(limiteur.tenter(t));
+        assertTrue(limiteur.tenter(t));
+        assertFalse(limiteur.tenter(t));
+
+        // 2 messages par seconde : un nouveau jeton toutes les 500 ms
+        assertFalse(limiteur.tenter(t + 400_000_000L));
+        assertTrue(limiteur.tenter(t + 500_000_000L));
+        assertFalse(limiteur.tenter(t + 500_000_000L));
+    }
+}
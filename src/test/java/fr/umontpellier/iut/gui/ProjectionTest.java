@@ -0,0 +1,77 @@
+package fr.umontpellier.iut.gui;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import fr.umontpellier.iut.rails.JournalJeu;
+import org.junit.jupiter.api.Test;
+
+public class ProjectionTest {
+    private static final String ETAT = """
+            {"joueurCourant": 0, "graine": "42", "boutons": [{"label": "D3", "valeur": "D3"}],
+             "joueurs": [
+               {"nom": "A", "main": [{"nom": "C1"}, {"nom": "C2"}], "destinationsIncompletes": [{"nom": "D1"}],
+                "destinationsCompletes": [], "routes": ["R4"]},
+               {"nom": "B", "main": [{"nom": "C3"}], "destinationsIncompletes": [],
+                "destinationsCompletes": [{"nom": "D2"}], "routes": []}]}
+            """;
+
+    @Test
+    void testUnJoueurNeVoitQueSesPropresCartes() {
+        JsonObject vue = Projection.projeter(JsonParser.parseString(ETAT), 1).getAsJsonObject();
+
+        JsonObject a = vue.getAsJsonArray("joueurs").get(0).getAsJsonObject();
+        JsonObject b = vue.getAsJsonArray("joueurs").get(1).getAsJsonObject();
+        assertFalse(a.has("main"));
+        assertEquals(2, a.get("nbCartesMain").getAsInt());
+        assertEquals(1, a.get("nbDestinationsIncompletes").getAsInt());
+        assertEquals(1, a.getAsJsonArray("routes").size());
+        assertTrue(b.has("main"));
+        assertEquals(0, vue.getAsJsonArray("boutons").size());
+        assertEquals(0, vue.getAsJsonObject("choix").size());
+    }
+
+    @Test
+    void testSpectateurEtJoueurCourant() {
+        JsonObject vueSpectateur = Projection.projeter(JsonParser.parseString(ETAT), Projection.SPECTATEUR).getAsJsonObject();
+        JsonObject vueJoueur = Projection.projeter(JsonParser.parseString(ETAT), 0).getAsJsonObject();
+
+        for (int i = 0; i < 2; i++) {
+            assertFalse(vueSpectateur.getAsJsonArray("joueurs").get(i).getAsJsonObject().has("main"));
+        }
+        assertEquals(1, vueJoueur.getAsJsonArray("boutons").size());
+        assertFalse(vueJoueur.has("graine"));
+        assertFalse(vueSpectateur.has("graine"));
+        assertTrue(Projection.projeter(JsonParser.parseString(ETAT), Projection.COMPLETE).getAsJsonObject().has("graine"));
+    }
+
+    @Test
+    void testChoixEnCoursPendantLaMiseEnPlace() {
+        JsonObject etat = JsonParser.parseString(ETAT).getAsJsonObject();
+        etat.add("choixEnCours", JsonParser.parseString(
+                "[{}, {\"instruction\": \"Choisissez\", \"boutons\": [{\"label\": \"D5\", \"valeur\": \"D5\"}]}]"));
+
+        JsonObject vueA = Projection.projeter(etat, 0).getAsJsonObject();
+        JsonObject vueB = Projection.projeter(etat, 1).getAsJsonObject();
+        JsonObject vueSpectateur = Projection.projeter(etat, Projection.SPECTATEUR).getAsJsonObject();
+
+        assertEquals(0, vueA.getAsJsonArray("boutons").size());
+        assertEquals("D5", vueB.getAsJsonArray("boutons").get(0).getAsJsonObject().get("valeur").getAsString());
+        assertEquals("Choisissez", vueB.get("instruction").getAsString());
+        assertEquals(0, vueSpectateur.getAsJsonArray("boutons").size());
+        assertFalse(vueB.has("choixEnCours"));
+    }
+
+    @Test
+    void testProjectionCalculeeUneFoisParVersion() {
+        EtatVersionne etat = new EtatVersionne(1, JsonParser.parseString(ETAT), new JournalJeu(4));
+
+        assertSame(etat.pour(1), etat.pour(1));
+        assertSame(etat, etat.pour(Projection.COMPLETE));
+    }
+}
@@ -0,0 +1,39 @@
+package fr.umontpellier.iut.gui;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class ServeurFichiersTest {
+
+    @Test
+    void testAccepteEncodage() {
+        assertTrue(ServeurFichiers.accepte("gzip, deflate, br", "br"));
+        assertTrue(ServeurFichiers.accepte("GZIP", "gzip"));
+        assertTrue(ServeurFichiers.accepte("br;q=0.5, gzip;q=1.0", "gzip"));
+        assertTrue(ServeurFichiers.accepte("gzip;q=0.001", "gzip"));
+        assertFalse(ServeurFichiers.accepte("deflate", "gzip"));
+        assertFalse(ServeurFichiers.accepte("gzipper", "gzip"));
+
+        // q=0 : encodage refusé
+        assertFalse(ServeurFichiers.accepte("br;q=0, gzip", "br"));
+        assertFalse(ServeurFichiers.accepte("gzip; q=0.000", "gzip"));
+        assertFalse(ServeurFichiers.accepte("gzip;Q=0", "gzip"));
+        assertTrue(ServeurFichiers.accepte("br;q=0, gzip", "gzip"));
+    }
+
+    @Test
+    void testCorrespondEtag() {
+        String etag = "\"4ba000e5\"";
+
+        assertTrue(ServeurFichiers.correspond(etag, etag));
+        assertTrue(ServeurFichiers.correspond("\"autre\", " + etag, etag));
+        assertTrue(ServeurFichiers.correspond("*", etag));
+        assertTrue(ServeurFichiers.correspond("W/" + etag, etag));
+        assertFalse(ServeurFichiers.correspond(null, etag));
+        assertFalse(ServeurFichiers.correspond("\"autre\"", etag));
+        // l'ETag de la variante gzip n'est pas celui de l'originale
+        assertFalse(ServeurFichiers.correspond("\"4ba000e5-gz\"", etag));
+    }
+}
@@ -0,0 +1,102 @@
+package fr.umontpellier.iut.rails;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ActionComposeeTest {
+    private final AtomicInteger nbPrompts = new AtomicInteger();
+
+    private Jeu nouveauJeu() {
+        return TestUtils.nouveauJeu(nbPrompts::incrementAndGet, "Guybrush", "Largo");
+    }
+
+    /**
+     * Fait deux choix successifs dans un autre thread et attend que le premier commence
+     */
+    private static Thread deuxChoix(Jeu jeu, Joueur joueur, AtomicReference<String> premier, AtomicReference<String> second) {
+        Thread thread = new Thread(() -> {
+            premier.set(joueur.choisir("Route", List.of("R1", "R2"), null, false));
+            second.set(joueur.choisir("Carte", List.of("C1", "C2"), null, false));
+        });
+        thread.start();
+        TestUtils.attendre(() -> jeu.estEnTrainDeChoisir(joueur), "pas de choix en cours pour " + joueur.getNom());
+        return thread;
+    }
+
+    @Test
+    void testEtapesJoueesSansAttendre() throws InterruptedException {
+        Jeu jeu = nouveauJeu();
+        Joueur joueur = jeu.getJoueurs().get(0);
+        AtomicReference<String> premier = new AtomicReference<>();
+        AtomicReference<String> second = new AtomicReference<>();
+        Thread thread = deuxChoix(jeu, joueur, premier, second);
+
+        assertTrue(jeu.addActions(joueur, List.of("R2", "C1")));
+        thread.join(2000);
+
+        assertEquals("R2", premier.get());
+        assertEquals("C1", second.get());
+        // seul le premier choix a été affiché
+        assertEquals(1, nbPrompts.get());
+        assertNull(joueur.getEtapesRestantes().get());
+    }
+
+    @Test
+    void testEtapeInvalideArreteLAction() throws InterruptedException {
+        Jeu jeu = nouveauJeu();
+        Joueur joueur = jeu.getJoueurs().get(0);
+        AtomicReference<String> premier = new AtomicReference<>();
+        AtomicReference<String> second = new AtomicReference<>();
+        Thread thread = deuxChoix(jeu, joueur, premier, second);
+
+        // première étape invalide : l'action est refusée en entier
+        assertFalse(jeu.addActions(joueur, List.of("R3", "C1")));
+        assertFalse(jeu.addActions(joueur, List.of("R01", "C1")));
+        assertFalse(jeu.addInput(joueur, "R01"));
+        // "C01" n'est pas la carte C1
+        assertTrue(jeu.addActions(joueur, List.of("R1", "C01", "C2")));
+        TestUtils.attendreChoix(jeu, joueur, "C2");
+        // l'étape invalide a arrêté l'action : le joueur choisit lui-même
+        assertNull(joueur.getEtapesRestantes().get());
+        assertTrue(jeu.addInput(joueur, "C2"));
+        thread.join(2000);
+
+        assertEquals("R1", premier.get());
+        assertEquals("C2", second.get());
+    }
+
+    @Test
+    void testActionPrepareeVerifiee() {
+        Jeu jeu = nouveauJeu();
+        Joueur joueur = jeu.getJoueurs().get(1);
+
+        // le joueur n'a pas de choix en cours : la première étape doit exister dans la partie
+        assertFalse(jeu.addActions(joueur, List.of("oui", "C1")));
+        assertFalse(jeu.addActions(joueur, List.of("R9999", "C1")));
+        assertFalse(jeu.addActions(joueur, List.of("", "C1")));
+        assertNull(joueur.getEtapesRestantes().get());
+
+        assertTrue(jeu.addActions(joueur, List.of("WAGON", "C1")));
+        assertEquals(List.of("WAGON", "C1"), joueur.getEtapesRestantes().get());
+        assertNull(joueur.getActionPreparee().get());
+    }
+
+    @Test
+    void testFinDuTourAbandonneLesEtapesRestantes() {
+        Jeu jeu = nouveauJeu();
+        Joueur joueur = jeu.getJoueurs().get(1);
+
+        assertTrue(jeu.addActions(joueur, List.of("R1", "C1", "C2")));
+        assertEquals("R1", joueur.choisir("Route", List.of("R1"), null, false));
+        joueur.terminerTour();
+        assertNull(joueur.getEtapesRestantes().get());
+    }
+}
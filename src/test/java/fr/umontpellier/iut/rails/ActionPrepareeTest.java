@@ -0,0 +1,53 @@
+package fr.umontpellier.iut.rails;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ActionPrepareeTest {
+
+    @Test
+    void testActionPrepareeJoueeSansAttendre() {
+        Jeu jeu = TestUtils.nouveauJeu("Guybrush", "Largo");
+        Joueur joueur = jeu.getJoueurs().get(1);
+
+        assertTrue(jeu.preparerAction(joueur, "non"));
+        // la dernière action préparée remplace la précédente
+        assertTrue(jeu.preparerAction(joueur, "oui"));
+
+        assertEquals("oui", joueur.choisir("Choisissez", List.of("oui", "non"), null, false));
+        assertNull(joueur.getActionPreparee().get());
+    }
+
+    @Test
+    void testActionPrepareeInvalideAbandonnee() throws InterruptedException {
+        Jeu jeu = TestUtils.nouveauJeu("Guybrush", "Largo");
+        Joueur joueur = jeu.getJoueurs().get(1);
+        jeu.preparerAction(joueur, "R12");
+
+        AtomicReference<String> choix = new AtomicReference<>();
+        Thread thread = new Thread(() -> choix.set(joueur.choisir("Choisissez", List.of("oui"), null, false)));
+        thread.start();
+        TestUtils.attendreChoix(jeu, joueur, "oui");
+        assertTrue(jeu.addInput(joueur, "oui"));
+        thread.join(2000);
+
+        assertEquals("oui", choix.get());
+        assertNull(joueur.getActionPreparee().get());
+    }
+
+    @Test
+    void testMessageVideAnnuleLActionPreparee() {
+        Jeu jeu = TestUtils.nouveauJeu("Guybrush", "Largo");
+        Joueur joueur = jeu.getJoueurs().get(1);
+        jeu.preparerAction(joueur, "oui");
+        jeu.preparerAction(joueur, "");
+
+        assertNull(joueur.getActionPreparee().get());
+    }
+}
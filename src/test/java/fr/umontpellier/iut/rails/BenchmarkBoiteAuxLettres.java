@@ -0,0 +1,94 @@
+package fr.umontpellier.iut.rails;
+
+import java.util.Arrays;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Mesure de la latence entre l'ajout d'une instruction par un thread de la
+ * websocket et sa lecture par le thread du jeu, qui attend l'instruction suivante
+ * comme dans une partie (file vide, thread du jeu en attente).
+ *
+ * Ce n'est pas un test : à lancer à la main, après mvn test-compile, avec
+ * java -cp target/classes:target/test-classes fr.umontpellier.iut.rails.BenchmarkBoiteAuxLettres
+ */
+public class BenchmarkBoiteAuxLettres {
+    private static final int NB_MESURES = 20_000;
+    private static final int NB_ECHAUFFEMENT = 5_000;
+
+    /**
+     * File mesurée : ajout par un producteur, lecture bloquante par le consommateur
+     */
+    private interface File {
+        boolean ajouter(String message);
+
+        String prendre() throws InterruptedException;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        for (int tour = 0; tour < 2; tour++) {
+            LinkedBlockingQueue<String> lbq = new LinkedBlockingQueue<>(64);
+            mesurer("LinkedBlockingQueue", new File() {
+                public boolean ajouter(String message) {
+                    return lbq.offer(message);
+                }
+
+                public String prendre() throws InterruptedException {
+                    return lbq.take();
+                }
+            });
+            BoiteAuxLettres<String> boite = new BoiteAuxLettres<>(64);
+            mesurer("BoiteAuxLettres", new File() {
+                public boolean ajouter(String message) {
+                    return boite.offer(message);
+                }
+
+                public String prendre() throws InterruptedException {
+                    return boite.take();
+                }
+            });
+        }
+    }
+
+    private static void mesurer(String nom, File file) throws InterruptedException {
+        int total = NB_ECHAUFFEMENT + NB_MESURES;
+        long[] latences = new long[total];
+        AtomicLong envoi = new AtomicLong();
+        AtomicLong recus = new AtomicLong();
+
+        Thread consommateur = new Thread(() -> {
+            try {
+                for (int i = 0; i < total; i++) {
+                    file.prendre();
+                    latences[i] = System.nanoTime() - envoi.get();
+                    recus.incrementAndGet();
+                }
+            } catch (InterruptedException ignored) {
+            }
+        });
+        consommateur.start();
+
+        String[] messages = new String[100];
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = "R" + i;
+        }
+        for (int i = 0; i < total; i++) {
+            // laisse le consommateur se mettre en attente, comme entre deux clics
+            LockSupport.parkNanos(20_000);
+            envoi.set(System.nanoTime());
+            file.ajouter(messages[i % messages.length]);
+            while (recus.get() <= i) {
+                Thread.onSpinWait();
+            }
+        }
+        consommateur.join();
+
+        long[] mesures = Arrays.copyOfRange(latences, NB_ECHAUFFEMENT, total);
+        Arrays.sort(mesures);
+        System.out.printf("%-20s médiane %6.1f µs   p99 %6.1f µs   max %7.1f µs%n", nom,
+                mesures[mesures.length / 2] / 1e3,
+                mesures[mesures.length * 99 / 100] / 1e3,
+                mesures[mesures.length - 1] / 1e3);
+    }
+}
@@ -0,0 +1,124 @@
+package fr.umontpellier.iut.rails;
+
+import fr.umontpellier.iut.gui.Partie;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Comparaison du coût d'un tour en mode simulation (Jeu.setSimulation()) et en mode
+ * interactif.
+ *
+ * Chaque partie est d'abord jouée en simulation par des joueurs aléatoires, dont les
+ * réponses sont enregistrées. La même partie (même graine) est ensuite jouée en mode
+ * interactif en donnant ces réponses comme entrées des joueurs : chaque choix passe
+ * alors par le chemin normal (Jeu.prompt() avec affichage console, dataMap() et
+ * sérialisation de l'état par une partie du serveur, validation de l'entrée, délais de
+ * réponse), et les deux modes jouent exactement les mêmes tours. La sortie console du
+ * mode interactif est écrite dans un fichier temporaire, avec la même mise en tampon
+ * que System.out. Un ramasse-miettes est demandé avant chaque mesure, et le rapport
+ * médian des dix mesures est affiché à la fin.
+ *
+ * Ce n'est pas un test : à lancer à la main, après mvn test-compile, avec
+ * java -cp target/classes:target/test-classes:(dépendances) fr.umontpellier.iut.rails.BenchmarkSimulation
+ */
+public class BenchmarkSimulation {
+    private static final int NB_PARTIES = 100;
+    private static final String[] NOMS = {"Guybrush", "Largo", "LeChuck", "Elaine"};
+
+    /**
+     * Joueur automatique qui enregistre ses réponses (dans l'ordre des choix de la partie)
+     */
+    private static class JoueurEnregistre implements JoueurAutomatique {
+        private final JoueurAleatoire joueur;
+        private final List<String> reponses;
+
+        JoueurEnregistre(long graine, List<String> reponses) {
+            this.joueur = new JoueurAleatoire(new Random(graine));
+            this.reponses = reponses;
+        }
+
+        @Override
+        public String choisir(Joueur j, String instruction, List<String> choix, boolean peutPasser) {
+            String reponse = joueur.choisir(j, instruction, choix, peutPasser);
+            reponses.add(reponse);
+            return reponse;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        File fichier = File.createTempFile("banc-console", ".txt");
+        fichier.deleteOnExit();
+        PrintStream sortie = System.out;
+        try (PrintStream console = new PrintStream(new BufferedOutputStream(new FileOutputStream(fichier), 128), true)) {
+            System.setOut(console);
+            List<Double> rapports = new ArrayList<>();
+            for (int tour = 0; tour < 10; tour++) {
+                // chaque mode est mesuré sur toutes les parties à la suite
+                List<List<String>> reponses = new ArrayList<>();
+                long simulation = 0;
+                long nbTours = 0;
+                System.gc();
+                for (int i = 0; i < NB_PARTIES; i++) {
+                    List<String> reponsesPartie = new ArrayList<>();
+                    Jeu jeu = new Jeu(NOMS, i);
+                    List<JoueurEnregistre> joueurs = new ArrayList<>();
+                    for (int j = 0; j < NOMS.length; j++) {
+                        joueurs.add(new JoueurEnregistre(i * NOMS.length + j, reponsesPartie));
+                    }
+                    jeu.setSimulation(joueurs);
+                    simulation += jouer(jeu);
+                    nbTours += jeu.getNbTours();
+                    reponses.add(reponsesPartie);
+                }
+                long interactif = 0;
+                long nbToursInteractif = 0;
+                System.gc();
+                for (int i = 0; i < NB_PARTIES; i++) {
+                    Jeu jeu = jeuInteractif(i, reponses.get(i));
+                    interactif += jouer(jeu);
+                    nbToursInteractif += jeu.getNbTours();
+                }
+                if (nbToursInteractif != nbTours) {
+                    throw new IllegalStateException("les deux modes n'ont pas joué les mêmes parties");
+                }
+                rapports.add((double) interactif / simulation);
+                sortie.printf("%d tours : simulation %8.2f µs/tour   interactif %8.2f µs/tour   rapport %6.1f%n",
+                        nbTours, simulation / 1e3 / nbTours, interactif / 1e3 / nbTours, (double) interactif / simulation);
+            }
+            Collections.sort(rapports);
+            sortie.printf("rapport médian %6.1f%n", (rapports.get(4) + rapports.get(5)) / 2);
+        } finally {
+            System.setOut(sortie);
+        }
+    }
+
+    /**
+     * @return la même partie qu'en simulation, hébergée par une partie du serveur, dont
+     * les entrées sont les réponses enregistrées
+     */
+    private static Jeu jeuInteractif(long graine, List<String> reponses) {
+        Iterator<String> entrees = reponses.iterator();
+        Jeu jeu = new Jeu(NOMS, graine);
+        jeu.setEntrees(joueur -> entrees.next());
+        new Partie("banc-" + graine, jeu);
+        return jeu;
+    }
+
+    /**
+     * @return la durée de la partie (en nanosecondes)
+     */
+    private static long jouer(Jeu jeu) {
+        long debut = System.nanoTime();
+        jeu.run();
+        return System.nanoTime() - debut;
+    }
+}
@@ -0,0 +1,59 @@
+package fr.umontpellier.iut.rails;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class BoiteAuxLettresTest {
+
+    @Test
+    void testFileBornee() {
+        BoiteAuxLettres<String> boite = new BoiteAuxLettres<>(3);
+        assertEquals(4, boite.capacite());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(boite.offer("m" + i));
+        }
+        assertFalse(boite.offer("m4"));
+        assertEquals("m0", boite.poll());
+        assertTrue(boite.offer("m4"));
+        for (int i = 1; i <= 4; i++) {
+            assertEquals("m" + i, boite.poll());
+        }
+        assertNull(boite.poll());
+    }
+
+    @Test
+    void testPlusieursProducteurs() throws InterruptedException {
+        int nbProducteurs = 4;
+        int nbMessages = 2_000;
+        BoiteAuxLettres<int[]> boite = new BoiteAuxLettres<>(16);
+        for (int p = 0; p < nbProducteurs; p++) {
+            int producteur = p;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < nbMessages; i++) {
+                    int[] message = {producteur, i};
+                    // file pleine : le consommateur a besoin du processeur
+                    while (!boite.offer(message)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        // les messages de chaque producteur arrivent tous, dans l'ordre
+        int[] suivants = new int[nbProducteurs];
+        for (int n = 0; n < nbProducteurs * nbMessages; n++) {
+            int[] message = boite.take();
+            assertEquals(suivants[message[0]]++, message[1]);
+        }
+        for (int p = 0; p < nbProducteurs; p++) {
+            assertEquals(nbMessages, suivants[p]);
+        }
+        assertNull(boite.poll());
+    }
+}
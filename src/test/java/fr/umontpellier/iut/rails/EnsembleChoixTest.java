@@ -0,0 +1,61 @@
+package fr.umontpellier.iut.rails;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+public class EnsembleChoixTest {
+
+    @Test
+    void testContient() {
+        EnsembleChoix choix = new EnsembleChoix(Map.of("Paris", 3, "Tokyo", 7));
+        for (String valeur : List.of("C12", "R42", "D7", "Paris", "WAGON", "")) {
+            choix.ajouter(valeur);
+        }
+
+        for (String valeur : List.of("C12", "R42", "D7", "Paris", "WAGON", "")) {
+            assertTrue(choix.contient(valeur), valeur);
+        }
+        for (String valeur : List.of("C13", "R12", "D42", "Tokyo", "BATEAU", "C12x", "X1", "C")) {
+            assertFalse(choix.contient(valeur), valeur);
+        }
+        assertFalse(choix.contient(null));
+    }
+
+    @Test
+    void testIdentifiantNonCanonique() {
+        EnsembleChoix choix = new EnsembleChoix(Map.of());
+        choix.ajouter("C5");
+        choix.ajouter("R0");
+
+        assertTrue(choix.contient("C5"));
+        assertTrue(choix.contient("R0"));
+        // seule la forme écrite par getNom() désigne la carte ou la route
+        for (String valeur : List.of("C05", "C005", "R00", "C+5", "C-5")) {
+            assertFalse(choix.contient(valeur), valeur);
+        }
+    }
+
+    @Test
+    void testFormePubliee() {
+        EnsembleChoix choix = new EnsembleChoix(Map.of("Paris", 3));
+        choix.ajouter("R1");
+        choix.ajouter("R9");
+        choix.ajouter("Paris");
+        choix.ajouter("DESTINATION");
+
+        Map<String, Object> publie = choix.dataMap();
+        BitSet routes = BitSet.valueOf(Base64.getDecoder().decode((String) publie.get("routes")));
+        assertEquals(BitSet.valueOf(new long[]{(1 << 1) | (1 << 9)}), routes);
+        assertEquals(BitSet.valueOf(new long[]{1 << 3}), BitSet.valueOf(Base64.getDecoder().decode((String) publie.get("villes"))));
+        assertEquals("", publie.get("cartes"));
+        assertEquals(List.of("DESTINATION"), publie.get("autres"));
+    }
+}
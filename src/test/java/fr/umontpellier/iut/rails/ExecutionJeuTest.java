@@ -0,0 +1,177 @@
+package fr.umontpellier.iut.rails;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import fr.umontpellier.iut.rails.data.CarteTransport;
+import fr.umontpellier.iut.rails.data.Destination;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ExecutionJeuTest {
+    private static final String[] NOMS = {"Guybrush", "Largo"};
+
+    @Test
+    void testFabrique() {
+        ThreadFactory fabrique = ExecutionJeu.fabrique("essai");
+        Thread premier = fabrique.newThread(() -> {
+        });
+        Thread second = fabrique.newThread(() -> {
+        });
+        assertEquals("essai-1", premier.getName());
+        assertEquals("essai-2", second.getName());
+        // un thread de partie n'empêche pas le serveur de s'arrêter
+        assertTrue(premier.isDaemon());
+    }
+
+    @Test
+    void testPartiesSuspenduesPuisReprises() {
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            // 2 threads pour 50 parties : chaque partie en attente libère son thread
+            ThreadPoolExecutor executeur = (ThreadPoolExecutor) Executors.newFixedThreadPool(2,
+                    ExecutionJeu.fabrique("partie"));
+            List<Jeu> jeux = new ArrayList<>();
+            try {
+                for (int i = 0; i < 50; i++) {
+                    Jeu jeu = TestUtils.nouveauJeu(i, NOMS);
+                    jeu.setReprise(() -> executeur.execute(jeu::executer));
+                    executeur.execute(jeu::executer);
+                    jeux.add(jeu);
+                }
+
+                // chaque partie est suspendue sur le choix des destinations du premier joueur
+                for (Jeu jeu : jeux) {
+                    attendreChoix(jeu, 0, "");
+                }
+                TestUtils.attendre(() -> executeur.getActiveCount() == 0, "parties toujours en cours d'exécution");
+                // et reprend quand la réponse arrive
+                for (Jeu jeu : jeux) {
+                    assertTrue(jeu.addInput(jeu.getJoueurs().get(0), ""));
+                }
+                for (Jeu jeu : jeux) {
+                    attendreChoix(jeu, 0, "12");
+                }
+            } finally {
+                executeur.shutdownNow();
+            }
+            assertTrue(executeur.awaitTermination(1, TimeUnit.SECONDS));
+        });
+    }
+
+    @Test
+    void testUneRepriseParEntree() {
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            // pendant la mise en place simultanée, la partie attend les deux joueurs
+            ExecutorService executeur = Executors.newSingleThreadExecutor(ExecutionJeu.fabrique("partie"));
+            AtomicInteger reprises = new AtomicInteger();
+            Jeu jeu = TestUtils.nouveauJeu(7, NOMS);
+            jeu.setMiseEnPlaceSimultanee(true);
+            jeu.setReprise(() -> {
+                reprises.incrementAndGet();
+                executeur.execute(jeu::executer);
+            });
+            try {
+                executeur.execute(jeu::executer);
+                attendreChoix(jeu, 0, "");
+                attendreChoix(jeu, 1, "");
+                int attendues = 0;
+                for (int place : new int[]{1, 0, 0, 1}) {
+                    // la partie est suspendue quand l'exécuteur n'a plus rien à faire
+                    executeur.submit(() -> {
+                    }).get();
+                    String reponse = jeu.estChoixAttendu(jeu.getJoueurs().get(place), "12") ? "12" : "";
+                    assertTrue(jeu.addInput(jeu.getJoueurs().get(place), reponse));
+                    executeur.submit(() -> {
+                    }).get();
+                    // la surveillance de l'autre joueur a été annulée : seule l'entrée reçue relance la partie
+                    assertEquals(++attendues, reprises.get());
+                }
+                // la mise en place est terminée, sans rien rejouer
+                attendreChoix(jeu, 0, "WAGON");
+                assertEquals(attendues, reprises.get());
+            } finally {
+                executeur.shutdownNow();
+            }
+        });
+    }
+
+    @Test
+    void testPartieSuspendueALIdentique() {
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            // la même partie, avec les mêmes réponses, suspendue à chaque attente ou non
+            ThreadPoolExecutor executeur = (ThreadPoolExecutor) Executors.newFixedThreadPool(1,
+                    ExecutionJeu.fabrique("partie"));
+            Jeu suspendue = TestUtils.nouveauJeu(42, NOMS);
+            suspendue.setReprise(() -> executeur.execute(suspendue::executer));
+            Jeu reference = TestUtils.nouveauJeu(42, NOMS);
+            Thread thread = new Thread(reference, "reference");
+            // la partie de référence est interrompue à la fin du test
+            thread.setUncaughtExceptionHandler((t, e) -> {
+            });
+            thread.start();
+            try {
+                executeur.execute(suspendue::executer);
+                for (Jeu jeu : List.of(suspendue, reference)) {
+                    repondre(jeu, 0, "");
+                    repondre(jeu, 0, "12");
+                    repondre(jeu, 1, "");
+                    repondre(jeu, 1, "20");
+                    // premier tour : le premier joueur pioche deux cartes wagon
+                    repondre(jeu, 0, "WAGON");
+                    repondre(jeu, 0, "WAGON");
+                }
+                for (int i = 0; i < NOMS.length; i++) {
+                    Joueur joueur = suspendue.getJoueurs().get(i);
+                    Joueur joueurReference = reference.getJoueurs().get(i);
+                    assertEquals(noms(TestUtils.getCartesTransport(joueurReference)),
+                            noms(TestUtils.getCartesTransport(joueur)));
+                    assertEquals(nomsDestinations(TestUtils.getDestinations(joueurReference)),
+                            nomsDestinations(TestUtils.getDestinations(joueur)));
+                    assertEquals(joueurReference.getNbPions(), joueur.getNbPions());
+                }
+                assertEquals(noms(reference.getCartesTransportVisibles()), noms(suspendue.getCartesTransportVisibles()));
+                assertEquals(reference.getVersion(), suspendue.getVersion());
+            } finally {
+                executeur.shutdownNow();
+                thread.interrupt();
+                thread.join(2000);
+            }
+            assertFalse(thread.isAlive());
+        });
+    }
+
+    private static void attendreChoix(Jeu jeu, int place, String reponse) {
+        TestUtils.attendreChoix(jeu, jeu.getJoueurs().get(place), reponse);
+    }
+
+    /**
+     * Répond au choix d'un joueur, et attend que la partie ait appliqué la réponse et
+     * commencé le choix suivant
+     */
+    private static void repondre(Jeu jeu, int place, String reponse) {
+        attendreChoix(jeu, place, reponse);
+        long version = jeu.getVersion();
+        assertTrue(jeu.addInput(jeu.getJoueurs().get(place), reponse));
+        TestUtils.attendre(() -> jeu.getVersion() != version && jeu.getJoueurs().stream().anyMatch(j -> j.getChoixAttendus() != null),
+                "la réponse " + reponse + " n'a pas été appliquée");
+    }
+
+    private static List<String> noms(List<CarteTransport> cartes) {
+        return cartes.stream().map(CarteTransport::getNom).toList();
+    }
+
+    private static List<String> nomsDestinations(List<Destination> destinations) {
+        return destinations.stream().map(Destination::getNom).toList();
+    }
+}
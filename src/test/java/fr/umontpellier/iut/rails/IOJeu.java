@@ -21,13 +21,8 @@ public class IOJeu extends Jeu {
     public IOJeu(String[] nomJoueurs) {
         super(nomJoueurs);
         this.instructions = new ArrayList<>();
-    }
-
-    /**
-     * Lit et renvoie une instruction dans la liste
-     */
-    public String lireLigne() {
-        return instructions.remove(0);
+        // les entrées sont lues dans la liste d'instructions, quel que soit le joueur
+        setEntrees(joueur -> instructions.remove(0));
     }
 
     
@@ -0,0 +1,61 @@
+package fr.umontpellier.iut.rails;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import fr.umontpellier.iut.rails.data.CarteTransport;
+import fr.umontpellier.iut.rails.data.Destination;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+public class JeuGraineTest {
+    private static final String[] NOMS = {"Guybrush", "Largo", "LeChuck"};
+
+    /**
+     * @return les mélanges de la partie : couleurs des joueurs, destinations et cartes
+     * transport dans l'ordre de pioche (sans les noms, qui changent d'une partie à l'autre)
+     */
+    private static List<String> melanges(Jeu jeu) {
+        List<String> resultat = new ArrayList<>();
+        for (Joueur joueur : jeu.getJoueurs()) {
+            resultat.add(joueur.dataMap().get("couleur").toString());
+        }
+        Destination destination;
+        while ((destination = jeu.piocheDestination()) != null) {
+            resultat.add(destination.getVilles().toString());
+        }
+        CarteTransport carte;
+        while ((carte = jeu.piocherCarteWagon()) != null) {
+            resultat.add(carte.getType() + " " + carte.getCouleur() + " " + carte.getAncre());
+        }
+        while ((carte = jeu.piocherCarteBateau()) != null) {
+            resultat.add(carte.getType() + " " + carte.getCouleur() + " " + carte.estDouble());
+        }
+        return resultat;
+    }
+
+    @Test
+    void testMemeGraineMemesMelanges() {
+        Jeu jeu = new Jeu(NOMS, 1234);
+
+        assertEquals(1234, jeu.getGraine());
+        TestUtils.setAttribute(jeu, "instruction", "");
+        TestUtils.setAttribute(jeu, "boutons", List.of());
+        assertEquals("1234", jeu.dataMap().get("graine"));
+        assertEquals(melanges(jeu), melanges(new Jeu(NOMS, 1234)));
+        assertNotEquals(melanges(new Jeu(NOMS, 1234)), melanges(new Jeu(NOMS, 1235)));
+    }
+
+    @Test
+    void testMelangerPermuteLaListe() {
+        List<Integer> liste = new ArrayList<>(IntStream.range(0, 50).boxed().toList());
+        Jeu.melanger(liste, new SplittableRandom(1));
+
+        assertNotEquals(IntStream.range(0, 50).boxed().toList(), liste);
+        assertEquals(IntStream.range(0, 50).boxed().toList(), liste.stream().sorted().toList());
+    }
+}
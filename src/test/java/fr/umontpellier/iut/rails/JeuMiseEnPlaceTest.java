@@ -0,0 +1,148 @@
+package fr.umontpellier.iut.rails;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import fr.umontpellier.iut.rails.data.Destination;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class JeuMiseEnPlaceTest {
+
+    /**
+     * Attend que le joueur ait un choix en cours
+     */
+    private static Map<String, Object> attendreChoix(Joueur joueur) {
+        TestUtils.attendre(() -> joueur.getChoixEnCours() != null, "pas de choix en cours pour " + joueur.getNom());
+        return joueur.getChoixEnCours();
+    }
+
+    @Test
+    void testMiseEnPlaceSimultanee() {
+        Jeu jeu = TestUtils.nouveauJeu("Guybrush", "Largo", "LeChuck");
+        jeu.setMiseEnPlaceSimultanee(true);
+        Thread thread = new Thread(jeu);
+        thread.setDaemon(true);
+        thread.start();
+        verifierMiseEnPlaceSimultanee(jeu);
+    }
+
+    @Test
+    void testMiseEnPlaceSimultaneeSuspendue() {
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            Jeu jeu = TestUtils.nouveauJeu("Guybrush", "Largo", "LeChuck");
+            jeu.setMiseEnPlaceSimultanee(true);
+            // un seul thread, libéré à chaque attente : les joueurs avancent chacun à leur tour
+            ExecutorService executeur = Executors.newSingleThreadExecutor(ExecutionJeu.fabrique("partie"));
+            try {
+                jeu.setReprise(() -> executeur.execute(jeu::executer));
+                executeur.execute(jeu::executer);
+                verifierMiseEnPlaceSimultanee(jeu);
+            } finally {
+                executeur.shutdownNow();
+            }
+        });
+    }
+
+    /**
+     * Fait la mise en place simultanée d'une partie démarrée (réponses dans l'ordre
+     * inverse des joueurs) et vérifie son résultat
+     */
+    private static void verifierMiseEnPlaceSimultanee(Jeu jeu) {
+        @SuppressWarnings("unchecked")
+        List<Destination> pile = (List<Destination>) TestUtils.getAttribute(jeu, "pileDestinations");
+
+        // tous les joueurs choisissent leurs destinations en même temps
+        List<Joueur> joueurs = jeu.getJoueurs();
+        List<String> rendues = new ArrayList<>();
+        for (Joueur joueur : joueurs) {
+            @SuppressWarnings("unchecked")
+            Collection<Bouton> boutons = (Collection<Bouton>) attendreChoix(joueur).get("boutons");
+            assertEquals(5, boutons.size());
+            rendues.add(boutons.iterator().next().valeur());
+        }
+
+        // les réponses arrivent dans l'ordre inverse des joueurs
+        for (int i = joueurs.size() - 1; i >= 0; i--) {
+            Joueur joueur = joueurs.get(i);
+            assertTrue(jeu.addInput(joueur, rendues.get(i)));
+            String rendue = rendues.get(i);
+            TestUtils.attendre(() -> !jeu.estChoixAttendu(joueur, rendue) && jeu.estChoixAttendu(joueur, ""),
+                    "destination non rendue par " + joueur.getNom());
+            assertTrue(jeu.addInput(joueur, ""));
+            TestUtils.attendreChoix(jeu, joueur, "12");
+            assertTrue(jeu.addInput(joueur, "12"));
+        }
+
+        // le premier tour commence une fois que tous les joueurs ont terminé
+        Joueur premier = joueurs.get(0);
+        TestUtils.attendre(() -> premier.getChoixAttendus() != null && !premier.getChoixAttendus().contient("12"),
+                "le premier tour n'a pas commencé");
+        for (Joueur joueur : joueurs) {
+            assertEquals(4, TestUtils.getDestinations(joueur).size());
+            assertEquals(12, TestUtils.getNbPionsWagon(joueur));
+            assertEquals(48, TestUtils.getNbPionsBateau(joueur));
+        }
+        // les destinations rendues sont replacées dans l'ordre des joueurs
+        assertEquals(rendues, pile.stream().skip(pile.size() - joueurs.size()).map(Destination::getNom).toList());
+    }
+
+    @Test
+    void testEtapesDeMiseEnPlaceAbandonnees() throws InterruptedException {
+        Jeu jeu = TestUtils.nouveauJeu("Guybrush", "Largo");
+        Thread thread = new Thread(jeu);
+        thread.setDaemon(true);
+        // la partie est arrêtée à la fin du test
+        thread.setUncaughtExceptionHandler((t, e) -> {
+        });
+        thread.start();
+
+        // une action composée trop longue pour la mise en place du premier joueur
+        Joueur premier = jeu.getJoueurs().get(0);
+        @SuppressWarnings("unchecked")
+        Collection<Bouton> boutons = (Collection<Bouton>) attendreChoix(premier).get("boutons");
+        String rendue = boutons.iterator().next().valeur();
+        assertTrue(jeu.addActions(premier, List.of(rendue, "", "12", "WAGON")));
+
+        // la dernière étape ne passe pas au premier tour du joueur
+        attendreChoix(jeu.getJoueurs().get(1));
+        assertNull(premier.getEtapesRestantes().get());
+        thread.interrupt();
+    }
+
+    @Test
+    void testMiseEnPlaceInterrompue() throws InterruptedException {
+        Jeu jeu = TestUtils.nouveauJeu("Stan", "Otis");
+        jeu.setMiseEnPlaceSimultanee(true);
+        AtomicReference<Throwable> erreur = new AtomicReference<>();
+        Thread thread = new Thread(jeu);
+        thread.setDaemon(true);
+        thread.setUncaughtExceptionHandler((t, e) -> erreur.set(e));
+        thread.start();
+        for (Joueur joueur : jeu.getJoueurs()) {
+            attendreChoix(joueur);
+        }
+
+        thread.interrupt();
+        thread.join(2000);
+
+        assertFalse(thread.isAlive());
+        assertInstanceOf(CancellationException.class, erreur.get());
+        // aucun tour n'a commencé
+        assertEquals(0, jeu.getNbTours());
+        assertFalse(jeu.estChoixAttendu(jeu.getJoueurs().get(0), "DESTINATION"));
+    }
+}
@@ -0,0 +1,52 @@
+package fr.umontpellier.iut.rails;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+
+public class JeuSimulationTest {
+
+    @Test
+    void testPartieSimuleeSansAffichage() {
+        Jeu jeu = new Jeu(new String[]{"Guybrush", "Largo", "LeChuck"});
+        jeu.setSimulation(List.of(
+                new JoueurAleatoire(new Random(1)),
+                new JoueurAleatoire(new Random(2)),
+                new JoueurAleatoire(new Random(3))));
+
+        PrintStream sortie = System.out;
+        ByteArrayOutputStream affichage = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(affichage));
+        try {
+            // la partie se joue jusqu'au bout sans attendre d'entrée
+            assertTimeoutPreemptively(Duration.ofSeconds(10), jeu::run);
+        } finally {
+            System.setOut(sortie);
+        }
+
+        assertEquals(0, affichage.size());
+        assertTrue(jeu.getJournal().recents().isEmpty());
+        // la partie s'est terminée normalement : un joueur n'a plus que 6 pions ou moins
+        assertTrue(jeu.getJoueurs().stream().anyMatch(joueur -> joueur.getNbPions() <= 6));
+        for (Joueur joueur : jeu.getJoueurs()) {
+            assertNull(joueur.getChoixEnCours());
+        }
+    }
+
+    @Test
+    void testUnJoueurAutomatiqueParJoueur() {
+        Jeu jeu = new Jeu(new String[]{"Guybrush", "Largo"});
+
+        assertThrows(IllegalArgumentException.class, () -> jeu.setSimulation(List.of(new JoueurAleatoire())));
+    }
+}
@@ -0,0 +1,48 @@
+package fr.umontpellier.iut.rails;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class JeuVersionTest {
+
+    @Test
+    void testPromptIdentiqueNeChangePasLaVersion() {
+        Jeu jeu = new Jeu(new String[]{"Guybrush", "Largo"});
+        jeu.prompt("Choisissez", List.of(new Bouton("oui")), false);
+        long version = jeu.getVersion();
+
+        jeu.prompt("Choisissez", List.of(new Bouton("oui")), false);
+        assertEquals(version, jeu.getVersion());
+
+        jeu.prompt("Autre chose", List.of(new Bouton("oui")), false);
+        assertTrue(jeu.getVersion() > version);
+    }
+
+    @Test
+    void testLogEtChoixValideChangentLaVersion() throws InterruptedException {
+        Jeu jeu = new Jeu(new String[]{"Guybrush", "Largo"});
+        long version = jeu.getVersion();
+
+        jeu.log("message");
+        assertEquals(version + 1, jeu.getVersion());
+
+        Joueur joueur = jeu.getJoueurs().get(0);
+        AtomicReference<String> choix = new AtomicReference<>();
+        Thread thread = new Thread(() -> choix.set(joueur.choisir("Choisissez", List.of("oui"), null, false)));
+        thread.start();
+        TestUtils.attendreChoix(jeu, joueur, "oui");
+        // une réponse invalide est refusée sans atteindre choisir()
+        assertFalse(jeu.addInput(joueur, "mauvais"));
+        assertTrue(jeu.addInput(joueur, "oui"));
+        thread.join(2000);
+
+        assertEquals("oui", choix.get());
+        assertEquals(version + 3, jeu.getVersion());
+    }
+}
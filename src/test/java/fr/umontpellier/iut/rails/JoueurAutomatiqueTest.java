@@ -0,0 +1,67 @@
+package fr.umontpellier.iut.rails;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import fr.umontpellier.iut.rails.data.CarteTransport;
+import fr.umontpellier.iut.rails.data.Couleur;
+import fr.umontpellier.iut.rails.data.TypeCarteTransport;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class JoueurAutomatiqueTest {
+
+    @Test
+    void testJoueurAleatoire() {
+        JoueurAleatoire automate = new JoueurAleatoire(new Random(1));
+
+        assertEquals("", automate.choisir(null, "", List.of("D1", "D2"), true));
+        assertTrue(List.of("WAGON", "BATEAU").contains(
+                automate.choisir(null, "", List.of("DESTINATION", "WAGON", "BATEAU", "R1", "R2"), false)));
+        assertEquals("R2", automate.choisir(null, "", List.of("R2"), false));
+    }
+
+    @Test
+    void testJoueurAleatoirePrendUneRoute() {
+        Jeu jeu = TestUtils.nouveauJeu("Guybrush", "Largo");
+        Joueur joueur = jeu.getJoueurs().get(0);
+        TestUtils.setAttribute(joueur, "nbPionsWagon", 20);
+        for (int i = 0; i < 8; i++) {
+            TestUtils.getCartesTransport(joueur).add(
+                    new CarteTransport(TypeCarteTransport.JOKER, Couleur.GRIS, false, true));
+        }
+        List<String> choix = new ArrayList<>(List.of("DESTINATION", "WAGON", "BATEAU"));
+        jeu.getRoutesLibres().forEach(route -> choix.add(route.getNom()));
+
+        // une route terrestre est à sa portée : il la préfère aux pioches
+        Route route = jeu.getRoute(new JoueurAleatoire(new Random(1)).choisir(joueur, "", choix, false));
+        assertNotNull(route);
+        assertFalse(route instanceof RouteMaritime);
+    }
+
+    @Test
+    void testRemplacementPendantUnChoix() throws InterruptedException {
+        Jeu jeu = TestUtils.nouveauJeu("Guybrush", "Largo");
+        Joueur joueur = jeu.getJoueurs().get(0);
+        AtomicReference<String> choix = new AtomicReference<>();
+        Thread thread = new Thread(() -> choix.set(joueur.choisir("Choisissez", List.of("oui"), null, false)));
+        thread.start();
+        TestUtils.attendreChoix(jeu, joueur, "oui");
+
+        // le choix en cours est fait immédiatement par le joueur automatique
+        jeu.setAutomate(joueur, new JoueurAleatoire());
+        thread.join(2000);
+        assertEquals("oui", choix.get());
+
+        // le joueur reprend la main
+        jeu.setAutomate(joueur, null);
+        jeu.preparerAction(joueur, "non");
+        assertEquals("non", joueur.choisir("Choisissez", List.of("oui", "non"), null, false));
+    }
+}
@@ -0,0 +1,36 @@
+package fr.umontpellier.iut.rails;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+public class JournalJeuTest {
+
+    @Test
+    void testMessagesApresUnNumero() {
+        JournalJeu journal = new JournalJeu(10);
+        journal.ajouter("a");
+        journal.ajouter("b");
+        journal.ajouter("c");
+
+        assertEquals(3, journal.getDernier());
+        assertEquals(List.of("b", "c"), journal.entre(1, 3));
+        assertEquals(List.of("b"), journal.entre(1, 2));
+        assertEquals(List.of(), journal.entre(3, 3));
+    }
+
+    @Test
+    void testLesPlusAnciensMessagesSontOublies() {
+        JournalJeu journal = new JournalJeu(3);
+        for (int i = 1; i <= 5; i++) {
+            journal.ajouter("m" + i);
+        }
+
+        assertEquals(3, journal.getPremier());
+        assertEquals(List.of("m3", "m4", "m5"), journal.recents());
+        assertEquals(List.of("m3", "m4", "m5"), journal.entre(1, 5));
+        assertEquals(List.of("m5"), journal.entre(4, 5));
+    }
+}
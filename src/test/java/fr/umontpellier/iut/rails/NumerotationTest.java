@@ -0,0 +1,85 @@
+package fr.umontpellier.iut.rails;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import fr.umontpellier.iut.rails.data.CarteTransport;
+import fr.umontpellier.iut.rails.data.Destination;
+import fr.umontpellier.iut.rails.data.Numerotation;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class NumerotationTest {
+    private static final String[] NOMS = {"Guybrush", "Largo"};
+
+    /**
+     * @return les numéros des cartes transport de la partie, triés
+     */
+    private static List<Integer> numerosCartes(Jeu jeu) {
+        TreeSet<Integer> numeros = new TreeSet<>();
+        CarteTransport carte;
+        while ((carte = jeu.piocherCarteWagon()) != null) {
+            numeros.add(Integer.parseInt(carte.getNom().substring(1)));
+        }
+        while ((carte = jeu.piocherCarteBateau()) != null) {
+            numeros.add(Integer.parseInt(carte.getNom().substring(1)));
+        }
+        return new ArrayList<>(numeros);
+    }
+
+    @Test
+    void testChaquePartieNumeroteSesCartesDe1A140() {
+        List<Integer> attendus = new ArrayList<>();
+        for (int i = 1; i <= 140; i++) {
+            attendus.add(i);
+        }
+
+        assertEquals(attendus, numerosCartes(new Jeu(NOMS)));
+        assertEquals(attendus, numerosCartes(new Jeu(NOMS)));
+    }
+
+    @Test
+    void testPartiesCreeesEnMemeTemps() throws InterruptedException, ExecutionException {
+        ExecutorService executeur = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Jeu>> jeux = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                jeux.add(executeur.submit(() -> new Jeu(NOMS)));
+            }
+            for (Future<Jeu> jeu : jeux) {
+                // 140 cartes aux noms tous différents
+                assertEquals(140, numerosCartes(jeu.get()).size());
+            }
+        } finally {
+            executeur.shutdown();
+        }
+    }
+
+    @Test
+    void testAucuneNumerotationNeResteLiee() throws InterruptedException, ExecutionException {
+        ExecutorService executeur = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> nom = executeur.submit(() -> {
+                Jeu jeu = new Jeu(NOMS, 1);
+                assertNull(Numerotation.courante());
+                jeu.setSimulation(List.of(new JoueurAleatoire(new Random(1)), new JoueurAleatoire(new Random(2))));
+                jeu.run();
+                assertNull(Numerotation.courante());
+                return new Destination("A", "B", 10).getNom();
+            });
+            // une destination créée hors d'une partie n'a le nom d'aucune destination de la partie
+            assertTrue(Integer.parseInt(nom.get().substring(1)) > 65);
+        } finally {
+            executeur.shutdown();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package fr.umontpellier.iut.rails;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RoueTemporelleTest {
+
+    @Test
+    void testDelaisExecutesEtAnnules() throws InterruptedException {
+        RoueTemporelle roue = new RoueTemporelle(5, 4);
+        CountDownLatch executes = new CountDownLatch(2);
+        AtomicInteger annules = new AtomicInteger();
+
+        roue.planifier(10, executes::countDown);
+        // plus long qu'un tour de roue
+        roue.planifier(60, executes::countDown);
+        RoueTemporelle.Delai delai = roue.planifier(10, annules::incrementAndGet);
+        assertTrue(delai.annuler());
+
+        assertTrue(executes.await(2, TimeUnit.SECONDS));
+        Thread.sleep(30);
+        assertEquals(0, annules.get());
+        assertFalse(delai.annuler());
+    }
+
+    @Test
+    void testChoixParDefautQuandLeDelaiEstDepasse() {
+        Jeu jeu = TestUtils.nouveauJeu("Guybrush", "Largo");
+        jeu.setDelais(50, 0);
+        Joueur joueur = jeu.getJoueurs().get(0);
+
+        assertEquals("", joueur.choisir("Choisissez", List.of("oui", "non"), null, true));
+        assertEquals("oui", joueur.choisir("Choisissez", List.of("oui", "non"), null, false));
+    }
+
+    @Test
+    void testFinDuTourAtteinte() throws InterruptedException {
+        Jeu jeu = TestUtils.nouveauJeu("Guybrush", "Largo");
+        jeu.setDelais(0, 1);
+        Joueur joueur = jeu.getJoueurs().get(0);
+        jeu.commencerTour(joueur);
+        Thread.sleep(5);
+
+        // le tour est terminé : les choix sont faits par défaut, sans attendre
+        assertEquals("oui", joueur.choisir("Choisissez", List.of("oui", "non"), null, false));
+        assertEquals("non", joueur.choisir("Choisissez", List.of("oui", "non"), null, false));
+    }
+
+    @Test
+    void testTourFaitParDefautSansPrendreDeDestinations() throws InterruptedException {
+        Jeu jeu = TestUtils.nouveauJeu("Guybrush", "Largo");
+        jeu.setDelais(0, 1);
+        Joueur joueur = jeu.getJoueurs().get(0);
+        jeu.commencerTour(joueur);
+        Thread.sleep(5);
+
+        // le joueur absent pioche une carte dans une pioche puis passe
+        joueur.jouerTour();
+        assertTrue(TestUtils.getDestinations(joueur).isEmpty());
+        assertEquals(1, TestUtils.getCartesTransport(joueur).size());
+    }
+}
@@ -0,0 +1,57 @@
+package fr.umontpellier.iut.rails;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+public class SimulateurTest {
+    private static final String[] NOMS = {"Guybrush", "Largo", "LeChuck"};
+
+    @Test
+    void testResultatsCumules() {
+        Simulateur.Resultats resultats = new Simulateur(NOMS).simuler(12, 1);
+
+        assertEquals(12, resultats.getParties());
+        assertEquals(0, resultats.getErreurs());
+        assertNull(resultats.getPremiereErreur());
+        assertEquals(12, resultats.getVictoires(0) + resultats.getVictoires(1) + resultats.getVictoires(2));
+        assertTrue(resultats.getTours() >= 12 * (2 * NOMS.length + 1));
+        assertTrue(resultats.getScoreMin() <= resultats.getScoreMax());
+    }
+
+    @Test
+    void testErreursConservees() {
+        IllegalStateException panne = new IllegalStateException("joueur en panne");
+        Simulateur.Resultats resultats = new Simulateur(NOMS, random -> (joueur, instruction, choix, peutPasser) -> {
+            throw panne;
+        }, ForkJoinPool.commonPool()).simuler(20, 3);
+
+        assertEquals(0, resultats.getParties());
+        assertEquals(20, resultats.getErreurs());
+        assertSame(panne, resultats.getPremiereErreur());
+    }
+
+    @Test
+    void testMemeGraineMemesParties() {
+        ForkJoinPool seul = new ForkJoinPool(1);
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            // un peu plus d'un lot, pour que le lot soit divisé
+            Simulateur.Resultats sequentiel = new Simulateur(NOMS, JoueurAleatoire::new, seul).simuler(20, 7);
+            Simulateur.Resultats parallele = new Simulateur(NOMS, JoueurAleatoire::new, pool).simuler(20, 7);
+
+            // l'ordre d'exécution des lots ne change pas les parties jouées
+            assertEquals(sequentiel.getTours(), parallele.getTours());
+            assertEquals(sequentiel.getScores(), parallele.getScores());
+            assertEquals(sequentiel.getDestinationsCompletes(), parallele.getDestinationsCompletes());
+        } finally {
+            seul.shutdown();
+            pool.shutdown();
+        }
+    }
+}
@@ -4,11 +4,79 @@ import fr.umontpellier.iut.rails.data.CarteTransport;
 import fr.umontpellier.iut.rails.data.Destination;
 
 import java.lang.reflect.Field;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.BooleanSupplier;
 
 public class TestUtils {
     public static final long TIMEOUT_VALUE = 500;
+    /**
+     * Durée maximale d'attente d'un événement produit par un autre thread (voir attendre())
+     */
+    public static final long DELAI_ATTENTE = 2000;
+
+    /**
+     * Crée une partie sans affichage (prompt() ne fait rien), dont les tests donnent
+     * eux-mêmes les entrées des joueurs
+     *
+     * @param nomJoueurs noms des joueurs
+     */
+    public static Jeu nouveauJeu(String... nomJoueurs) {
+        return nouveauJeu(() -> {
+        }, nomJoueurs);
+    }
+
+    /**
+     * Crée une partie sans affichage qui exécute une action à chaque prompt() (par
+     * exemple pour compter les choix affichés)
+     */
+    public static Jeu nouveauJeu(Runnable surPrompt, String... nomJoueurs) {
+        return new Jeu(nomJoueurs) {
+            @Override
+            public void prompt(String instruction, Collection<Bouton> boutons, boolean peutPasser) {
+                surPrompt.run();
+            }
+        };
+    }
+
+    /**
+     * Crée une partie sans affichage, avec la graine de son générateur (voir
+     * nouveauJeu(String...))
+     */
+    public static Jeu nouveauJeu(long graine, String... nomJoueurs) {
+        return new Jeu(nomJoueurs, graine) {
+            @Override
+            public void prompt(String instruction, Collection<Bouton> boutons, boolean peutPasser) {
+            }
+        };
+    }
+
+    /**
+     * Attend qu'une condition modifiée par un autre thread devienne vraie (au plus
+     * DELAI_ATTENTE millisecondes)
+     *
+     * @param condition la condition attendue
+     * @param message   message de l'échec si la condition n'est pas vraie à temps
+     * @throws AssertionError si la condition n'est pas vraie à temps
+     */
+    public static void attendre(BooleanSupplier condition, String message) {
+        long limite = System.currentTimeMillis() + DELAI_ATTENTE;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > limite) {
+                throw new AssertionError(message);
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Attend qu'un joueur ait commencé un choix dont le message est une réponse valide
+     */
+    public static void attendreChoix(Jeu jeu, Joueur joueur, String message) {
+        attendre(() -> jeu.estChoixAttendu(joueur, message),
+                "pas de choix en cours pour " + joueur.getNom() + " qui accepte \"" + message + "\"");
+    }
 
     /**
      * Renvoie un attribut d'un objet à partir de son nom.